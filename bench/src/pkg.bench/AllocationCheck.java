@@ -0,0 +1,100 @@
+package pkg.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+import pkg.exception.StockMarketExpection;
+import pkg.market.Market;
+import pkg.market.MarketHistory;
+import pkg.order.Order;
+import pkg.order.OrderBook;
+import pkg.trader.Trader;
+
+/**
+ * Checks that a warmed-up match cycle allocates nothing: orders are added,
+ * matched and settled, and whatever is left resting is cancelled, over and
+ * over on the same market. Orders are created up front, since they belong to
+ * the traders rather than the matching engine. Bytes allocated by the
+ * measuring thread are read from the JVM, and the process exits with status
+ * 1 if the steady-state cycles allocated more than the given budget. The
+ * default budget only leaves room for a pool or buffer reaching a new high
+ * water mark; allocating per order or per fill costs megabytes.
+ *
+ * Arguments: [cycles] [ordersPerSymbol] [maxBytes]
+ */
+public class AllocationCheck {
+	static final int SYMBOLS = 4;
+	static final long DEFAULT_MAX_BYTES = 16 * 1024;
+
+	public static void main(String[] args) throws StockMarketExpection {
+		int cycles = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int ordersPerSymbol = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		long maxBytes = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_MAX_BYTES;
+
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		Market m = BenchmarkData.market(SYMBOLS);
+		// an unbounded history grows by design, a ring does not
+		m.setMarketHistory(new MarketHistory(m, 1024));
+		ArrayList<Trader> traders = BenchmarkData.traders(m, 10, SYMBOLS);
+
+		// warm-up and measured cycles each get their own orders
+		Order[][][] warmup = orders(cycles, ordersPerSymbol, traders, 1);
+		Order[][][] measured = orders(cycles, ordersPerSymbol, traders, 2);
+		long[] ids = new long[SYMBOLS * ordersPerSymbol];
+
+		run(m, warmup, ids);
+		long before = threads.getThreadAllocatedBytes(thread);
+		long overhead = threads.getThreadAllocatedBytes(thread) - before;
+		before = threads.getThreadAllocatedBytes(thread);
+		run(m, measured, ids);
+		long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+		System.out.println("cycles=" + cycles + " orders/cycle=" + SYMBOLS * ordersPerSymbol
+				+ " fills=" + m.getFillCount() + " allocated=" + allocated + " bytes ("
+				+ (double) allocated / cycles + " per cycle)");
+		if (allocated > maxBytes) {
+			System.out.println("FAIL: more than " + maxBytes + " bytes allocated");
+			System.exit(1);
+		}
+		System.out.println("OK");
+	}
+
+	private static void run(Market m, Order[][][] cycles, long[] ids) {
+		OrderBook book = m.getOrderBook();
+		for (int c = 0; c < cycles.length; c++) {
+			int placed = 0;
+			for (int s = 0; s < SYMBOLS; s++) {
+				Order[] orders = cycles[c][s];
+				for (int i = 0; i < orders.length; i++) {
+					ids[placed++] = m.addOrder(orders[i]);
+				}
+			}
+			m.triggerTrade();
+			// keep the book at a steady depth
+			placed = 0;
+			for (int s = 0; s < SYMBOLS; s++) {
+				Order[] orders = cycles[c][s];
+				for (int i = 0; i < orders.length; i++) {
+					book.cancel(orders[i].getStockSymbol(), ids[placed++]);
+				}
+			}
+		}
+	}
+
+	private static Order[][][] orders(int cycles, int ordersPerSymbol, ArrayList<Trader> traders,
+			long seed) {
+		Order[][][] orders = new Order[cycles][SYMBOLS][];
+		for (int s = 0; s < SYMBOLS; s++) {
+			ArrayList<Order> flow = BenchmarkData.orders(BenchmarkData.symbol(s),
+					cycles * ordersPerSymbol, traders, seed * 31 + s);
+			for (int c = 0; c < cycles; c++) {
+				orders[c][s] = flow.subList(c * ordersPerSymbol, (c + 1) * ordersPerSymbol)
+						.toArray(new Order[ordersPerSymbol]);
+			}
+		}
+		return orders;
+	}
+}
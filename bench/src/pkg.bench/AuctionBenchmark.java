@@ -0,0 +1,55 @@
+package pkg.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import pkg.exception.StockMarketExpection;
+import pkg.market.Market;
+import pkg.order.AuctionResult;
+import pkg.order.CallAuction;
+import pkg.order.Order;
+import pkg.order.PriceLevelBook;
+
+/**
+ * Finding the clearing price of one symbol's book (the former
+ * findMarketPrice step of a match cycle).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AuctionBenchmark {
+	@Param({ "100", "1000", "10000" })
+	int depth;
+
+	ArrayList<Order> buys;
+	ArrayList<Order> sells;
+	CallAuction auction;
+
+	@Setup
+	public void createBook() throws StockMarketExpection {
+		Market m = BenchmarkData.market(1);
+		PriceLevelBook book = new PriceLevelBook(BenchmarkData.symbol(0));
+		long id = 0;
+		for (Order o : BenchmarkData.orders(BenchmarkData.symbol(0), depth,
+				BenchmarkData.traders(m, 10, 1), 7)) {
+			book.add(o, ++id);
+		}
+		buys = book.getBuyOrders();
+		sells = book.getSellOrders();
+		auction = new CallAuction();
+	}
+
+	@Benchmark
+	public AuctionResult uncross() {
+		return auction.uncross(buys, sells);
+	}
+}
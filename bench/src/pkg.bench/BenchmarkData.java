@@ -0,0 +1,70 @@
+package pkg.bench;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import pkg.exception.StockMarketExpection;
+import pkg.market.Market;
+import pkg.market.api.IPO;
+import pkg.order.BuyOrder;
+import pkg.order.Order;
+import pkg.order.SellOrder;
+import pkg.trader.Trader;
+
+/**
+ * Builds markets, traders and order flow shared by the benchmarks. Every
+ * generator is seeded so runs stay comparable.
+ */
+public class BenchmarkData {
+	static final double BASE_PRICE = 100.0;
+
+	public static String symbol(int i) {
+		return "SYM" + i;
+	}
+
+	public static Market market(int symbols) {
+		Market m = new Market("BENCH");
+		for (int i = 0; i < symbols; i++) {
+			IPO.enterNewStock(m, symbol(i), "Benchmark " + i, BASE_PRICE);
+		}
+		return m;
+	}
+
+	/**
+	 * Traders with plenty of cash and shares in every symbol, so no fill is
+	 * ever refused.
+	 */
+	public static ArrayList<Trader> traders(Market m, int count, int symbols)
+			throws StockMarketExpection {
+		ArrayList<Trader> traders = new ArrayList<Trader>(count);
+		for (int i = 0; i < count; i++) {
+			Trader t = new Trader("bench" + i, 1e15);
+			for (int s = 0; s < symbols; s++) {
+				t.buyFromBank(m, symbol(s), 100000000);
+			}
+			traders.add(t);
+		}
+		return traders;
+	}
+
+	/**
+	 * Orders for one symbol straddling the base price, so roughly half of
+	 * each side crosses. Alternates buys and sells.
+	 */
+	public static ArrayList<Order> orders(String symbol, int count, ArrayList<Trader> traders,
+			long seed) {
+		Random random = new Random(seed);
+		ArrayList<Order> orders = new ArrayList<Order>(count);
+		for (int i = 0; i < count; i++) {
+			Trader t = traders.get(random.nextInt(traders.size()));
+			int size = 1 + random.nextInt(100);
+			double price = BASE_PRICE + (random.nextInt(41) - 20) * 0.05;
+			if (i % 2 == 0) {
+				orders.add(new BuyOrder(symbol, size, price, t));
+			} else {
+				orders.add(new SellOrder(symbol, size, price, t));
+			}
+		}
+		return orders;
+	}
+}
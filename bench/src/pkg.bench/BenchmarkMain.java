@@ -0,0 +1,39 @@
+package pkg.bench;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs every benchmark in this package, or those matching the first
+ * argument, with the GC profiler for allocation rates. Results go to
+ * {@code bench/results/jmh-<timestamp>.json} so runs can be compared.
+ * Needs the harness classes that JMH's annotation processor generates at
+ * compile time; see the README.
+ */
+public class BenchmarkMain {
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : "pkg\\.bench\\..*";
+		File results = new File("bench/results");
+		results.mkdirs();
+		String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+
+		Options options = new OptionsBuilder()
+				.include(include)
+				.addProfiler(GCProfiler.class)
+				.forks(1)
+				.warmupIterations(5)
+				.measurementIterations(5)
+				.resultFormat(ResultFormatType.JSON)
+				.result(new File(results, "jmh-" + stamp + ".json").getPath())
+				.build();
+		new Runner(options).run();
+	}
+}
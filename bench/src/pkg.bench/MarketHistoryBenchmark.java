@@ -0,0 +1,58 @@
+package pkg.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import pkg.market.Market;
+import pkg.market.MarketDataBus;
+import pkg.market.MarketHistory;
+
+/**
+ * Recording a price through the market-data bus, one symbol per cycle,
+ * cycling over the symbols.
+ * History grows for the whole trial, as it does in a long session.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MarketHistoryBenchmark {
+	@Param({ "1", "100" })
+	int symbols;
+
+	Market market;
+	MarketHistory history;
+	MarketDataBus bus;
+	String[] names;
+	int[] ids;
+	int next;
+
+	@Setup
+	public void createMarket() {
+		market = BenchmarkData.market(symbols);
+		history = market.getMarketHistory();
+		bus = market.getMarketData();
+		names = new String[symbols];
+		ids = new int[symbols];
+		for (int s = 0; s < symbols; s++) {
+			names[s] = BenchmarkData.symbol(s);
+			ids[s] = market.getSymbols().register(names[s]);
+		}
+	}
+
+	@Benchmark
+	public MarketHistory update() {
+		// the history is the bus's only subscriber
+		int s = next++ % symbols;
+		bus.record(ids[s], names[s], 100.0, 10);
+		bus.publish();
+		return history;
+	}
+}
@@ -0,0 +1,74 @@
+package pkg.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import pkg.exception.StockMarketExpection;
+import pkg.market.Market;
+import pkg.order.Order;
+import pkg.order.OrderBook;
+import pkg.trader.Trader;
+import pkg.util.LatencyHistogram;
+
+/**
+ * Cost of the engine's instrumentation: recording one value into a
+ * histogram, with and without the clock reads around it, and entering and
+ * cancelling an order with latency timing on and off. The difference
+ * between the two settings of {@code timing} is the average overhead per
+ * order, with one order in {@link pkg.market.MarketMetrics#DEFAULT_SAMPLE_EVERY}
+ * timed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MetricsBenchmark {
+	@Param({ "true", "false" })
+	boolean timing;
+
+	LatencyHistogram histogram;
+	long value;
+	Market market;
+	OrderBook book;
+	ArrayList<Order> orders;
+	int next;
+
+	@Setup
+	public void createMarket() throws StockMarketExpection {
+		histogram = new LatencyHistogram();
+		market = BenchmarkData.market(1);
+		market.getMetrics().setTiming(timing);
+		book = market.getOrderBook();
+		ArrayList<Trader> population = BenchmarkData.traders(market, 100, 1);
+		orders = BenchmarkData.orders(BenchmarkData.symbol(0), 1024, population, 0);
+	}
+
+	@Benchmark
+	public LatencyHistogram record() {
+		// spread over a few hundred buckets, as real latencies are
+		histogram.record(value++ & 0xFFFF);
+		return histogram;
+	}
+
+	@Benchmark
+	public LatencyHistogram recordSince() {
+		histogram.recordSince(System.nanoTime());
+		return histogram;
+	}
+
+	@Benchmark
+	public Order addAndCancelOrder() {
+		Order order = orders.get(next++ & 1023);
+		long orderId = market.nextOrderId();
+		market.addOrder(order, orderId);
+		return book.cancel(order.getStockSymbol(), orderId);
+	}
+}
@@ -0,0 +1,79 @@
+package pkg.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import pkg.exception.StockMarketExpection;
+import pkg.market.Market;
+import pkg.order.Order;
+import pkg.order.OrderBook;
+import pkg.trader.Trader;
+
+/**
+ * Filling an order book to a given depth, and one full match cycle over a
+ * book of that depth on every symbol, including publishing its prices.
+ * Matching resizes orders and changes traders and the history, so every
+ * invocation starts from a fresh market, traders and orders; the seeded
+ * flow keeps the orders the same each time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OrderBookBenchmark {
+	static final int TRADERS = 100;
+
+	@Param({ "100", "1000", "10000" })
+	int depth;
+
+	@Param({ "1", "16" })
+	int symbols;
+
+	Market market;
+	ArrayList<ArrayList<Order>> flow;
+	OrderBook book;
+
+	@Setup(Level.Invocation)
+	public void fillBook() throws StockMarketExpection {
+		market = BenchmarkData.market(symbols);
+		ArrayList<Trader> population = BenchmarkData.traders(market, TRADERS, symbols);
+		flow = new ArrayList<ArrayList<Order>>(symbols);
+		for (int s = 0; s < symbols; s++) {
+			flow.add(BenchmarkData.orders(BenchmarkData.symbol(s), depth, population, s));
+		}
+		book = new OrderBook(market);
+		for (ArrayList<Order> orders : flow) {
+			for (Order o : orders) {
+				book.addToOrderBook(o);
+			}
+		}
+	}
+
+	@Benchmark
+	public OrderBook addToOrderBook() {
+		OrderBook fresh = new OrderBook(market);
+		for (ArrayList<Order> orders : flow) {
+			for (Order o : orders) {
+				fresh.addToOrderBook(o);
+			}
+		}
+		return fresh;
+	}
+
+	@Benchmark
+	public OrderBook trade() {
+		book.trade();
+		// as Market does after each auction; otherwise the cycle's prices pile up
+		market.getMarketData().publish();
+		return book;
+	}
+}
@@ -0,0 +1,116 @@
+package pkg.bench;
+
+import pkg.exception.StockMarketExpection;
+import pkg.market.Market;
+import pkg.market.api.IPO;
+import pkg.order.OrderType;
+import pkg.trader.Position;
+import pkg.trader.RiskLedger;
+import pkg.trader.Trader;
+
+/**
+ * Checks that a market buy which fills above the cash it reserved never
+ * leaves its trader with negative cash. One buyer has free cash to cover
+ * the difference and pays it; the other has none, has the fill refused and
+ * keeps its order resting. Either way the auction must only move cash and
+ * shares between its traders, never create or destroy them. The process
+ * exits with status 1 if anything ends up otherwise.
+ */
+public class RiskCheck {
+	static final double LAST_PRICE = 100.0;
+	// well above what a market buy reserves at the last price
+	static final double ASK = 150.0;
+	static final int VOLUME = 10;
+
+	public static void main(String[] args) throws StockMarketExpection {
+		boolean ok = true;
+
+		// reserves 110 a share, and has 50 a share more to spare
+		Trader covered = new Trader("covered", 1600.0);
+		ok &= check("covered", covered, 1600.0 - ASK * VOLUME, VOLUME, 0, 0);
+
+		// reserves 110 a share, which is all it has
+		Trader uncovered = new Trader("uncovered", 1100.0);
+		ok &= check("uncovered", uncovered, 1100.0, 0, 1, 1);
+
+		try {
+			covered.setCashInHand(-1.0);
+			System.out.println("FAIL: negative cash accepted");
+			ok = false;
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		if (!ok) {
+			System.exit(1);
+		}
+		System.out.println("OK");
+	}
+
+	/**
+	 * Place a market buy at the last price and run an auction that clears at
+	 * the ask above it. A market buy only trades at a limit price when a
+	 * limit bid behind it crosses, so one share is bid at the ask too.
+	 */
+	private static boolean check(String name, Trader buyer, double cash, int owned, int open,
+			long failedFills) throws StockMarketExpection {
+		Market m = new Market("RISK");
+		IPO.enterNewStock(m, "A", "A", LAST_PRICE);
+		Trader seller = new Trader("seller", 1e6);
+		seller.buyFromBank(m, "A", VOLUME + 1);
+		Trader bidder = new Trader("bidder", 1e6);
+		Trader[] traders = { buyer, seller, bidder };
+		long cashBefore = totalCash(traders);
+		long sharesBefore = totalShares(traders);
+
+		seller.placeNewOrder(m, "A", VOLUME + 1, ASK, OrderType.SELL);
+		buyer.placeNewMarketOrder(m, "A", VOLUME, 0, OrderType.BUY);
+		bidder.placeNewOrder(m, "A", 1, ASK, OrderType.BUY);
+		m.triggerTrade();
+		m.shutdown();
+
+		RiskLedger ledger = buyer.getRiskLedger();
+		int quantity = shares(buyer);
+		System.out.println(name + ": cash=" + buyer.getCashInHand() + " available="
+				+ ledger.getAvailableCash() + " owned=" + quantity + " open=" + buyer.getOrdersPlaced().size()
+				+ " failed=" + m.getMetrics().getFailedFills() + " seller owns " + shares(seller)
+				+ ", bidder owns " + shares(bidder));
+		if (ledger.getCash() < 0 || ledger.getAvailableCash() < 0) {
+			System.out.println("FAIL: " + name + " has negative cash");
+			return false;
+		}
+		if (totalCash(traders) != cashBefore || totalShares(traders) != sharesBefore) {
+			System.out.println("FAIL: " + name + " auction moved cash " + cashBefore + " -> "
+					+ totalCash(traders) + ", shares " + sharesBefore + " -> " + totalShares(traders));
+			return false;
+		}
+		if (buyer.getCashInHand() != cash || quantity != owned || buyer.getOrdersPlaced().size() != open
+				|| m.getMetrics().getFailedFills() != failedFills) {
+			System.out.println("FAIL: " + name + " expected cash=" + cash + " owned=" + owned + " open="
+					+ open + " failed=" + failedFills);
+			return false;
+		}
+		return true;
+	}
+
+	private static long totalCash(Trader[] traders) {
+		long total = 0;
+		for (Trader t : traders) {
+			total += t.getCashInMinorUnits();
+		}
+		return total;
+	}
+
+	private static long totalShares(Trader[] traders) {
+		long total = 0;
+		for (Trader t : traders) {
+			total += shares(t);
+		}
+		return total;
+	}
+
+	private static int shares(Trader t) {
+		Position position = t.getPositionFor("A");
+		return position == null ? 0 : position.getQuantity();
+	}
+}
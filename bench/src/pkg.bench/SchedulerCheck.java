@@ -0,0 +1,62 @@
+package pkg.bench;
+
+import pkg.exception.StockMarketExpection;
+import pkg.market.AuctionPolicy;
+import pkg.market.AuctionScheduler;
+import pkg.market.Market;
+import pkg.market.api.IPO;
+import pkg.order.OrderType;
+import pkg.trader.Trader;
+
+/**
+ * Checks that continuous auctions only run for orders that can trade. A
+ * market buy facing nothing but limit asks cannot clear, so it must not set
+ * off an auction; a limit bid at the ask behind it can, and must. A resting
+ * bid amended up to the ask must set one off too. The process exits with
+ * status 1 otherwise.
+ */
+public class SchedulerCheck {
+	static final double ASK = 101.0;
+
+	public static void main(String[] args) throws StockMarketExpection {
+		Market m = new Market("SCHED");
+		IPO.enterNewStock(m, "A", "A", 100.0);
+		AuctionScheduler scheduler = new AuctionScheduler(m, AuctionPolicy.continuous());
+		scheduler.start();
+		Trader seller = new Trader("seller", 1e6);
+		seller.buyFromBank(m, "A", 15);
+		seller.placeNewOrder(m, "A", 10, ASK, OrderType.SELL);
+
+		new Trader("market", 1e6).placeNewMarketOrder(m, "A", 5, 0, OrderType.BUY);
+		long afterMarketBuy = scheduler.getEarlyAuctions();
+		System.out.println("market buy against limit asks: auctions=" + afterMarketBuy + " fills="
+				+ m.getFillCount());
+
+		new Trader("limit", 1e6).placeNewOrder(m, "A", 5, ASK, OrderType.BUY);
+		long afterLimitBuy = scheduler.getEarlyAuctions();
+		long fillsAfterLimitBuy = m.getFillCount();
+		System.out.println("limit bid at the ask behind it: auctions=" + afterLimitBuy + " fills="
+				+ fillsAfterLimitBuy);
+
+		seller.placeNewOrder(m, "A", 5, ASK, OrderType.SELL);
+		Trader amender = new Trader("amender", 1e6);
+		amender.placeNewOrder(m, "A", 5, ASK - 2, OrderType.BUY);
+		long beforeAmend = scheduler.getEarlyAuctions();
+		amender.amendOrder(m, "A", 5, ASK);
+		long afterAmend = scheduler.getEarlyAuctions();
+		System.out.println("bid amended up to the ask: auctions=" + afterAmend + " fills=" + m.getFillCount());
+		scheduler.stop();
+		m.shutdown();
+
+		if (afterMarketBuy != 0 || fillsAfterLimitBuy == 0 || afterLimitBuy != 1) {
+			System.out.println("FAIL: expected no auction for the market buy alone, then one that fills");
+			System.exit(1);
+		}
+		if (beforeAmend != afterLimitBuy || afterAmend != beforeAmend + 1
+				|| m.getFillCount() == fillsAfterLimitBuy) {
+			System.out.println("FAIL: expected only the amend that crosses to set off an auction");
+			System.exit(1);
+		}
+		System.out.println("OK");
+	}
+}
@@ -0,0 +1,56 @@
+package pkg.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import pkg.exception.StockMarketExpection;
+import pkg.market.Market;
+import pkg.order.BuyOrder;
+import pkg.order.Order;
+import pkg.order.SellOrder;
+import pkg.trader.Trader;
+
+/**
+ * Applying a fill to a trader holding a position in every listed symbol.
+ * Buys and sells alternate so the position stays the same size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TraderBenchmark {
+	@Param({ "1", "100", "1000" })
+	int symbols;
+
+	Trader trader;
+	Order[] buys;
+	Order[] sells;
+	int next;
+
+	@Setup
+	public void createTrader() throws StockMarketExpection {
+		Market m = BenchmarkData.market(symbols);
+		trader = BenchmarkData.traders(m, 1, symbols).get(0);
+		buys = new Order[symbols];
+		sells = new Order[symbols];
+		for (int s = 0; s < symbols; s++) {
+			buys[s] = new BuyOrder(BenchmarkData.symbol(s), 10, 100.0, trader);
+			sells[s] = new SellOrder(BenchmarkData.symbol(s), 10, 100.0, trader);
+		}
+	}
+
+	@Benchmark
+	public Trader tradePerformed() throws StockMarketExpection {
+		int s = next++ % symbols;
+		trader.tradePerformed(buys[s], 10, 100.0);
+		trader.tradePerformed(sells[s], 10, 100.0);
+		return trader;
+	}
+}
@@ -0,0 +1,231 @@
+package pkg.backtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import pkg.exception.StockMarketExpection;
+import pkg.market.Market;
+import pkg.market.MarketHistory;
+import pkg.market.api.IExecutionListener;
+import pkg.market.api.IPO;
+import pkg.market.journal.JournalRecord;
+import pkg.order.BuyOrder;
+import pkg.order.Order;
+import pkg.order.OrderType;
+import pkg.stock.Stock;
+import pkg.trader.Position;
+import pkg.trader.Trader;
+
+/**
+ * Replays recorded {@link OrderFlow} against a strategy, as fast as one
+ * thread can match it. Each run builds its own {@link Market}, order book
+ * and traders, with a {@link SimulatedClock} that moves on by the configured
+ * interval at every recorded auction. Nothing is journaled, timed or handed
+ * to another thread, and the history keeps only the latest ticks per
+ * symbol, so a run holds little more than its resting orders and the flow
+ * itself is shared by all runs.
+ *
+ * {@link #sweep(List)} runs one replay per parameter set on a fork/join
+ * pool. Runs share nothing but the flow, so they scale with cores.
+ * @param <P> the parameters that tell one run from another
+ */
+public class Backtest<P> {
+	final OrderFlow flow;
+	final BacktestConfig config;
+	final IStrategyFactory<P> strategies;
+
+	public Backtest(OrderFlow flow, BacktestConfig config, IStrategyFactory<P> strategies) {
+		for (String trader : flow.traderNames) {
+			if (trader.equals(config.strategyTrader)) {
+				throw new IllegalArgumentException("Strategy trader " + trader + " also trades in the recorded flow");
+			}
+		}
+		this.flow = flow;
+		this.config = config;
+		this.strategies = strategies;
+	}
+
+	/**
+	 * Run one replay per parameter set, in parallel.
+	 * @return the results in the order of {@code parameters}
+	 */
+	public List<BacktestResult<P>> sweep(List<P> parameters) throws StockMarketExpection {
+		ArrayList<BacktestResult<P>> results = new ArrayList<BacktestResult<P>>(
+				Collections.<BacktestResult<P>> nCopies(parameters.size(), null));
+		if (parameters.isEmpty()) {
+			return results;
+		}
+		ForkJoinPool pool = new ForkJoinPool(config.parallelism);
+		try {
+			pool.invoke(new Sweep(parameters, results, 0, parameters.size()));
+		} catch (RuntimeException e) {
+			// fork/join may rethrow a copy, so look down the causes
+			for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+				if (cause instanceof StockMarketExpection) {
+					throw (StockMarketExpection) cause;
+				}
+			}
+			throw e;
+		} finally {
+			pool.shutdown();
+		}
+		return results;
+	}
+
+	class Sweep extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final List<P> parameters;
+		final List<BacktestResult<P>> results;
+		final int from;
+		final int to;
+
+		Sweep(List<P> parameters, List<BacktestResult<P>> results, int from, int to) {
+			this.parameters = parameters;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				try {
+					results.set(from, run(parameters.get(from), "backtest-" + from));
+				} catch (StockMarketExpection e) {
+					throw new IllegalStateException(e);
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new Sweep(parameters, results, from, middle), new Sweep(parameters, results, middle, to));
+		}
+	}
+
+	public BacktestResult<P> run(P parameters) throws StockMarketExpection {
+		return run(parameters, "backtest");
+	}
+
+	BacktestResult<P> run(P parameters, String marketName) throws StockMarketExpection {
+		long start = System.nanoTime();
+		final BacktestResult<P> result = new BacktestResult<P>(parameters);
+		SimulatedClock clock = new SimulatedClock(config.startMillis);
+		Market m = new Market(marketName);
+		m.setClock(clock);
+		m.getMetrics().setTiming(false);
+		m.setMarketHistory(new MarketHistory(m, config.historyCapacity));
+		for (Entry<String, Double> listing : config.openingPrices.entrySet()) {
+			IPO.enterNewStock(m, listing.getKey(), listing.getKey(), listing.getValue());
+		}
+		// by the flow's trader index
+		Trader[] traders = new Trader[flow.traderNames.length];
+		for (int i = 0; i < traders.length; i++) {
+			traders[i] = new Trader(flow.traderNames[i], config.traderCash);
+		}
+		final Trader trader = new Trader(config.strategyTrader, config.strategyCash);
+		m.addExecutionListener(new IExecutionListener() {
+			@Override
+			public void onFill(Order order, long orderId, int size, double price) {
+				if (order.getTrader() != trader) {
+					return;
+				}
+				result.fills++;
+				if (order instanceof BuyOrder) {
+					result.sharesBought += size;
+				}
+				else {
+					result.sharesSold += size;
+				}
+				result.turnover += size * price;
+			}
+
+			@Override
+			public void onCancel(Order order, long orderId) {
+			}
+		});
+
+		IStrategy strategy = strategies.create(parameters);
+		try {
+			strategy.start(m, trader);
+		} catch (StockMarketExpection e) {
+			result.strategyRejected++;
+		}
+		long fillsBefore = m.getFillCount();
+		OrderFlow f = flow;
+		for (int i = 0; i < f.size; i++) {
+			byte type = f.types[i];
+			if (type == JournalRecord.TRADE || type == JournalRecord.SYMBOL_TRADE) {
+				clock.advance(config.auctionIntervalMillis);
+				if (type == JournalRecord.TRADE) {
+					m.triggerTrade();
+				}
+				else {
+					m.triggerTrade(f.symbolNames[f.symbols[i]]);
+				}
+				result.auctions++;
+				try {
+					strategy.afterAuction(m, trader);
+				} catch (StockMarketExpection e) {
+					result.strategyRejected++;
+				}
+			}
+			else {
+				apply(m, traders[f.traders[i]], f, i, result);
+			}
+		}
+		result.events = f.size;
+		result.marketFills = m.getFillCount() - fillsBefore;
+		result.simulatedMillis = clock.currentTimeMillis() - config.startMillis;
+		mark(m, trader, result);
+		m.shutdown();
+		result.elapsedNanos = System.nanoTime() - start;
+		return result;
+	}
+
+	private static void apply(Market m, Trader trader, OrderFlow f, int i, BacktestResult<?> result) {
+		String symbol = f.symbolNames[f.symbols[i]];
+		try {
+			switch (f.types[i]) {
+			case JournalRecord.BANK_PURCHASE:
+				trader.buyFromBank(m, symbol, f.sizes[i]);
+				break;
+			case JournalRecord.CANCEL:
+				trader.cancelOrder(m, symbol);
+				break;
+			case JournalRecord.AMEND:
+				trader.amendOrder(m, symbol, f.sizes[i], f.prices[i]);
+				break;
+			default:
+				OrderType type = f.buys[i] ? OrderType.BUY : OrderType.SELL;
+				if (f.marketOrders[i]) {
+					trader.placeNewMarketOrder(m, symbol, f.sizes[i], 0, type);
+				}
+				else {
+					trader.placeNewOrder(m, symbol, f.sizes[i], f.prices[i], type);
+				}
+			}
+		} catch (StockMarketExpection e) {
+			result.flowRejected++;
+		}
+	}
+
+	/**
+	 * Value the strategy's cash and holdings at the last clearing prices.
+	 */
+	private void mark(Market m, Trader trader, BacktestResult<P> result) {
+		result.startingValue = config.strategyCash;
+		result.cash = trader.getCashInHand();
+		double holdings = 0.0;
+		for (Stock stock : m.getStocks()) {
+			Position position = trader.getPositionFor(stock.getSymbol());
+			if (position != null) {
+				holdings += position.getQuantity() * stock.getPrice();
+				result.unrealizedPnl += position.getQuantity() * (stock.getPrice() - position.getAverageCost());
+			}
+		}
+		result.endingValue = result.cash + holdings;
+	}
+}
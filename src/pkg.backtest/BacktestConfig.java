@@ -0,0 +1,97 @@
+package pkg.backtest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Settings shared by every run of a {@link Backtest}. A recorded journal does
+ * not say which stocks were listed or how much cash the traders started
+ * with, so both are given here.
+ */
+public class BacktestConfig {
+	LinkedHashMap<String, Double> openingPrices = new LinkedHashMap<String, Double>();
+	// starting cash of every trader in the recorded flow
+	double traderCash = 1000000.0;
+	double strategyCash = 1000000.0;
+	String strategyTrader = "strategy";
+	long startMillis;
+	// simulated time between two recorded auctions
+	long auctionIntervalMillis = 100;
+	// ticks kept per symbol; bounds each run's history
+	int historyCapacity = 1024;
+	int parallelism = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * List the stock at this price in every run.
+	 */
+	public void setOpeningPrice(String symbol, double price) {
+		openingPrices.put(symbol, price);
+	}
+
+	public Map<String, Double> getOpeningPrices() {
+		return openingPrices;
+	}
+
+	public double getTraderCash() {
+		return traderCash;
+	}
+
+	public void setTraderCash(double traderCash) {
+		this.traderCash = traderCash;
+	}
+
+	public double getStrategyCash() {
+		return strategyCash;
+	}
+
+	public void setStrategyCash(double strategyCash) {
+		this.strategyCash = strategyCash;
+	}
+
+	public String getStrategyTrader() {
+		return strategyTrader;
+	}
+
+	/**
+	 * @param strategyTrader name of the strategy's trader; must not be a
+	 *                       trader of the recorded flow
+	 */
+	public void setStrategyTrader(String strategyTrader) {
+		this.strategyTrader = strategyTrader;
+	}
+
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	public void setStartMillis(long startMillis) {
+		this.startMillis = startMillis;
+	}
+
+	public long getAuctionIntervalMillis() {
+		return auctionIntervalMillis;
+	}
+
+	public void setAuctionIntervalMillis(long auctionIntervalMillis) {
+		this.auctionIntervalMillis = auctionIntervalMillis;
+	}
+
+	public int getHistoryCapacity() {
+		return historyCapacity;
+	}
+
+	public void setHistoryCapacity(int historyCapacity) {
+		this.historyCapacity = historyCapacity;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @param parallelism runs of a sweep that may execute at once
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+}
@@ -0,0 +1,129 @@
+package pkg.backtest;
+
+/**
+ * P&L and fill counts of one backtest run. Values are marked to the last
+ * clearing price of each stock when the recorded flow ends.
+ * @param <P> the run's parameters
+ */
+public class BacktestResult<P> {
+	P parameters;
+	double startingValue;
+	double endingValue;
+	double unrealizedPnl;
+	double cash;
+	long fills;
+	long sharesBought;
+	long sharesSold;
+	double turnover;
+	long strategyRejected;
+	long flowRejected;
+	long marketFills;
+	long events;
+	long auctions;
+	long simulatedMillis;
+	long elapsedNanos;
+
+	BacktestResult(P parameters) {
+		this.parameters = parameters;
+	}
+
+	public P getParameters() {
+		return parameters;
+	}
+
+	public double getPnl() {
+		return endingValue - startingValue;
+	}
+
+	/**
+	 * @return gain on shares still held, against what was paid for them
+	 */
+	public double getUnrealizedPnl() {
+		return unrealizedPnl;
+	}
+
+	public double getRealizedPnl() {
+		return getPnl() - unrealizedPnl;
+	}
+
+	public double getEndingValue() {
+		return endingValue;
+	}
+
+	public double getCash() {
+		return cash;
+	}
+
+	/**
+	 * @return fills of the strategy's orders
+	 */
+	public long getFills() {
+		return fills;
+	}
+
+	public long getSharesBought() {
+		return sharesBought;
+	}
+
+	public long getSharesSold() {
+		return sharesSold;
+	}
+
+	/**
+	 * @return value of everything the strategy traded
+	 */
+	public double getTurnover() {
+		return turnover;
+	}
+
+	/**
+	 * @return calls to the strategy that ended with a refused order
+	 */
+	public long getStrategyRejected() {
+		return strategyRejected;
+	}
+
+	/**
+	 * @return recorded orders refused in this run, typically because the
+	 *         strategy's trades changed what a recorded trader could afford
+	 *         or owned
+	 */
+	public long getFlowRejected() {
+		return flowRejected;
+	}
+
+	/**
+	 * @return fills of every trader in the run
+	 */
+	public long getMarketFills() {
+		return marketFills;
+	}
+
+	public long getEvents() {
+		return events;
+	}
+
+	public long getAuctions() {
+		return auctions;
+	}
+
+	public long getSimulatedMillis() {
+		return simulatedMillis;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	public double getEventsPerSecond() {
+		return elapsedNanos == 0 ? 0.0 : events * 1e9 / elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: pnl %.2f (realized %.2f), %d fills, %d bought, %d sold, %d refused; "
+				+ "%d events, %d market fills, %d flow orders refused, %.0f events/s", parameters, getPnl(),
+				getRealizedPnl(), fills, sharesBought, sharesSold, strategyRejected, events, marketFills,
+				flowRejected, getEventsPerSecond());
+	}
+}
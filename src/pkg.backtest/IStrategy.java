@@ -0,0 +1,25 @@
+package pkg.backtest;
+
+import pkg.exception.StockMarketExpection;
+import pkg.market.Market;
+import pkg.trader.Trader;
+
+/**
+ * Trading logic under test. A backtest gives each strategy its own market
+ * and trader and calls it on the backtest's thread, between events of the
+ * recorded flow, so it can read prices, depth and history and place orders
+ * through the trader without locking.
+ */
+public interface IStrategy {
+	/**
+	 * Called once the stocks are listed, before the first recorded event.
+	 */
+	public void start(Market m, Trader trader) throws StockMarketExpection;
+
+	/**
+	 * Called after every recorded auction, once its prices are published and
+	 * the market's clock shows its time. A refused order ends the call and
+	 * is counted in {@link BacktestResult#getStrategyRejected()}.
+	 */
+	public void afterAuction(Market m, Trader trader) throws StockMarketExpection;
+}
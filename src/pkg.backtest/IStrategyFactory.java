@@ -0,0 +1,9 @@
+package pkg.backtest;
+
+/**
+ * Makes a fresh {@link IStrategy} for each run of a parameter sweep.
+ * @param <P> the parameters that tell one run from another
+ */
+public interface IStrategyFactory<P> {
+	public IStrategy create(P parameters);
+}
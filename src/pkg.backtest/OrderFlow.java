@@ -0,0 +1,139 @@
+package pkg.backtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import pkg.market.journal.JournalReader;
+import pkg.market.journal.JournalRecord;
+
+/**
+ * Recorded order flow from an {@link pkg.market.journal.OrderJournal},
+ * decoded once into flat columns so any number of backtests can replay it
+ * at the same time without reading the file again. Symbols and traders are
+ * stored as indexes into name tables. Journaled fills are only counted:
+ * replays produce their own.
+ *
+ * The flow is never changed after {@link #load(File)} and is safe to share
+ * between threads.
+ */
+public class OrderFlow {
+	int size;
+	byte[] types = new byte[1024];
+	boolean[] buys = new boolean[1024];
+	boolean[] marketOrders = new boolean[1024];
+	int[] sizes = new int[1024];
+	double[] prices = new double[1024];
+	// -1 for a trade over every symbol
+	int[] symbols = new int[1024];
+	// -1 for trades
+	int[] traders = new int[1024];
+	String[] symbolNames;
+	String[] traderNames;
+	long journaledFills;
+
+	OrderFlow() {
+	}
+
+	/**
+	 * Read every complete record of the journal.
+	 */
+	public static OrderFlow load(File journalFile) throws IOException {
+		OrderFlow flow = new OrderFlow();
+		HashMap<String, Integer> symbolIds = new HashMap<String, Integer>();
+		HashMap<String, Integer> traderIds = new HashMap<String, Integer>();
+		ArrayList<String> symbolNames = new ArrayList<String>();
+		ArrayList<String> traderNames = new ArrayList<String>();
+		JournalReader reader = new JournalReader(journalFile);
+		try {
+			JournalRecord r;
+			while ((r = reader.next()) != null) {
+				if (r.getType() == JournalRecord.FILL) {
+					flow.journaledFills++;
+					continue;
+				}
+				int symbol = r.getSymbol() == null ? -1 : indexOf(r.getSymbol(), symbolIds, symbolNames);
+				int trader = r.getTrader() == null ? -1 : indexOf(r.getTrader(), traderIds, traderNames);
+				flow.add(r.getType(), r.isBuy(), r.isMarketOrder(), r.getSize(), r.getPrice(), symbol, trader);
+			}
+		} finally {
+			reader.close();
+		}
+		flow.symbolNames = symbolNames.toArray(new String[symbolNames.size()]);
+		flow.traderNames = traderNames.toArray(new String[traderNames.size()]);
+		return flow;
+	}
+
+	private static int indexOf(String name, HashMap<String, Integer> ids, ArrayList<String> names) {
+		Integer id = ids.get(name);
+		if (id == null) {
+			id = names.size();
+			ids.put(name, id);
+			names.add(name);
+		}
+		return id;
+	}
+
+	private void add(byte type, boolean buy, boolean marketOrder, int orderSize, double price, int symbol,
+			int trader) {
+		if (size == types.length) {
+			int grown = size * 2;
+			types = Arrays.copyOf(types, grown);
+			buys = Arrays.copyOf(buys, grown);
+			marketOrders = Arrays.copyOf(marketOrders, grown);
+			sizes = Arrays.copyOf(sizes, grown);
+			prices = Arrays.copyOf(prices, grown);
+			symbols = Arrays.copyOf(symbols, grown);
+			traders = Arrays.copyOf(traders, grown);
+		}
+		types[size] = type;
+		buys[size] = buy;
+		marketOrders[size] = marketOrder;
+		sizes[size] = orderSize;
+		prices[size] = price;
+		symbols[size] = symbol;
+		traders[size] = trader;
+		size++;
+	}
+
+	/**
+	 * @return records kept, every journal record but fills
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return every symbol the flow mentions, in order of first appearance
+	 */
+	public String[] getSymbols() {
+		return symbolNames.clone();
+	}
+
+	/**
+	 * @return every trader the flow mentions, in order of first appearance
+	 */
+	public String[] getTraders() {
+		return traderNames.clone();
+	}
+
+	public long getJournaledFills() {
+		return journaledFills;
+	}
+
+	/**
+	 * @return auctions in the flow, which is how many steps simulated time
+	 *         takes
+	 */
+	public int getAuctionCount() {
+		int auctions = 0;
+		for (int i = 0; i < size; i++) {
+			if (types[i] == JournalRecord.TRADE || types[i] == JournalRecord.SYMBOL_TRADE) {
+				auctions++;
+			}
+		}
+		return auctions;
+	}
+}
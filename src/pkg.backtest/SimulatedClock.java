@@ -0,0 +1,28 @@
+package pkg.backtest;
+
+import pkg.market.api.IClock;
+
+/**
+ * Time that only moves when a backtest moves it, so a replay stamps the same
+ * times however fast it runs. Each backtest has its own.
+ */
+public class SimulatedClock implements IClock {
+	long now;
+
+	public SimulatedClock(long startMillis) {
+		now = startMillis;
+	}
+
+	@Override
+	public long currentTimeMillis() {
+		return now;
+	}
+
+	public void advance(long millis) {
+		now += millis;
+	}
+
+	public void set(long millis) {
+		now = millis;
+	}
+}
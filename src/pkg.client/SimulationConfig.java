@@ -0,0 +1,174 @@
+package pkg.client;
+
+/**
+ * Settings for a {@link SimulationDriver} run. Defaults describe a small
+ * load that finishes in a few seconds.
+ */
+public class SimulationConfig {
+	int traders = 10000;
+	int markets = 2;
+	int symbolsPerMarket = 8;
+	// Zipf exponent for how orders spread over symbols; 0 is uniform
+	double symbolSkew = 1.0;
+	// orders per second placed by each trader
+	double ordersPerTraderPerSecond = 5.0;
+	double marketOrderRatio = 0.1;
+	long auctionIntervalMillis = 100;
+	long durationMillis = 5000;
+	double startingCash = 1000000.0;
+	int startingShares = 500;
+	int maxOrderSize = 100;
+	// spread of limit prices around the last price, as a fraction of it
+	double priceBand = 0.02;
+	int ringCapacity = 1 << 16;
+	long seed = 42;
+
+	public int getTraders() {
+		return traders;
+	}
+
+	public void setTraders(int traders) {
+		this.traders = traders;
+	}
+
+	public int getMarkets() {
+		return markets;
+	}
+
+	public void setMarkets(int markets) {
+		this.markets = markets;
+	}
+
+	public int getSymbolsPerMarket() {
+		return symbolsPerMarket;
+	}
+
+	public void setSymbolsPerMarket(int symbolsPerMarket) {
+		this.symbolsPerMarket = symbolsPerMarket;
+	}
+
+	public double getSymbolSkew() {
+		return symbolSkew;
+	}
+
+	public void setSymbolSkew(double symbolSkew) {
+		this.symbolSkew = symbolSkew;
+	}
+
+	public double getOrdersPerTraderPerSecond() {
+		return ordersPerTraderPerSecond;
+	}
+
+	public void setOrdersPerTraderPerSecond(double ordersPerTraderPerSecond) {
+		this.ordersPerTraderPerSecond = ordersPerTraderPerSecond;
+	}
+
+	public double getMarketOrderRatio() {
+		return marketOrderRatio;
+	}
+
+	public void setMarketOrderRatio(double marketOrderRatio) {
+		this.marketOrderRatio = marketOrderRatio;
+	}
+
+	public long getAuctionIntervalMillis() {
+		return auctionIntervalMillis;
+	}
+
+	public void setAuctionIntervalMillis(long auctionIntervalMillis) {
+		this.auctionIntervalMillis = auctionIntervalMillis;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	public void setDurationMillis(long durationMillis) {
+		this.durationMillis = durationMillis;
+	}
+
+	public double getStartingCash() {
+		return startingCash;
+	}
+
+	public void setStartingCash(double startingCash) {
+		this.startingCash = startingCash;
+	}
+
+	public int getStartingShares() {
+		return startingShares;
+	}
+
+	public void setStartingShares(int startingShares) {
+		this.startingShares = startingShares;
+	}
+
+	public int getMaxOrderSize() {
+		return maxOrderSize;
+	}
+
+	public void setMaxOrderSize(int maxOrderSize) {
+		this.maxOrderSize = maxOrderSize;
+	}
+
+	public double getPriceBand() {
+		return priceBand;
+	}
+
+	public void setPriceBand(double priceBand) {
+		this.priceBand = priceBand;
+	}
+
+	public int getRingCapacity() {
+		return ringCapacity;
+	}
+
+	public void setRingCapacity(int ringCapacity) {
+		this.ringCapacity = ringCapacity;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Read {@code --name=value} arguments, e.g. {@code --traders=100000}.
+	 */
+	public static SimulationConfig fromArgs(String[] args) {
+		SimulationConfig config = new SimulationConfig();
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+			if (!arg.startsWith("--") || eq < 0) {
+				throw new IllegalArgumentException("Expected --name=value: " + arg);
+			}
+			String name = arg.substring(2, eq);
+			String value = arg.substring(eq + 1);
+			if (name.equals("traders")) {
+				config.traders = Integer.parseInt(value);
+			} else if (name.equals("markets")) {
+				config.markets = Integer.parseInt(value);
+			} else if (name.equals("symbols")) {
+				config.symbolsPerMarket = Integer.parseInt(value);
+			} else if (name.equals("skew")) {
+				config.symbolSkew = Double.parseDouble(value);
+			} else if (name.equals("rate")) {
+				config.ordersPerTraderPerSecond = Double.parseDouble(value);
+			} else if (name.equals("marketOrders")) {
+				config.marketOrderRatio = Double.parseDouble(value);
+			} else if (name.equals("auctionMillis")) {
+				config.auctionIntervalMillis = Long.parseLong(value);
+			} else if (name.equals("durationMillis")) {
+				config.durationMillis = Long.parseLong(value);
+			} else if (name.equals("seed")) {
+				config.seed = Long.parseLong(value);
+			} else {
+				throw new IllegalArgumentException("Unknown setting: " + name);
+			}
+		}
+		return config;
+	}
+}
@@ -0,0 +1,250 @@
+package pkg.client;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import pkg.exception.StockMarketExpection;
+import pkg.market.Market;
+import pkg.market.OrderGateway;
+import pkg.market.ParkingWaitStrategy;
+import pkg.market.YieldingWaitStrategy;
+import pkg.market.api.IPO;
+import pkg.order.OrderType;
+import pkg.stock.Stock;
+import pkg.trader.Trader;
+
+/**
+ * Synthetic load generator. Lists a set of symbols on several markets,
+ * creates a population of traders and lets each of them place limit and
+ * market orders at a steady rate, while every market runs an auction on a
+ * fixed interval. Orders go through the normal {@link Trader} calls and an
+ * {@link OrderGateway} per market.
+ *
+ * Each trader runs on its own virtual thread when the JVM supports them, so
+ * millions of traders can be simulated. On older JVMs the traders are split
+ * over a pool of platform threads that serve them in turn.
+ *
+ * Usage: {@code SimulationDriver --traders=100000 --durationMillis=10000}
+ */
+public class SimulationDriver {
+	SimulationConfig config;
+	ArrayList<Market> markets;
+	ArrayList<OrderGateway> gateways;
+	String[] symbols;
+	Market[] symbolMarket;
+	double[] symbolCdf;
+	AtomicLong ordersPlaced = new AtomicLong();
+	AtomicLong ordersRejected = new AtomicLong();
+	AtomicLong auctions = new AtomicLong();
+
+	public SimulationDriver(SimulationConfig config) {
+		this.config = config;
+	}
+
+	public static void main(String[] args) throws Exception {
+		SimulationReport report = new SimulationDriver(SimulationConfig.fromArgs(args)).run();
+		System.out.println(report);
+	}
+
+	public SimulationReport run() throws InterruptedException, StockMarketExpection {
+		setUpMarkets();
+		ArrayList<Trader> traders = createTraders();
+
+		ScheduledExecutorService auctioneer = Executors.newSingleThreadScheduledExecutor();
+		for (final Market m : markets) {
+			auctioneer.scheduleAtFixedRate(new Runnable() {
+				@Override
+				public void run() {
+					m.triggerTrade();
+					auctions.incrementAndGet();
+				}
+			}, config.auctionIntervalMillis, config.auctionIntervalMillis, TimeUnit.MILLISECONDS);
+		}
+
+		long fillsBefore = totalFills();
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(config.durationMillis);
+		ExecutorService virtual = newVirtualThreadExecutor();
+		if (virtual != null) {
+			for (int i = 0; i < traders.size(); i++) {
+				virtual.execute(traderLoop(traders.subList(i, i + 1), i, deadline));
+			}
+			virtual.shutdown();
+			virtual.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} else {
+			int threads = Runtime.getRuntime().availableProcessors() * 4;
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			int slice = (traders.size() + threads - 1) / threads;
+			for (int from = 0; from < traders.size(); from += slice) {
+				pool.execute(traderLoop(traders.subList(from, Math.min(from + slice, traders.size())), from, deadline));
+			}
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		auctioneer.shutdown();
+		auctioneer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		for (Market m : markets) {
+			m.triggerTrade();
+		}
+
+		SimulationReport report = new SimulationReport();
+		report.elapsedNanos = System.nanoTime() - start;
+		report.traders = traders.size();
+		report.virtualThreads = virtual != null;
+		report.ordersPlaced = ordersPlaced.get();
+		report.ordersRejected = ordersRejected.get();
+		report.fills = totalFills() - fillsBefore;
+		report.auctions = auctions.get();
+		for (Market m : markets) {
+			m.shutdown();
+		}
+		return report;
+	}
+
+	private void setUpMarkets() {
+		markets = new ArrayList<Market>();
+		gateways = new ArrayList<OrderGateway>();
+		int symbolCount = config.markets * config.symbolsPerMarket;
+		symbols = new String[symbolCount];
+		symbolMarket = new Market[symbolCount];
+		Random random = new Random(config.seed);
+		for (int i = 0; i < config.markets; i++) {
+			Market m = new Market("SIM" + i);
+			for (int j = 0; j < config.symbolsPerMarket; j++) {
+				int s = i * config.symbolsPerMarket + j;
+				symbols[s] = "M" + i + "S" + j;
+				symbolMarket[s] = m;
+				IPO.enterNewStock(m, symbols[s], "Simulated " + symbols[s], 20 + random.nextInt(200));
+			}
+			OrderGateway gateway = new OrderGateway(m, config.ringCapacity, 256,
+					new ParkingWaitStrategy(), new YieldingWaitStrategy());
+			gateway.start();
+			markets.add(m);
+			gateways.add(gateway);
+		}
+
+		// Zipf weights: the symbol of rank k gets 1 / k^skew of the flow
+		symbolCdf = new double[symbolCount];
+		double total = 0.0;
+		for (int k = 0; k < symbolCount; k++) {
+			total += 1.0 / Math.pow(k + 1, config.symbolSkew);
+			symbolCdf[k] = total;
+		}
+		for (int k = 0; k < symbolCount; k++) {
+			symbolCdf[k] /= total;
+		}
+	}
+
+	private ArrayList<Trader> createTraders() throws StockMarketExpection {
+		ArrayList<Trader> traders = new ArrayList<Trader>(config.traders);
+		Random random = new Random(config.seed + 1);
+		for (int i = 0; i < config.traders; i++) {
+			Trader t = new Trader("sim" + i, config.startingCash);
+			// enough stock in two symbols to have something to sell
+			for (int k = 0; k < 2; k++) {
+				int s = pickSymbol(random);
+				if (t.ownedQuantity(symbols[s]) == 0) {
+					t.buyFromBank(symbolMarket[s], symbols[s], config.startingShares);
+				}
+			}
+			traders.add(t);
+		}
+		return traders;
+	}
+
+	private Runnable traderLoop(final List<Trader> traders, final int seed,
+			final long deadline) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				Random random = new Random(config.seed + seed);
+				long period = (long) (1e9 / config.ordersPerTraderPerSecond);
+				long next = System.nanoTime() + (long) (random.nextDouble() * period);
+				while (true) {
+					long now = System.nanoTime();
+					if (now >= deadline) {
+						return;
+					}
+					if (next > now) {
+						LockSupport.parkNanos(Math.min(next, deadline) - now);
+						continue;
+					}
+					for (int i = 0; i < traders.size(); i++) {
+						placeOne(traders.get(i), random);
+					}
+					next += period;
+				}
+			}
+		};
+	}
+
+	private void placeOne(Trader t, Random random) {
+		int s = pickSymbol(random);
+		String symbol = symbols[s];
+		Market m = symbolMarket[s];
+		Stock stock = m.getStockForSymbol(symbol);
+		int size = 1 + random.nextInt(config.maxOrderSize);
+		OrderType side = OrderType.BUY;
+		int owned = t.ownedQuantity(symbol);
+		if (owned > 0 && random.nextBoolean()) {
+			side = OrderType.SELL;
+			size = Math.min(size, owned);
+		}
+		try {
+			if (random.nextDouble() < config.marketOrderRatio) {
+				t.placeNewMarketOrder(m, symbol, size, 0, side);
+			} else {
+				double offset = (random.nextDouble() * 2 - 1) * config.priceBand;
+				double price = Math.max(0.01, Math.round(stock.getPrice() * (1 + offset) * 100) / 100.0);
+				t.placeNewOrder(m, symbol, size, price, side);
+			}
+			ordersPlaced.incrementAndGet();
+		} catch (StockMarketExpection e) {
+			ordersRejected.incrementAndGet();
+		}
+	}
+
+	private int pickSymbol(Random random) {
+		double u = random.nextDouble();
+		int lo = 0;
+		int hi = symbolCdf.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (symbolCdf[mid] < u) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	private long totalFills() {
+		long fills = 0;
+		for (Market m : markets) {
+			fills += m.getFillCount();
+		}
+		return fills;
+	}
+
+	/**
+	 * @return a virtual-thread-per-task executor, or null if the running JVM
+	 *         has no virtual threads
+	 */
+	static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package pkg.client;
+
+/**
+ * Totals from one {@link SimulationDriver} run.
+ */
+public class SimulationReport {
+	long traders;
+	boolean virtualThreads;
+	long ordersPlaced;
+	long ordersRejected;
+	long fills;
+	long auctions;
+	long elapsedNanos;
+
+	public long getOrdersPlaced() {
+		return ordersPlaced;
+	}
+
+	public long getOrdersRejected() {
+		return ordersRejected;
+	}
+
+	public long getFills() {
+		return fills;
+	}
+
+	public long getAuctions() {
+		return auctions;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	public boolean usedVirtualThreads() {
+		return virtualThreads;
+	}
+
+	public double getOrdersPerSecond() {
+		return ordersPlaced * 1e9 / elapsedNanos;
+	}
+
+	public double getFillsPerSecond() {
+		return fills * 1e9 / elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d traders on %s threads, %.1f s: %d orders (%.0f/s), %d rejected, "
+				+ "%d fills (%.0f/s), %d auctions", traders,
+				virtualThreads ? "virtual" : "platform", elapsedNanos / 1e9, ordersPlaced,
+				getOrdersPerSecond(), ordersRejected, fills, getFillsPerSecond(), auctions);
+	}
+}
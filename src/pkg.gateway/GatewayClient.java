@@ -0,0 +1,142 @@
+package pkg.gateway;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import pkg.market.api.IOrderEntryListener;
+import pkg.order.OrderType;
+import pkg.util.PriceUtility;
+
+/**
+ * Client side of the order-entry protocol, for load generators and
+ * strategies running in their own process. Messages are batched in a direct
+ * buffer until {@link #flush()}, or until it is full. Replies are read on a
+ * daemon thread and handed to the listener.
+ */
+public class GatewayClient {
+	private final SocketChannel channel;
+	private final ByteBuffer out = ByteBuffer.allocateDirect(GatewayServer.BUFFER_SIZE);
+	private final ByteBuffer in = ByteBuffer.allocateDirect(GatewayServer.BUFFER_SIZE);
+	private final IOrderEntryListener listener;
+	private final Thread reader;
+	private volatile boolean closed;
+
+	public GatewayClient(String host, int port, IOrderEntryListener listener) throws IOException {
+		this.listener = listener;
+		channel = SocketChannel.open(new InetSocketAddress(host, port));
+		channel.socket().setTcpNoDelay(true);
+		reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				readLoop();
+			}
+		}, "order-entry-client-" + channel.socket().getLocalPort());
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	public synchronized void logon(String traderName) throws IOException {
+		append(GatewayProtocol.LOGON, (byte) 0, 0, 0, 0, GatewayProtocol.pack(traderName));
+	}
+
+	/**
+	 * @param clientOrderId greater than zero and unique among this client's
+	 *                      open orders
+	 * @param price         0 for a market order
+	 */
+	public synchronized void newOrder(long clientOrderId, String symbol, OrderType side, int size,
+			double price) throws IOException {
+		append(GatewayProtocol.NEW, side.equals(OrderType.SELL) ? GatewayProtocol.SELL : GatewayProtocol.BUY,
+				size, clientOrderId, PriceUtility.toTicks(price), GatewayProtocol.pack(symbol));
+	}
+
+	public synchronized void cancel(long clientOrderId) throws IOException {
+		append(GatewayProtocol.CANCEL, (byte) 0, 0, clientOrderId, 0, 0);
+	}
+
+	/**
+	 * Ask the market to run an auction behind the orders sent so far.
+	 */
+	public synchronized void requestTrade() throws IOException {
+		append(GatewayProtocol.TRADE, (byte) 0, 0, 0, 0, 0);
+	}
+
+	/**
+	 * Ask the market to run an auction of one symbol behind the orders sent
+	 * so far.
+	 */
+	public synchronized void requestTrade(String symbol) throws IOException {
+		append(GatewayProtocol.TRADE, (byte) 0, 0, 0, 0, GatewayProtocol.pack(symbol));
+	}
+
+	private void append(byte type, byte flags, int shares, long clientOrderId, long value, long name)
+			throws IOException {
+		if (out.remaining() < GatewayProtocol.MESSAGE_LENGTH) {
+			flush();
+		}
+		GatewayProtocol.put(out, type, flags, shares, clientOrderId, value, System.nanoTime(), name);
+	}
+
+	/**
+	 * Send everything appended so far.
+	 */
+	public synchronized void flush() throws IOException {
+		out.flip();
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+		out.clear();
+	}
+
+	private void readLoop() {
+		try {
+			while (!closed) {
+				if (channel.read(in) < 0) {
+					return;
+				}
+				in.flip();
+				while (in.remaining() >= GatewayProtocol.MESSAGE_LENGTH) {
+					dispatch(in.position());
+					in.position(in.position() + GatewayProtocol.MESSAGE_LENGTH);
+				}
+				in.compact();
+			}
+		} catch (IOException e) {
+			if (!closed) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void dispatch(int at) {
+		long latency = System.nanoTime() - in.getLong(at + GatewayProtocol.NANOS);
+		long clientOrderId = in.getLong(at + GatewayProtocol.CLIENT_ORDER_ID);
+		switch (in.get(at + GatewayProtocol.TYPE)) {
+		case GatewayProtocol.ACK:
+			listener.onAck(clientOrderId, in.get(at + GatewayProtocol.FLAGS),
+					in.getLong(at + GatewayProtocol.VALUE), latency);
+			break;
+		case GatewayProtocol.FILL:
+			listener.onFill(clientOrderId, in.getInt(at + GatewayProtocol.SHARES),
+					in.getLong(at + GatewayProtocol.VALUE), latency);
+			break;
+		default:
+			break;
+		}
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	public void close() {
+		closed = true;
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package pkg.gateway;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import pkg.market.api.IOrderEntryListener;
+import pkg.order.OrderType;
+
+/**
+ * Drives a {@link GatewayServer} from another process. Each session logs on
+ * as trader gw&lt;i&gt; and keeps one order open per symbol, buying at 101.00
+ * and selling at 99.00 in turn, so pairs of sessions trade with each other
+ * at every auction. A new order is sent as soon as the last one for the
+ * symbol has filled or was rejected. Sessions finish at different times and
+ * leave the others without a counterparty, so once every order has been
+ * sent, or nothing has filled for a second, the orders still open are
+ * cancelled. Reports the time from sending each order to its ACK and to
+ * each of its fills.
+ *
+ * Arguments: [host] [port] [sessions] [ordersPerSession] [symbols] [durationMillis]
+ */
+public class GatewayLoadGenerator {
+	static final int SIZE = 100;
+
+	public static void main(String[] args) throws Exception {
+		String host = args.length > 0 ? args[0] : "127.0.0.1";
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : 9400;
+		int sessionCount = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		int ordersPerSession = args.length > 3 ? Integer.parseInt(args[3]) : 10000;
+		int symbols = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+		long durationMillis = args.length > 5 ? Long.parseLong(args[5]) : 60000;
+
+		CountDownLatch allSent = new CountDownLatch(sessionCount);
+		CountDownLatch finished = new CountDownLatch(sessionCount);
+		Session[] sessions = new Session[sessionCount];
+		long start = System.nanoTime();
+		for (int i = 0; i < sessionCount; i++) {
+			sessions[i] = new Session(i, ordersPerSession, symbols, allSent, finished);
+			sessions[i].client = new GatewayClient(host, port, sessions[i]);
+			sessions[i].client.logon("gw" + i);
+			sessions[i].client.flush();
+		}
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+		long progress = -1;
+		long lastProgress = System.nanoTime();
+		while (!allSent.await(100, TimeUnit.MILLISECONDS) && System.nanoTime() < deadline) {
+			long now = System.nanoTime();
+			long completed = 0;
+			for (Session s : sessions) {
+				completed += s.completedCount();
+			}
+			if (completed != progress) {
+				progress = completed;
+				lastProgress = now;
+			}
+			else if (now - lastProgress > TimeUnit.SECONDS.toNanos(1)) {
+				break;
+			}
+		}
+		boolean complete = allSent.getCount() == 0;
+		for (Session s : sessions) {
+			s.cancelOpen();
+		}
+		finished.await(5, TimeUnit.SECONDS);
+		long elapsed = System.nanoTime() - start;
+
+		long[] acks = new long[0];
+		long[] fills = new long[0];
+		long sent = 0;
+		long rejected = 0;
+		for (Session s : sessions) {
+			s.client.close();
+			synchronized (s) {
+				sent += s.sent;
+				rejected += s.rejected;
+				acks = concat(acks, s.ackLatency, s.acks);
+				fills = concat(fills, s.fillLatency, s.fills);
+			}
+		}
+		System.out.println((complete ? "" : "stopped early: ") + "sessions=" + sessionCount + " orders=" + sent
+				+ " rejected=" + rejected + " fills=" + fills.length + " in "
+				+ TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms (" + (long) (sent * 1e9 / elapsed) + " orders/s)");
+		System.out.println("send to ack  " + percentiles(acks));
+		System.out.println("send to fill " + percentiles(fills));
+	}
+
+	private static long[] concat(long[] all, long[] more, int count) {
+		long[] joined = Arrays.copyOf(all, all.length + count);
+		System.arraycopy(more, 0, joined, all.length, count);
+		return joined;
+	}
+
+	private static String percentiles(long[] nanos) {
+		if (nanos.length == 0) {
+			return "none";
+		}
+		Arrays.sort(nanos);
+		return "p50=" + nanos[nanos.length / 2] / 1000 + "us p99=" + nanos[(int) (nanos.length * 0.99)] / 1000
+				+ "us max=" + nanos[nanos.length - 1] / 1000 + "us";
+	}
+
+	/**
+	 * One connection. Its replies all arrive on the client's reader thread,
+	 * which also sends the follow-up orders.
+	 */
+	static class Session implements IOrderEntryListener {
+		final int index;
+		final int orders;
+		final CountDownLatch allSent;
+		final CountDownLatch finished;
+		GatewayClient client;
+		// per symbol: open client order ID, shares left, next side
+		final long[] open;
+		final int[] remaining;
+		final boolean[] buying;
+		long nextId;
+		int sent;
+		int done;
+		int rejected;
+		boolean stopping;
+		final long[] ackLatency;
+		final long[] fillLatency;
+		int acks;
+		int fills;
+
+		Session(int index, int orders, int symbols, CountDownLatch allSent, CountDownLatch finished) {
+			this.index = index;
+			this.orders = orders;
+			this.allSent = allSent;
+			this.finished = finished;
+			open = new long[symbols];
+			remaining = new int[symbols];
+			buying = new boolean[symbols];
+			for (int s = 0; s < symbols; s++) {
+				buying[s] = (index + s) % 2 == 0;
+			}
+			ackLatency = new long[orders];
+			fillLatency = new long[orders * 2];
+		}
+
+		@Override
+		public synchronized void onAck(long clientOrderId, byte status, long orderId, long latencyNanos) {
+			if (status == GatewayProtocol.LOGGED_ON) {
+				for (int s = 0; s < open.length; s++) {
+					send(s);
+				}
+			}
+			else if (status == GatewayProtocol.REJECTED || status == GatewayProtocol.CANCELLED) {
+				int s = symbolOf(clientOrderId);
+				if (s >= 0) {
+					if (status == GatewayProtocol.REJECTED) {
+						rejected++;
+					}
+					completed(s);
+				}
+			}
+			else if (status == GatewayProtocol.ACCEPTED && acks < ackLatency.length) {
+				ackLatency[acks++] = latencyNanos;
+			}
+			flush();
+		}
+
+		@Override
+		public synchronized void onFill(long clientOrderId, int shares, long priceTicks, long latencyNanos) {
+			if (fills < fillLatency.length) {
+				fillLatency[fills++] = latencyNanos;
+			}
+			int s = symbolOf(clientOrderId);
+			if (s >= 0) {
+				remaining[s] -= shares;
+				if (remaining[s] <= 0) {
+					buying[s] = !buying[s];
+					completed(s);
+				}
+			}
+			flush();
+		}
+
+		synchronized int completedCount() {
+			return done;
+		}
+
+		synchronized void cancelOpen() {
+			stopping = true;
+			if (sent == done) {
+				finished.countDown();
+				return;
+			}
+			for (int s = 0; s < open.length; s++) {
+				if (open[s] != 0) {
+					try {
+						client.cancel(open[s]);
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+			flush();
+		}
+
+		private int symbolOf(long clientOrderId) {
+			for (int s = 0; s < open.length; s++) {
+				if (open[s] == clientOrderId) {
+					return s;
+				}
+			}
+			return -1;
+		}
+
+		private void completed(int s) {
+			open[s] = 0;
+			done++;
+			if (stopping) {
+				if (done == sent) {
+					finished.countDown();
+				}
+			}
+			else {
+				send(s);
+			}
+		}
+
+		private void send(int s) {
+			if (sent == orders) {
+				return;
+			}
+			open[s] = ++nextId;
+			remaining[s] = SIZE;
+			if (++sent == orders) {
+				allSent.countDown();
+			}
+			try {
+				client.newOrder(open[s], "SYM" + s, buying[s] ? OrderType.BUY : OrderType.SELL, SIZE,
+						buying[s] ? 101.0 : 99.0);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		private void flush() {
+			try {
+				client.flush();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
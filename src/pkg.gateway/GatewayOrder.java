@@ -0,0 +1,32 @@
+package pkg.gateway;
+
+/**
+ * An order entered through the gateway, from its ACK until it has filled or
+ * been cancelled.
+ */
+class GatewayOrder {
+	GatewaySession session;
+	long clientOrderId;
+	long orderId;
+	String symbol;
+	long symbolName;
+	int remaining;
+	// the client's send time, echoed in every reply
+	long sendNanos;
+	// when the gateway read it off the socket
+	long receivedNanos;
+	// guarded by the session
+	boolean acked;
+
+	GatewayOrder(GatewaySession session, long clientOrderId, long orderId, String symbol,
+			long symbolName, int size, long sendNanos, long receivedNanos) {
+		this.session = session;
+		this.clientOrderId = clientOrderId;
+		this.orderId = orderId;
+		this.symbol = symbol;
+		this.symbolName = symbolName;
+		this.remaining = size;
+		this.sendNanos = sendNanos;
+		this.receivedNanos = receivedNanos;
+	}
+}
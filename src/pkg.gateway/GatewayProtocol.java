@@ -0,0 +1,109 @@
+package pkg.gateway;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Wire format of the order-entry gateway. Every message, in either
+ * direction, is {@link #MESSAGE_LENGTH} bytes with the same layout, so a
+ * reader never has to look at a header to find the next one:
+ *
+ * <pre>
+ *  0  byte  type
+ *  1  byte  side of a NEW, status of an ACK
+ *  2  short unused
+ *  4  int   shares: order size, or shares traded in a FILL
+ *  8  long  client order ID, chosen by the client, greater than zero
+ * 16  long  limit price in ticks (0 for a market order), fill price in
+ *           ticks, or the market's order ID in an ACK
+ * 24  long  client send time from System.nanoTime(), echoed back
+ * 32  8     symbol, or trader name in a LOGON: ASCII, zero padded
+ * </pre>
+ *
+ * Numbers are big-endian. Prices are in ticks, see
+ * {@link pkg.util.PriceUtility}.
+ */
+public final class GatewayProtocol {
+	public static final int MESSAGE_LENGTH = 40;
+
+	public static final int TYPE = 0;
+	public static final int FLAGS = 1;
+	public static final int SHARES = 4;
+	public static final int CLIENT_ORDER_ID = 8;
+	public static final int VALUE = 16;
+	public static final int NANOS = 24;
+	public static final int NAME = 32;
+	public static final int NAME_LENGTH = 8;
+
+	// client to gateway
+	public static final byte LOGON = 1;
+	public static final byte NEW = 2;
+	public static final byte CANCEL = 3;
+	/** Run an auction on the symbol given, or on every symbol if none. */
+	public static final byte TRADE = 4;
+
+	// gateway to client
+	public static final byte ACK = 5;
+	public static final byte FILL = 6;
+
+	public static final byte BUY = 0;
+	public static final byte SELL = 1;
+
+	// ACK status
+	public static final byte ACCEPTED = 0;
+	public static final byte REJECTED = 1;
+	public static final byte CANCELLED = 2;
+	public static final byte LOGGED_ON = 3;
+	/** Sent, if the socket takes it, before a client is disconnected. */
+	public static final byte DISCONNECTED = 4;
+
+	private GatewayProtocol() {
+	}
+
+	/**
+	 * Append one message at the buffer's position.
+	 */
+	public static void put(ByteBuffer buffer, byte type, byte flags, int shares, long clientOrderId,
+			long value, long nanos, long name) {
+		int at = buffer.position();
+		buffer.put(at + TYPE, type);
+		buffer.put(at + FLAGS, flags);
+		buffer.putShort(at + FLAGS + 1, (short) 0);
+		buffer.putInt(at + SHARES, shares);
+		buffer.putLong(at + CLIENT_ORDER_ID, clientOrderId);
+		buffer.putLong(at + VALUE, value);
+		buffer.putLong(at + NANOS, nanos);
+		buffer.putLong(at + NAME, name);
+		buffer.position(at + MESSAGE_LENGTH);
+	}
+
+	/**
+	 * Pack a symbol or trader name of up to eight ASCII characters into the
+	 * long it travels as.
+	 */
+	public static long pack(String name) {
+		if (name.length() > NAME_LENGTH) {
+			throw new IllegalArgumentException("Name longer than " + NAME_LENGTH + " characters: " + name);
+		}
+		long packed = 0;
+		for (int i = 0; i < NAME_LENGTH; i++) {
+			char c = i < name.length() ? name.charAt(i) : 0;
+			if (c > 0x7f) {
+				throw new IllegalArgumentException("Name is not ASCII: " + name);
+			}
+			packed = (packed << 8) | c;
+		}
+		return packed;
+	}
+
+	public static String unpack(long packed) {
+		StringBuilder name = new StringBuilder(NAME_LENGTH);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			char c = (char) ((packed >>> shift) & 0xff);
+			if (c == 0) {
+				break;
+			}
+			name.append(c);
+		}
+		return name.toString();
+	}
+}
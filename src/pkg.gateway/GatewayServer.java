@@ -0,0 +1,576 @@
+package pkg.gateway;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pkg.exception.StockMarketExpection;
+import pkg.market.AuctionMode;
+import pkg.market.AuctionPolicy;
+import pkg.market.AuctionScheduler;
+import pkg.market.Market;
+import pkg.market.OrderGateway;
+import pkg.market.ParkingWaitStrategy;
+import pkg.market.YieldingWaitStrategy;
+import pkg.market.api.IExecutionListener;
+import pkg.market.api.IPO;
+import pkg.order.Order;
+import pkg.order.OrderType;
+import pkg.order.SellOrder;
+import pkg.trader.Trader;
+import pkg.util.LongObjectMap;
+import pkg.util.PriceUtility;
+
+/**
+ * Order entry for clients in other processes, over the fixed-layout binary
+ * protocol in {@link GatewayProtocol}.
+ *
+ * One selector thread serves every connection with non-blocking sockets.
+ * It reads whatever each socket has into a direct buffer and handles every
+ * complete message in it before selecting again. A session logs on as one
+ * of the traders registered with {@link #addTrader(Trader)}, and its orders
+ * go through that trader, so the trader's risk checks apply, and from there
+ * to {@link Market#addOrder(Order, long)}. Put an {@link OrderGateway} in
+ * front of the market to keep matching off the selector thread.
+ *
+ * Fills and cancels come back through the market's execution listeners, on
+ * the matching thread, and are appended to the session's output buffer. The
+ * selector thread writes each session's output once per wake-up, so replies
+ * produced together go out in one write. A client that stops reading its
+ * replies until its output buffer is full is sent a DISCONNECTED ACK, if
+ * its socket still takes it, and disconnected; its orders stay on the book.
+ * Auctions can only be requested by a session that has logged on.
+ *
+ * Every reply echoes the send time of the client's order, so the client can
+ * measure the whole trip from its socket to the fill.
+ */
+public class GatewayServer implements IExecutionListener {
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	final Market market;
+	final HashMap<String, Trader> traders = new HashMap<String, Trader>();
+	// open orders by the market's order ID, guarded by itself
+	final LongObjectMap<GatewayOrder> orders = new LongObjectMap<GatewayOrder>();
+	// symbols by their packed name; selector thread only
+	final LongObjectMap<String> symbols = new LongObjectMap<String>();
+	final ArrayList<GatewaySession> sessions = new ArrayList<GatewaySession>();
+	final ConcurrentLinkedQueue<GatewaySession> toFlush = new ConcurrentLinkedQueue<GatewaySession>();
+	ServerSocketChannel server;
+	Selector selector;
+	Thread selectorThread;
+	volatile boolean running;
+
+	final AtomicLong messagesIn = new AtomicLong();
+	final AtomicLong ordersAccepted = new AtomicLong();
+	final AtomicLong ordersRejected = new AtomicLong();
+	final AtomicLong fills = new AtomicLong();
+	final AtomicLong slowClientDisconnects = new AtomicLong();
+	final AtomicLong wireToFillNanos = new AtomicLong();
+
+	public GatewayServer(Market market) {
+		this.market = market;
+	}
+
+	/**
+	 * Let sessions log on as this trader, by its name.
+	 */
+	public void addTrader(Trader trader) {
+		GatewayProtocol.pack(trader.getName());
+		synchronized (traders) {
+			traders.put(trader.getName(), trader);
+		}
+	}
+
+	/**
+	 * Listen on the loopback interface.
+	 * @param port 0 for any free port
+	 * @return the port listened on
+	 */
+	public synchronized int start(int port) throws IOException {
+		if (running) {
+			return getPort();
+		}
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+		market.addExecutionListener(this);
+		running = true;
+		selectorThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				selectLoop();
+			}
+		}, "order-entry-" + market.getMarketName());
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+		return getPort();
+	}
+
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	 * Disconnect every client and stop listening. Orders already entered
+	 * stay on the book.
+	 */
+	public synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		selector.wakeup();
+		try {
+			selectorThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		market.removeExecutionListener(this);
+	}
+
+	private void selectLoop() {
+		while (running) {
+			try {
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+						continue;
+					}
+					GatewaySession session = (GatewaySession) key.attachment();
+					if (key.isReadable()) {
+						read(session);
+					}
+					if (key.isValid() && key.isWritable()) {
+						flush(session);
+					}
+				}
+				GatewaySession session;
+				while ((session = toFlush.poll()) != null) {
+					flush(session);
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		for (int i = sessions.size() - 1; i >= 0; i--) {
+			close(sessions.get(i));
+		}
+		try {
+			server.close();
+			selector.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while ((channel = server.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+			GatewaySession session = new GatewaySession(channel, key, BUFFER_SIZE);
+			key.attach(session);
+			sessions.add(session);
+		}
+	}
+
+	private void read(GatewaySession session) {
+		ByteBuffer in = session.in;
+		int read;
+		try {
+			// everything the socket has, up to a full buffer
+			do {
+				read = session.channel.read(in);
+			} while (read > 0 && in.hasRemaining());
+		} catch (IOException e) {
+			read = -1;
+		}
+		long now = System.nanoTime();
+		in.flip();
+		while (in.remaining() >= GatewayProtocol.MESSAGE_LENGTH) {
+			handle(session, in, in.position(), now);
+			in.position(in.position() + GatewayProtocol.MESSAGE_LENGTH);
+		}
+		in.compact();
+		if (read < 0) {
+			close(session);
+		}
+	}
+
+	private void handle(GatewaySession session, ByteBuffer in, int at, long now) {
+		messagesIn.incrementAndGet();
+		switch (in.get(at + GatewayProtocol.TYPE)) {
+		case GatewayProtocol.LOGON:
+			logon(session, in, at);
+			break;
+		case GatewayProtocol.NEW:
+			newOrder(session, in, at, now);
+			break;
+		case GatewayProtocol.CANCEL:
+			cancel(session, in, at);
+			break;
+		case GatewayProtocol.TRADE:
+			if (session.trader == null) {
+				reject(session, in, at);
+				break;
+			}
+			long name = in.getLong(at + GatewayProtocol.NAME);
+			OrderGateway g = market.getGateway();
+			// queued behind the orders already sent, without waiting, unless
+			// the gateway has stopped
+			if (g != null && (name == 0 ? g.requestTrade() : g.requestTrade(symbol(name))) >= 0) {
+				break;
+			}
+			if (name == 0) {
+				market.triggerTrade();
+			}
+			else {
+				market.triggerTrade(symbol(name));
+			}
+			break;
+		default:
+			reject(session, in, at);
+			break;
+		}
+	}
+
+	private void logon(GatewaySession session, ByteBuffer in, int at) {
+		String name = GatewayProtocol.unpack(in.getLong(at + GatewayProtocol.NAME));
+		Trader trader;
+		synchronized (traders) {
+			trader = traders.get(name);
+		}
+		if (trader == null) {
+			reject(session, in, at);
+			return;
+		}
+		session.trader = trader;
+		reply(session, GatewayProtocol.ACK, GatewayProtocol.LOGGED_ON, 0, 0, 0,
+				in.getLong(at + GatewayProtocol.NANOS), in.getLong(at + GatewayProtocol.NAME));
+	}
+
+	private void newOrder(GatewaySession session, ByteBuffer in, int at, long now) {
+		long clientOrderId = in.getLong(at + GatewayProtocol.CLIENT_ORDER_ID);
+		int size = in.getInt(at + GatewayProtocol.SHARES);
+		long ticks = in.getLong(at + GatewayProtocol.VALUE);
+		long name = in.getLong(at + GatewayProtocol.NAME);
+		Trader trader = session.trader;
+		if (trader == null || clientOrderId <= 0 || size <= 0 || ticks < 0 || name == 0) {
+			reject(session, in, at);
+			return;
+		}
+		GatewayOrder order = new GatewayOrder(session, clientOrderId, market.nextOrderId(), symbol(name),
+				name, size, in.getLong(at + GatewayProtocol.NANOS), now);
+		synchronized (session) {
+			if (session.orders.containsKey(clientOrderId)) {
+				order = null;
+			}
+			else {
+				session.orders.put(clientOrderId, order);
+			}
+		}
+		if (order == null) {
+			reject(session, in, at);
+			return;
+		}
+		// known before the order can trade
+		synchronized (orders) {
+			orders.put(order.orderId, order);
+		}
+		OrderType side = in.get(at + GatewayProtocol.FLAGS) == GatewayProtocol.SELL ? OrderType.SELL : OrderType.BUY;
+		try {
+			if (ticks == PriceUtility.MARKET_PRICE) {
+				trader.placeNewMarketOrder(market, order.symbol, size, 0, side, order.orderId);
+			}
+			else {
+				trader.placeNewOrder(market, order.symbol, size, PriceUtility.toPrice(ticks), side, order.orderId);
+			}
+		} catch (StockMarketExpection e) {
+			synchronized (orders) {
+				orders.remove(order.orderId);
+			}
+			synchronized (session) {
+				session.orders.remove(clientOrderId);
+			}
+			reject(session, in, at);
+			return;
+		}
+		ordersAccepted.incrementAndGet();
+		boolean queue;
+		synchronized (session) {
+			queue = acknowledge(order);
+		}
+		if (queue) {
+			queueFlush(session);
+		}
+	}
+
+	private void cancel(GatewaySession session, ByteBuffer in, int at) {
+		GatewayOrder order;
+		synchronized (session) {
+			order = session.orders.get(in.getLong(at + GatewayProtocol.CLIENT_ORDER_ID));
+		}
+		if (order == null) {
+			reject(session, in, at);
+			return;
+		}
+		// confirmed through onCancel once the market has taken it off the book
+		market.cancelOrder(order.symbol, order.orderId);
+	}
+
+	private void reject(GatewaySession session, ByteBuffer in, int at) {
+		if (in.get(at + GatewayProtocol.TYPE) == GatewayProtocol.NEW) {
+			ordersRejected.incrementAndGet();
+		}
+		reply(session, GatewayProtocol.ACK, GatewayProtocol.REJECTED, in.getInt(at + GatewayProtocol.SHARES),
+				in.getLong(at + GatewayProtocol.CLIENT_ORDER_ID), 0, in.getLong(at + GatewayProtocol.NANOS),
+				in.getLong(at + GatewayProtocol.NAME));
+	}
+
+	private String symbol(long name) {
+		String symbol = symbols.get(name);
+		if (symbol == null) {
+			symbol = GatewayProtocol.unpack(name);
+			symbols.put(name, symbol);
+		}
+		return symbol;
+	}
+
+	/**
+	 * Send the order's ACK unless it has gone already. A fill can reach the
+	 * session before the selector thread gets to the ACK, and then goes out
+	 * right behind it. Called holding the session's lock.
+	 * @return true if the session has to be queued for a flush
+	 */
+	private boolean acknowledge(GatewayOrder order) {
+		if (order.acked) {
+			return false;
+		}
+		order.acked = true;
+		return order.session.append(GatewayProtocol.ACK, GatewayProtocol.ACCEPTED, order.remaining,
+				order.clientOrderId, order.orderId, order.sendNanos, order.symbolName);
+	}
+
+	/**
+	 * The market only reports fills the trader has settled, so a fill the
+	 * trader refused never reaches the client.
+	 */
+	@Override
+	public void onFill(Order order, long orderId, int size, double price) {
+		GatewayOrder open;
+		synchronized (orders) {
+			open = orders.get(orderId);
+		}
+		if (open == null) {
+			// not entered through this gateway
+			return;
+		}
+		fills.incrementAndGet();
+		wireToFillNanos.addAndGet(System.nanoTime() - open.receivedNanos);
+		GatewaySession session = open.session;
+		boolean queue;
+		boolean done;
+		synchronized (session) {
+			queue = acknowledge(open);
+			queue |= session.append(GatewayProtocol.FILL,
+					order instanceof SellOrder ? GatewayProtocol.SELL : GatewayProtocol.BUY, size,
+					open.clientOrderId, PriceUtility.toTicks(price), open.sendNanos, open.symbolName);
+			open.remaining -= size;
+			done = open.remaining <= 0;
+			if (done) {
+				session.orders.remove(open.clientOrderId);
+			}
+		}
+		if (done) {
+			synchronized (orders) {
+				orders.remove(orderId);
+			}
+		}
+		if (queue) {
+			queueFlush(session);
+		}
+	}
+
+	@Override
+	public void onCancel(Order order, long orderId) {
+		GatewayOrder open;
+		synchronized (orders) {
+			open = orders.remove(orderId);
+		}
+		if (open == null) {
+			return;
+		}
+		GatewaySession session = open.session;
+		boolean queue;
+		synchronized (session) {
+			session.orders.remove(open.clientOrderId);
+			queue = acknowledge(open);
+			queue |= session.append(GatewayProtocol.ACK, GatewayProtocol.CANCELLED, open.remaining,
+					open.clientOrderId, orderId, open.sendNanos, open.symbolName);
+		}
+		if (queue) {
+			queueFlush(session);
+		}
+	}
+
+	private void reply(GatewaySession session, byte type, byte flags, int shares, long clientOrderId,
+			long value, long nanos, long name) {
+		if (session.append(type, flags, shares, clientOrderId, value, nanos, name)) {
+			queueFlush(session);
+		}
+	}
+
+	private void queueFlush(GatewaySession session) {
+		toFlush.offer(session);
+		if (Thread.currentThread() != selectorThread) {
+			selector.wakeup();
+		}
+	}
+
+	private void flush(GatewaySession session) {
+		if (session.closed) {
+			return;
+		}
+		boolean overflowed;
+		synchronized (session) {
+			overflowed = session.overflowed;
+		}
+		if (overflowed) {
+			slowClientDisconnects.incrementAndGet();
+			session.appendDisconnect();
+			try {
+				session.flush();
+			} catch (IOException e) {
+				// closing anyway
+			}
+			close(session);
+			return;
+		}
+		try {
+			boolean pending = session.flush();
+			session.key.interestOps(pending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+		} catch (IOException e) {
+			close(session);
+		}
+	}
+
+	private void close(GatewaySession session) {
+		synchronized (session) {
+			session.closed = true;
+		}
+		session.key.cancel();
+		try {
+			session.channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		sessions.remove(session);
+	}
+
+	public long getMessagesIn() {
+		return messagesIn.get();
+	}
+
+	public long getOrdersAccepted() {
+		return ordersAccepted.get();
+	}
+
+	public long getOrdersRejected() {
+		return ordersRejected.get();
+	}
+
+	public long getFills() {
+		return fills.get();
+	}
+
+	/**
+	 * @return clients disconnected because they stopped reading their
+	 *         replies
+	 */
+	public long getSlowClientDisconnects() {
+		return slowClientDisconnects.get();
+	}
+
+	/**
+	 * @return mean time from reading an order off the socket to each of its
+	 *         fills, in nanoseconds
+	 */
+	public double getMeanWireToFillNanos() {
+		long n = fills.get();
+		return n == 0 ? 0 : (double) wireToFillNanos.get() / n;
+	}
+
+	/**
+	 * Lists {@code symbols} stocks SYM0, SYM1, ... at 100.00 on a market
+	 * behind an {@link OrderGateway}, creates traders gw0, gw1, ... holding
+	 * cash and shares of every stock, and serves order entry until killed.
+	 * Auctions run every {@code auctionMillis}; in adaptive mode also once
+	 * 64 orders have queued or 1,000 shares are crossing on a symbol, and in
+	 * continuous mode on every order that can trade.
+	 *
+	 * Arguments: [port] [traders] [symbols] [auctionMillis] [periodic|adaptive|continuous]
+	 */
+	public static void main(String[] args) throws Exception {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 9400;
+		int traderCount = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int symbolCount = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		long auctionMillis = args.length > 3 ? Long.parseLong(args[3]) : 1;
+		AuctionMode mode = args.length > 4 ? AuctionMode.valueOf(args[4].toUpperCase()) : AuctionMode.PERIODIC;
+
+		final Market m = new Market("GW");
+		for (int s = 0; s < symbolCount; s++) {
+			IPO.enterNewStock(m, "SYM" + s, "Symbol " + s, 100.0);
+		}
+		OrderGateway ring = new OrderGateway(m, 1 << 16, 256, new ParkingWaitStrategy(),
+				new YieldingWaitStrategy());
+		ring.start();
+		GatewayServer gateway = new GatewayServer(m);
+		for (int i = 0; i < traderCount; i++) {
+			Trader t = new Trader("gw" + i, 1e12);
+			for (int s = 0; s < symbolCount; s++) {
+				t.buyFromBank(m, "SYM" + s, 1000000);
+			}
+			gateway.addTrader(t);
+		}
+		AuctionPolicy policy;
+		if (mode == AuctionMode.ADAPTIVE) {
+			policy = AuctionPolicy.adaptive(auctionMillis, 64, 1000);
+		}
+		else if (mode == AuctionMode.CONTINUOUS) {
+			policy = AuctionPolicy.continuous();
+		}
+		else {
+			policy = AuctionPolicy.periodic(auctionMillis);
+		}
+		new AuctionScheduler(m, policy).start();
+		System.out.println("Order entry on port " + gateway.start(port) + " for traders gw0..gw"
+				+ (traderCount - 1) + ", symbols SYM0..SYM" + (symbolCount - 1) + ", auctions " + policy);
+		while (true) {
+			Thread.sleep(1000);
+			System.out.println("in=" + gateway.getMessagesIn() + " accepted=" + gateway.getOrdersAccepted()
+					+ " rejected=" + gateway.getOrdersRejected() + " fills=" + gateway.getFills()
+					+ " slowDisconnects=" + gateway.getSlowClientDisconnects()
+					+ " wireToFill=" + (long) (gateway.getMeanWireToFillNanos() / 1000) + "us");
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package pkg.gateway;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import pkg.trader.Trader;
+import pkg.util.LongObjectMap;
+
+/**
+ * One client connection. Reads are only done by the gateway's selector
+ * thread. Replies are appended by whichever thread produces them, the
+ * selector thread for ACKs and the matching thread for fills, and written
+ * to the socket by the selector thread; both sides lock the session.
+ */
+class GatewaySession {
+	final SocketChannel channel;
+	final SelectionKey key;
+	final ByteBuffer in;
+	final ByteBuffer out;
+	// set by a LOGON, orders are refused until then
+	Trader trader;
+	// open orders by client order ID
+	final LongObjectMap<GatewayOrder> orders = new LongObjectMap<GatewayOrder>();
+	boolean flushQueued;
+	// out filled up: the client is not reading its replies
+	boolean overflowed;
+	boolean closed;
+
+	GatewaySession(SocketChannel channel, SelectionKey key, int bufferSize) {
+		this.channel = channel;
+		this.key = key;
+		in = ByteBuffer.allocateDirect(bufferSize);
+		out = ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	/**
+	 * Append a reply.
+	 * @return true if the session now has to be queued for a flush
+	 */
+	synchronized boolean append(byte type, byte flags, int shares, long clientOrderId, long value,
+			long nanos, long name) {
+		if (closed) {
+			return false;
+		}
+		// the last message's room is kept for the disconnect notice
+		if (out.remaining() < 2 * GatewayProtocol.MESSAGE_LENGTH) {
+			overflowed = true;
+		}
+		else {
+			GatewayProtocol.put(out, type, flags, shares, clientOrderId, value, nanos, name);
+		}
+		if (flushQueued) {
+			return false;
+		}
+		flushQueued = true;
+		return true;
+	}
+
+	/**
+	 * Tell the client why it is being disconnected, in the room
+	 * {@link #append} keeps for it.
+	 */
+	synchronized void appendDisconnect() {
+		if (out.remaining() >= GatewayProtocol.MESSAGE_LENGTH) {
+			GatewayProtocol.put(out, GatewayProtocol.ACK, GatewayProtocol.DISCONNECTED, 0, 0, 0, 0, 0);
+		}
+	}
+
+	/**
+	 * Write as much pending output as the socket takes.
+	 * @return true if some is still left
+	 */
+	synchronized boolean flush() throws IOException {
+		flushQueued = false;
+		out.flip();
+		try {
+			channel.write(out);
+		} finally {
+			out.compact();
+		}
+		return out.position() > 0;
+	}
+}
@@ -0,0 +1,12 @@
+package pkg.market.api;
+
+/**
+ * Where a market reads the time it stamps on clearing prices and history
+ * ticks. Backtests swap in simulated time.
+ */
+public interface IClock {
+	/**
+	 * @return the time in epoch millis
+	 */
+	public long currentTimeMillis();
+}
@@ -0,0 +1,18 @@
+package pkg.market.api;
+
+import pkg.order.Order;
+
+/**
+ * Told what happens to resting orders: every fill, and every cancel the
+ * market actually applied.
+ */
+public interface IExecutionListener {
+	/**
+	 * @param order the order that traded; its size is still the size from
+	 *              before this fill
+	 * @param size  shares traded in this fill
+	 */
+	public void onFill(Order order, long orderId, int size, double price);
+
+	public void onCancel(Order order, long orderId);
+}
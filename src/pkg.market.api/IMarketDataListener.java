@@ -0,0 +1,14 @@
+package pkg.market.api;
+
+import pkg.market.MarketDataBatch;
+
+/**
+ * Receives the prices set by a market's match cycles.
+ */
+public interface IMarketDataListener {
+	/**
+	 * @param batch one entry per symbol that traded; only valid for the
+	 *              duration of the call
+	 */
+	public void onMarketData(MarketDataBatch batch);
+}
@@ -0,0 +1,17 @@
+package pkg.market.api;
+
+/**
+ * Receives the replies to a {@link pkg.gateway.GatewayClient}'s messages,
+ * on the client's reader thread. Latencies are measured from the client's
+ * send time, which the gateway echoes in every reply.
+ */
+public interface IOrderEntryListener {
+	/**
+	 * @param status  one of the ACK statuses in
+	 *                {@link pkg.gateway.GatewayProtocol}
+	 * @param orderId the market's ID for an accepted or cancelled order
+	 */
+	public void onAck(long clientOrderId, byte status, long orderId, long latencyNanos);
+
+	public void onFill(long clientOrderId, int shares, long priceTicks, long latencyNanos);
+}
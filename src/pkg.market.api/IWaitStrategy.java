@@ -0,0 +1,14 @@
+package pkg.market.api;
+
+/**
+ * How a thread waits for a lock-free queue to change: a consumer waiting for
+ * new entries or a producer waiting for free space.
+ */
+public interface IWaitStrategy {
+	/**
+	 * Wait once.
+	 * @param idleCount number of consecutive waits so far, 0 on the first
+	 * @return the idle count to pass on the next call
+	 */
+	public int idle(int idleCount);
+}
@@ -0,0 +1,8 @@
+package pkg.market.archive;
+
+/**
+ * Receives ticks streamed out of a {@link TickSegment}, oldest first.
+ */
+public interface ITickVisitor {
+	public void visit(String symbol, long timestamp, double price, long volume);
+}
@@ -0,0 +1,139 @@
+package pkg.market.archive;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Directory of per-symbol {@link TickSegment} files. Ticks are appended to
+ * the symbol's open segment, and a new segment is started once the current
+ * one is full. Segments are named {@code SYMBOL-000001.tick} and so on, in
+ * write order, so a symbol's history is replayed by reading its segments by
+ * name.
+ */
+public class TickArchive {
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+	static final String SUFFIX = ".tick";
+
+	private final File directory;
+	private final int segmentSize;
+	private final HashMap<String, TickSegment> openSegments;
+	private final HashMap<String, Integer> nextSegment;
+
+	public TickArchive(File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	public TickArchive(File directory, int segmentSize) throws IOException {
+		if (segmentSize < TickSegment.HEADER_SIZE + TickSegment.RECORD_SIZE) {
+			throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create tick archive directory: " + directory);
+		}
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		openSegments = new HashMap<String, TickSegment>();
+		nextSegment = new HashMap<String, Integer>();
+	}
+
+	public synchronized void append(String symbol, long timestamp, double price, long volume)
+			throws IOException {
+		TickSegment segment = openSegments.get(symbol);
+		if (segment == null || !segment.append(timestamp, price, volume)) {
+			if (segment != null) {
+				segment.force();
+			}
+			segment = TickSegment.create(nextFile(symbol), symbol, segmentSize);
+			openSegments.put(symbol, segment);
+			segment.append(timestamp, price, volume);
+		}
+	}
+
+	private File nextFile(String symbol) {
+		Integer next = nextSegment.get(symbol);
+		if (next == null) {
+			// continue after whatever an earlier run left behind
+			File[] existing = segmentFiles(symbol);
+			next = existing.length == 0 ? 1 : sequenceOf(existing[existing.length - 1]) + 1;
+		}
+		nextSegment.put(symbol, next + 1);
+		return new File(directory, String.format("%s-%06d%s", symbol, next, SUFFIX));
+	}
+
+	/**
+	 * @return the symbol's segment files, oldest first
+	 */
+	public File[] segmentFiles(final String symbol) {
+		File[] files = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(symbol + "-") && name.endsWith(SUFFIX)
+						&& name.length() == symbol.length() + 7 + SUFFIX.length();
+			}
+		});
+		if (files == null) {
+			return new File[0];
+		}
+		Arrays.sort(files);
+		return files;
+	}
+
+	private static int sequenceOf(File segment) {
+		String name = segment.getName();
+		int end = name.length() - SUFFIX.length();
+		return Integer.parseInt(name.substring(end - 6, end));
+	}
+
+	/**
+	 * @return every symbol that has at least one segment in the archive
+	 */
+	public ArrayList<String> symbols() {
+		ArrayList<String> symbols = new ArrayList<String>();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			Arrays.sort(files);
+			for (File f : files) {
+				String name = f.getName();
+				if (name.endsWith(SUFFIX) && name.length() > 7 + SUFFIX.length()) {
+					String symbol = name.substring(0, name.length() - SUFFIX.length() - 7);
+					if (!symbols.contains(symbol)) {
+						symbols.add(symbol);
+					}
+				}
+			}
+		}
+		return symbols;
+	}
+
+	/**
+	 * Stream every archived tick of the symbol, oldest first, by mapping its
+	 * segments one at a time.
+	 */
+	public void replay(String symbol, ITickVisitor visitor) throws IOException {
+		for (File f : segmentFiles(symbol)) {
+			TickSegment.open(f).forEach(visitor);
+		}
+	}
+
+	/**
+	 * Flush every open segment to disk.
+	 */
+	public synchronized void flush() {
+		for (TickSegment segment : openSegments.values()) {
+			segment.force();
+		}
+	}
+
+	public synchronized void close() {
+		flush();
+		openSegments.clear();
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+}
@@ -0,0 +1,157 @@
+package pkg.market.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One memory-mapped, append-only file of ticks for a single symbol.
+ *
+ * Layout (little endian): a 64 byte header holding a magic number, the format
+ * version, the number of committed ticks and the symbol, followed by fixed
+ * 24 byte records of timestamp (long), price (double) and volume (long). The
+ * tick count is written after each record, so a reader never sees a partly
+ * written tick.
+ */
+public class TickSegment {
+	static final int MAGIC = 0x5449434B;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 64;
+	static final int RECORD_SIZE = 24;
+	static final int COUNT_OFFSET = 8;
+	static final int SYMBOL_OFFSET = 16;
+	static final int MAX_SYMBOL_BYTES = HEADER_SIZE - SYMBOL_OFFSET;
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private final String symbol;
+	private final MappedByteBuffer buffer;
+	private final int capacity;
+	private int count;
+
+	private TickSegment(File file, String symbol, MappedByteBuffer buffer, int count) {
+		this.file = file;
+		this.symbol = symbol;
+		this.buffer = buffer;
+		this.capacity = (buffer.capacity() - HEADER_SIZE) / RECORD_SIZE;
+		this.count = count;
+	}
+
+	/**
+	 * Create and map a new, empty segment of {@code segmentSize} bytes.
+	 */
+	static TickSegment create(File file, String symbol, int segmentSize) throws IOException {
+		byte[] name = symbol.getBytes(UTF8);
+		if (name.length > MAX_SYMBOL_BYTES - 4) {
+			throw new IOException("Symbol too long for tick segment: " + symbol);
+		}
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			buffer.putInt(COUNT_OFFSET, 0);
+			buffer.putInt(SYMBOL_OFFSET, name.length);
+			for (int i = 0; i < name.length; i++) {
+				buffer.put(SYMBOL_OFFSET + 4 + i, name[i]);
+			}
+			return new TickSegment(file, symbol, buffer, 0);
+		} finally {
+			// the mapping stays valid after the channel is closed
+			channel.close();
+		}
+	}
+
+	/**
+	 * Map an existing segment read-only.
+	 */
+	public static TickSegment open(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+				throw new IOException("Not a tick segment: " + file);
+			}
+			if (buffer.getInt(4) != VERSION) {
+				throw new IOException("Unsupported tick segment version " + buffer.getInt(4) + ": " + file);
+			}
+			int nameLength = buffer.getInt(SYMBOL_OFFSET);
+			byte[] name = new byte[nameLength];
+			for (int i = 0; i < nameLength; i++) {
+				name[i] = buffer.get(SYMBOL_OFFSET + 4 + i);
+			}
+			return new TickSegment(file, new String(name, UTF8), buffer, buffer.getInt(COUNT_OFFSET));
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * @return false if the segment is full and nothing was written
+	 */
+	boolean append(long timestamp, double price, long volume) {
+		if (count == capacity) {
+			return false;
+		}
+		int offset = HEADER_SIZE + count * RECORD_SIZE;
+		buffer.putLong(offset, timestamp);
+		buffer.putDouble(offset + 8, price);
+		buffer.putLong(offset + 16, volume);
+		count++;
+		buffer.putInt(COUNT_OFFSET, count);
+		return true;
+	}
+
+	void force() {
+		buffer.force();
+	}
+
+	/**
+	 * Stream every committed tick to the visitor straight out of the mapping.
+	 */
+	public void forEach(ITickVisitor visitor) {
+		for (int i = 0; i < count; i++) {
+			int offset = HEADER_SIZE + i * RECORD_SIZE;
+			visitor.visit(symbol, buffer.getLong(offset), buffer.getDouble(offset + 8),
+					buffer.getLong(offset + 16));
+		}
+	}
+
+	public long getTimestamp(int index) {
+		return buffer.getLong(offset(index));
+	}
+
+	public double getPrice(int index) {
+		return buffer.getDouble(offset(index) + 8);
+	}
+
+	public long getVolume(int index) {
+		return buffer.getLong(offset(index) + 16);
+	}
+
+	private int offset(int index) {
+		if (index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException("Tick " + index + " of " + count);
+		}
+		return HEADER_SIZE + index * RECORD_SIZE;
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public int getTickCount() {
+		return count;
+	}
+
+	public File getFile() {
+		return file;
+	}
+}
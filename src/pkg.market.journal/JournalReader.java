@@ -0,0 +1,89 @@
+package pkg.market.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads an {@link OrderJournal} file front to back through a read-only
+ * mapping. Reading stops at the first incomplete record, which is where a
+ * crash interrupted the last write.
+ */
+public class JournalReader {
+	private final File file;
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final JournalRecord record;
+	private long lastSequence;
+
+	public JournalReader(File file) throws IOException {
+		this.file = file;
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		record = new JournalRecord();
+	}
+
+	/**
+	 * @return the next record, or null at the end of the complete records
+	 */
+	public JournalRecord next() throws IOException {
+		int start = buffer.position();
+		if (buffer.remaining() < OrderJournal.FRAME_HEADER) {
+			return null;
+		}
+		int length = buffer.getInt(start);
+		if (length < OrderJournal.FRAME_HEADER || length > buffer.remaining()) {
+			return null;
+		}
+		buffer.position(start + 4);
+		record.sequence = buffer.getLong();
+		record.type = buffer.get();
+		if (lastSequence != 0 && record.sequence != lastSequence + 1) {
+			throw new IOException("Journal sequence gap after " + lastSequence + " in " + file);
+		}
+		lastSequence = record.sequence;
+		if (record.type == JournalRecord.TRADE) {
+			record.buy = false;
+			record.marketOrder = false;
+			record.size = 0;
+			record.price = 0.0;
+			record.symbol = null;
+			record.trader = null;
+		}
+		else {
+			byte flags = buffer.get();
+			record.buy = (flags & 1) != 0;
+			record.marketOrder = (flags & 2) != 0;
+			record.size = buffer.getInt();
+			record.price = buffer.getDouble();
+			// interned so symbols compare like the literals used to place orders
+			record.symbol = readString().intern();
+			record.trader = readString();
+		}
+		buffer.position(start + length);
+		return record;
+	}
+
+	private String readString() {
+		byte[] bytes = new byte[buffer.getShort()];
+		buffer.get(bytes);
+		return new String(bytes, OrderJournal.UTF8);
+	}
+
+	public JournalRecord current() {
+		return record;
+	}
+
+	/**
+	 * @return byte offset just past the last complete record read
+	 */
+	public long position() {
+		return buffer.position();
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+}
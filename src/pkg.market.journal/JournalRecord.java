@@ -0,0 +1,57 @@
+package pkg.market.journal;
+
+/**
+ * One decoded journal entry. A {@link JournalReader} reuses the same
+ * instance for every record it returns.
+ */
+public class JournalRecord {
+	public static final byte ORDER = 1;
+	public static final byte TRADE = 2;
+	public static final byte FILL = 3;
+	public static final byte BANK_PURCHASE = 4;
+	public static final byte CANCEL = 5;
+	public static final byte AMEND = 6;
+	// an auction of one symbol; TRADE auctions every symbol
+	public static final byte SYMBOL_TRADE = 7;
+
+	long sequence;
+	byte type;
+	boolean buy;
+	boolean marketOrder;
+	int size;
+	double price;
+	String symbol;
+	String trader;
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public byte getType() {
+		return type;
+	}
+
+	public boolean isBuy() {
+		return buy;
+	}
+
+	public boolean isMarketOrder() {
+		return marketOrder;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public double getPrice() {
+		return price;
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public String getTrader() {
+		return trader;
+	}
+}
@@ -0,0 +1,107 @@
+package pkg.market.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import pkg.exception.StockMarketExpection;
+import pkg.market.Market;
+import pkg.order.OrderType;
+import pkg.trader.Trader;
+
+/**
+ * Rebuilds a market from its {@link OrderJournal}.
+ *
+ * The target market must list the same stocks at their opening prices, and
+ * every trader named in the journal must be supplied in its starting state.
+ * Orders, cancels, amends and bank purchases are replayed through the
+ * traders, so their positions and open orders are rebuilt along with the
+ * book. Auction
+ * triggers are replayed in journal order, which makes matching produce the
+ * same fills again; the journaled fills are only counted to check this.
+ */
+public class JournalReplayer {
+
+	public static ReplayReport replay(File journalFile, Market m, Map<String, Trader> traders)
+			throws IOException, StockMarketExpection {
+		ReplayReport report = new ReplayReport();
+		OrderJournal live = m.getJournal();
+		// nothing replayed here may be journaled a second time
+		m.setJournal(null);
+		long fillsBefore = m.getFillCount();
+		long start = System.nanoTime();
+		JournalReader reader = new JournalReader(journalFile);
+		try {
+			JournalRecord r;
+			while ((r = reader.next()) != null) {
+				report.records++;
+				switch (r.getType()) {
+				case JournalRecord.ORDER:
+					report.orders++;
+					apply(m, traders, r, report);
+					break;
+				case JournalRecord.BANK_PURCHASE:
+					report.bankPurchases++;
+					apply(m, traders, r, report);
+					break;
+				case JournalRecord.CANCEL:
+				case JournalRecord.AMEND:
+					report.amendments++;
+					apply(m, traders, r, report);
+					break;
+				case JournalRecord.TRADE:
+					report.trades++;
+					m.triggerTrade();
+					break;
+				case JournalRecord.SYMBOL_TRADE:
+					report.trades++;
+					m.triggerTrade(r.getSymbol());
+					break;
+				case JournalRecord.FILL:
+					report.journaledFills++;
+					break;
+				default:
+					throw new IOException("Unknown journal record type " + r.getType()
+							+ " at sequence " + r.getSequence());
+				}
+			}
+		} finally {
+			reader.close();
+			report.elapsedNanos = System.nanoTime() - start;
+			report.replayedFills = m.getFillCount() - fillsBefore;
+			m.setJournal(live);
+		}
+		return report;
+	}
+
+	private static void apply(Market m, Map<String, Trader> traders, JournalRecord r,
+			ReplayReport report) throws StockMarketExpection {
+		Trader trader = traders.get(r.getTrader());
+		if (trader == null) {
+			throw new StockMarketExpection("Unknown trader in journal: " + r.getTrader()
+					+ " (sequence " + r.getSequence() + ")");
+		}
+		try {
+			if (r.getType() == JournalRecord.BANK_PURCHASE) {
+				trader.buyFromBank(m, r.getSymbol(), r.getSize());
+			}
+			else if (r.getType() == JournalRecord.CANCEL) {
+				trader.cancelOrder(m, r.getSymbol());
+			}
+			else if (r.getType() == JournalRecord.AMEND) {
+				trader.amendOrder(m, r.getSymbol(), r.getSize(), r.getPrice());
+			}
+			else {
+				OrderType type = r.isBuy() ? OrderType.BUY : OrderType.SELL;
+				if (r.isMarketOrder()) {
+					trader.placeNewMarketOrder(m, r.getSymbol(), r.getSize(), 0, type);
+				}
+				else {
+					trader.placeNewOrder(m, r.getSymbol(), r.getSize(), r.getPrice(), type);
+				}
+			}
+		} catch (StockMarketExpection e) {
+			report.rejected++;
+		}
+	}
+}
@@ -0,0 +1,244 @@
+package pkg.market.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Sequenced, append-only binary log of everything that changes a market's
+ * state: accepted orders, cancels and amends, bank purchases, auction
+ * triggers and fills.
+ *
+ * Each record is framed as {@code [int length][long sequence][byte type]}
+ * followed by its payload. Appends go into an in-memory batch. A background
+ * thread writes and fsyncs the whole batch once {@code groupSize} records
+ * are waiting or {@code commitIntervalMillis} has passed, so many appends
+ * share one fsync (group commit). Callers that need durability before going
+ * on can wait with {@link #awaitDurable(long)}.
+ */
+public class OrderJournal {
+	static final Charset UTF8 = Charset.forName("UTF-8");
+	static final int FRAME_HEADER = 4 + 8 + 1;
+	static final int BUFFER_SIZE = 1024 * 1024;
+
+	private final File file;
+	private final FileChannel channel;
+	private final int groupSize;
+	private final long commitIntervalMillis;
+	private final Object flushLock = new Object();
+	private ByteBuffer active;
+	private ByteBuffer spare;
+	private long nextSequence;
+	private int pending;
+	private volatile long durableSequence;
+	private volatile boolean running;
+	private Thread flusher;
+
+	public OrderJournal(File file) throws IOException {
+		this(file, 256, 2);
+	}
+
+	/**
+	 * Open the journal for appending, continuing after the last complete
+	 * record if the file already exists. A torn record at the end, left by a
+	 * crash mid-write, is cut off.
+	 */
+	public OrderJournal(File file, int groupSize, long commitIntervalMillis) throws IOException {
+		this.file = file;
+		this.groupSize = groupSize;
+		this.commitIntervalMillis = commitIntervalMillis;
+
+		long lastSequence = 0;
+		long validLength = 0;
+		if (file.exists()) {
+			JournalReader reader = new JournalReader(file);
+			try {
+				while (reader.next() != null) {
+					lastSequence = reader.current().getSequence();
+				}
+				validLength = reader.position();
+			} finally {
+				reader.close();
+			}
+		}
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE);
+		channel.truncate(validLength);
+		channel.position(validLength);
+		nextSequence = lastSequence + 1;
+		durableSequence = lastSequence;
+		active = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		spare = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+		running = true;
+		flusher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				flushLoop();
+			}
+		}, "journal-flusher");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	public long orderAccepted(boolean buy, boolean marketOrder, String symbol, int size,
+			double price, String trader) throws IOException {
+		return append(JournalRecord.ORDER, buy, marketOrder, symbol, size, price, trader);
+	}
+
+	public long bankPurchase(String symbol, int size, String trader) throws IOException {
+		return append(JournalRecord.BANK_PURCHASE, true, false, symbol, size, 0.0, trader);
+	}
+
+	public long orderCancelled(String symbol, String trader) throws IOException {
+		return append(JournalRecord.CANCEL, false, false, symbol, 0, 0.0, trader);
+	}
+
+	public long orderAmended(String symbol, int size, double price, String trader)
+			throws IOException {
+		return append(JournalRecord.AMEND, false, false, symbol, size, price, trader);
+	}
+
+	public long tradeTriggered() throws IOException {
+		return append(JournalRecord.TRADE, false, false, null, 0, 0.0, null);
+	}
+
+	public long tradeTriggered(String symbol) throws IOException {
+		return append(JournalRecord.SYMBOL_TRADE, false, false, symbol, 0, 0.0, "");
+	}
+
+	public long fill(boolean buy, String symbol, int size, double price, String trader)
+			throws IOException {
+		return append(JournalRecord.FILL, buy, false, symbol, size, price, trader);
+	}
+
+	private long append(byte type, boolean buy, boolean marketOrder, String symbol, int size,
+			double price, String trader) throws IOException {
+		byte[] symbolBytes = symbol == null ? null : symbol.getBytes(UTF8);
+		byte[] traderBytes = trader == null ? null : trader.getBytes(UTF8);
+		int length = FRAME_HEADER;
+		if (type != JournalRecord.TRADE) {
+			length += 1 + 4 + 8 + 2 + symbolBytes.length + 2 + traderBytes.length;
+		}
+		while (true) {
+			synchronized (this) {
+				if (!running) {
+					throw new IOException("Journal is closed: " + file);
+				}
+				if (active.remaining() >= length) {
+					long sequence = nextSequence++;
+					active.putInt(length);
+					active.putLong(sequence);
+					active.put(type);
+					if (type != JournalRecord.TRADE) {
+						active.put((byte) ((buy ? 1 : 0) | (marketOrder ? 2 : 0)));
+						active.putInt(size);
+						active.putDouble(price);
+						active.putShort((short) symbolBytes.length);
+						active.put(symbolBytes);
+						active.putShort((short) traderBytes.length);
+						active.put(traderBytes);
+					}
+					if (++pending >= groupSize) {
+						notifyAll();
+					}
+					return sequence;
+				}
+			}
+			// batch is full: write it out here and try again
+			commit();
+		}
+	}
+
+	/**
+	 * Write and fsync everything appended so far.
+	 */
+	public void commit() throws IOException {
+		synchronized (flushLock) {
+			ByteBuffer batch;
+			long upTo;
+			synchronized (this) {
+				if (active.position() == 0) {
+					return;
+				}
+				batch = active;
+				active = spare;
+				spare = batch;
+				upTo = nextSequence - 1;
+				pending = 0;
+			}
+			batch.flip();
+			while (batch.hasRemaining()) {
+				channel.write(batch);
+			}
+			channel.force(false);
+			batch.clear();
+			synchronized (this) {
+				durableSequence = upTo;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Block until the record with the given sequence number is on disk.
+	 */
+	public void awaitDurable(long sequence) throws InterruptedException {
+		synchronized (this) {
+			while (durableSequence < sequence && running) {
+				notifyAll();
+				wait(commitIntervalMillis);
+			}
+		}
+	}
+
+	private void flushLoop() {
+		while (running) {
+			try {
+				synchronized (this) {
+					long deadline = System.currentTimeMillis() + commitIntervalMillis;
+					long remaining = commitIntervalMillis;
+					while (running && pending < groupSize && remaining > 0) {
+						wait(remaining);
+						remaining = deadline - System.currentTimeMillis();
+					}
+				}
+				commit();
+			} catch (InterruptedException e) {
+				return;
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	public long getDurableSequence() {
+		return durableSequence;
+	}
+
+	public synchronized long getLastSequence() {
+		return nextSequence - 1;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public void close() throws IOException {
+		commit();
+		synchronized (this) {
+			running = false;
+			notifyAll();
+		}
+		try {
+			flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		commit();
+		channel.close();
+	}
+}
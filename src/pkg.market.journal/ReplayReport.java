@@ -0,0 +1,78 @@
+package pkg.market.journal;
+
+/**
+ * Counts and timing for one journal replay.
+ */
+public class ReplayReport {
+	long records;
+	long orders;
+	long bankPurchases;
+	long amendments;
+	long trades;
+	long journaledFills;
+	long replayedFills;
+	long rejected;
+	long elapsedNanos;
+
+	public long getRecords() {
+		return records;
+	}
+
+	public long getOrders() {
+		return orders;
+	}
+
+	public long getBankPurchases() {
+		return bankPurchases;
+	}
+
+	/**
+	 * @return cancels and amends replayed
+	 */
+	public long getAmendments() {
+		return amendments;
+	}
+
+	public long getTrades() {
+		return trades;
+	}
+
+	public long getJournaledFills() {
+		return journaledFills;
+	}
+
+	public long getReplayedFills() {
+		return replayedFills;
+	}
+
+	/**
+	 * @return orders or purchases that were refused when replayed
+	 */
+	public long getRejected() {
+		return rejected;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	public double getRecordsPerSecond() {
+		return elapsedNanos == 0 ? 0.0 : records * 1e9 / elapsedNanos;
+	}
+
+	/**
+	 * @return true if the replay produced exactly the fills that were journaled
+	 */
+	public boolean isConsistent() {
+		return rejected == 0 && journaledFills == replayedFills;
+	}
+
+	@Override
+	public String toString() {
+		return "Replayed " + records + " records (" + orders + " orders, " + amendments
+				+ " cancels/amends, " + bankPurchases + " bank purchases, " + trades + " trades, " + replayedFills + "/"
+				+ journaledFills + " fills, " + rejected + " rejected) in "
+				+ (elapsedNanos / 1000000) + " ms, "
+				+ String.format("%.0f", getRecordsPerSecond()) + " records/s";
+	}
+}
@@ -0,0 +1,462 @@
+package pkg.market.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import pkg.exception.StockMarketExpection;
+import pkg.market.Market;
+import pkg.market.TickSeries;
+import pkg.market.api.IPO;
+import pkg.order.BuyOrder;
+import pkg.order.IOrderVisitor;
+import pkg.order.Order;
+import pkg.order.SellOrder;
+import pkg.stock.Stock;
+import pkg.trader.Trader;
+import pkg.util.PriceUtility;
+
+/**
+ * Point-in-time copy of a market: its stocks and prices, every resting order
+ * with its ID, the price history, and the cash, positions and open orders of
+ * the traders involved.
+ *
+ * The copy is taken on the matching thread between match cycles (see
+ * {@link Market#runOnMatchingThread(Runnable)}), which only holds matching up
+ * for as long as it takes to copy the book; unbounded histories are shared
+ * rather than copied, since appending never changes a recorded tick. The
+ * file is then written in the background.
+ *
+ * File layout (little endian): a 64 byte header with a magic number, the
+ * format version, the capture time, the last order ID handed out and the
+ * number of entries in each section; the market name; a symbol table; the
+ * stocks; the traders with their positions; the resting orders as fixed 40
+ * byte records in priority order; and each symbol's history as three
+ * columns. Strings are an int byte count followed by UTF-8. A restore maps
+ * the file and bulk-copies the history columns straight into the arrays the
+ * restored history uses.
+ *
+ * Only orders resting on this market's book are included. Orders a trader
+ * has on other markets, or that were still queued on an order gateway when
+ * the copy was taken, are not.
+ */
+public class MarketSnapshot {
+	static final int MAGIC = 0x4D534E50;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 64;
+	static final int ORDER_RECORD_SIZE = 40;
+	static final byte BUY = 1;
+	static final byte MARKET_ORDER = 2;
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "snapshot-writer");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	String marketName;
+	long capturedAt;
+	long lastOrderId;
+	ArrayList<String> stockSymbols = new ArrayList<String>();
+	ArrayList<Double> stockPrices = new ArrayList<Double>();
+
+	int orderCount;
+	long[] orderIds = new long[64];
+	String[] orderSymbols = new String[64];
+	byte[] orderFlags = new byte[64];
+	int[] orderSizes = new int[64];
+	long[] orderTicks = new long[64];
+	Trader[] orderTraders = new Trader[64];
+	long[] orderReserved = new long[64];
+
+	ArrayList<Trader> traders = new ArrayList<Trader>();
+	long[] traderCash;
+	ArrayList<ArrayList<Order>> traderPositions = new ArrayList<ArrayList<Order>>();
+
+	ArrayList<String> historySymbols = new ArrayList<String>();
+	ArrayList<TickSeries> history = new ArrayList<TickSeries>();
+
+	/**
+	 * Copy the market's state on its matching thread.
+	 * @param traders traders to include; those with resting orders are
+	 *                included anyway
+	 */
+	public static MarketSnapshot capture(final Market m, final Collection<Trader> traders) {
+		final MarketSnapshot snapshot = new MarketSnapshot();
+		m.runOnMatchingThread(new Runnable() {
+			@Override
+			public void run() {
+				snapshot.copy(m, traders);
+			}
+		});
+		return snapshot;
+	}
+
+	/**
+	 * Capture the market, then write the snapshot to {@code file} on a
+	 * background thread.
+	 */
+	public static Future<File> save(Market m, Collection<Trader> traders, final File file) {
+		final MarketSnapshot snapshot = capture(m, traders);
+		return WRITER.submit(new Callable<File>() {
+			@Override
+			public File call() throws IOException {
+				snapshot.write(file);
+				return file;
+			}
+		});
+	}
+
+	private void copy(Market m, Collection<Trader> included) {
+		marketName = m.getMarketName();
+		capturedAt = System.currentTimeMillis();
+		lastOrderId = m.getLastOrderId();
+		for (Stock stock : m.getStocks()) {
+			stockSymbols.add(stock.getSymbol());
+			stockPrices.add(stock.getPrice());
+		}
+
+		final IdentityHashMap<Trader, Boolean> seen = new IdentityHashMap<Trader, Boolean>();
+		for (Trader t : included) {
+			if (seen.put(t, Boolean.TRUE) == null) {
+				traders.add(t);
+			}
+		}
+		m.getOrderBook().visitOrders(new IOrderVisitor() {
+			@Override
+			public void visit(Order order, long orderId) {
+				if (orderCount == orderIds.length) {
+					growOrders();
+				}
+				int i = orderCount++;
+				orderIds[i] = orderId;
+				orderSymbols[i] = order.getStockSymbol();
+				long ticks = PriceUtility.toTicks(order.getPrice());
+				orderFlags[i] = (byte) ((order instanceof BuyOrder ? BUY : 0)
+						| (ticks == PriceUtility.MARKET_PRICE ? MARKET_ORDER : 0));
+				orderSizes[i] = order.getSize();
+				orderTicks[i] = ticks;
+				Trader t = order.getTrader();
+				orderTraders[i] = t;
+				if (t != null) {
+					orderReserved[i] = t.getReservedPerShare(order);
+					if (seen.put(t, Boolean.TRUE) == null) {
+						traders.add(t);
+					}
+				}
+			}
+		});
+
+		traderCash = new long[traders.size()];
+		for (int i = 0; i < traders.size(); i++) {
+			Trader t = traders.get(i);
+			traderCash[i] = t.getCashInMinorUnits();
+			traderPositions.add(t.getPosition());
+		}
+
+		for (String symbol : m.getMarketHistory().getSymbols()) {
+			historySymbols.add(symbol);
+			history.add(m.getMarketHistory().getTicksFor(symbol).capture());
+		}
+	}
+
+	private void growOrders() {
+		int capacity = orderIds.length * 2;
+		long[] ids = new long[capacity];
+		String[] symbols = new String[capacity];
+		byte[] flags = new byte[capacity];
+		int[] sizes = new int[capacity];
+		long[] ticks = new long[capacity];
+		Trader[] owners = new Trader[capacity];
+		long[] reserved = new long[capacity];
+		System.arraycopy(orderIds, 0, ids, 0, orderCount);
+		System.arraycopy(orderSymbols, 0, symbols, 0, orderCount);
+		System.arraycopy(orderFlags, 0, flags, 0, orderCount);
+		System.arraycopy(orderSizes, 0, sizes, 0, orderCount);
+		System.arraycopy(orderTicks, 0, ticks, 0, orderCount);
+		System.arraycopy(orderTraders, 0, owners, 0, orderCount);
+		System.arraycopy(orderReserved, 0, reserved, 0, orderCount);
+		orderIds = ids;
+		orderSymbols = symbols;
+		orderFlags = flags;
+		orderSizes = sizes;
+		orderTicks = ticks;
+		orderTraders = owners;
+		orderReserved = reserved;
+	}
+
+	public int getOrderCount() {
+		return orderCount;
+	}
+
+	public int getTraderCount() {
+		return traders.size();
+	}
+
+	public long getCapturedAt() {
+		return capturedAt;
+	}
+
+	/**
+	 * Write the snapshot, replacing {@code file} only once it is complete.
+	 */
+	public void write(File file) throws IOException {
+		LinkedHashMap<String, Integer> symbols = new LinkedHashMap<String, Integer>();
+		for (String symbol : stockSymbols) {
+			symbolIndex(symbols, symbol);
+		}
+		for (int i = 0; i < orderCount; i++) {
+			symbolIndex(symbols, orderSymbols[i]);
+		}
+		for (String symbol : historySymbols) {
+			symbolIndex(symbols, symbol);
+		}
+		for (ArrayList<Order> positions : traderPositions) {
+			for (Order p : positions) {
+				symbolIndex(symbols, p.getStockSymbol());
+			}
+		}
+		IdentityHashMap<Trader, Integer> traderIndex = new IdentityHashMap<Trader, Integer>();
+		for (int i = 0; i < traders.size(); i++) {
+			traderIndex.put(traders.get(i), i);
+		}
+
+		long size = HEADER_SIZE + stringSize(marketName);
+		for (String symbol : symbols.keySet()) {
+			size += stringSize(symbol);
+		}
+		size += stockSymbols.size() * 12L;
+		for (int i = 0; i < traders.size(); i++) {
+			size += stringSize(traders.get(i).getName()) + 12 + traderPositions.get(i).size() * 16L;
+		}
+		size += (long) orderCount * ORDER_RECORD_SIZE;
+		for (TickSeries ticks : history) {
+			size += 16 + ticks.size() * 24L;
+		}
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Snapshot too large to map: " + size + " bytes");
+		}
+
+		File partial = new File(file.getPath() + ".partial");
+		FileChannel channel = FileChannel.open(partial.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			out.order(ByteOrder.LITTLE_ENDIAN);
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			out.putLong(capturedAt);
+			out.putLong(lastOrderId);
+			out.putInt(symbols.size());
+			out.putInt(stockSymbols.size());
+			out.putInt(traders.size());
+			out.putInt(orderCount);
+			out.putInt(history.size());
+			out.position(HEADER_SIZE);
+			putString(out, marketName);
+			for (String symbol : symbols.keySet()) {
+				putString(out, symbol);
+			}
+			for (int i = 0; i < stockSymbols.size(); i++) {
+				out.putInt(symbols.get(stockSymbols.get(i)));
+				out.putDouble(stockPrices.get(i));
+			}
+			for (int i = 0; i < traders.size(); i++) {
+				putString(out, traders.get(i).getName());
+				out.putLong(traderCash[i]);
+				out.putInt(traderPositions.get(i).size());
+				for (Order p : traderPositions.get(i)) {
+					out.putInt(symbols.get(p.getStockSymbol()));
+					out.putInt(p.getSize());
+					out.putDouble(p.getPrice());
+				}
+			}
+			for (int i = 0; i < orderCount; i++) {
+				out.putLong(orderIds[i]);
+				out.putInt(orderTraders[i] == null ? -1 : traderIndex.get(orderTraders[i]));
+				out.putInt(symbols.get(orderSymbols[i]));
+				out.put(orderFlags[i]);
+				out.put((byte) 0);
+				out.putShort((short) 0);
+				out.putInt(orderSizes[i]);
+				out.putLong(orderTicks[i]);
+				out.putLong(orderReserved[i]);
+			}
+			double[] prices = new double[0];
+			long[] column = new long[0];
+			for (int s = 0; s < history.size(); s++) {
+				TickSeries ticks = history.get(s);
+				int length = ticks.size();
+				out.putInt(symbols.get(historySymbols.get(s)));
+				out.putInt(length);
+				out.putLong(ticks.getTotalTicks());
+				if (prices.length < length) {
+					prices = new double[length];
+					column = new long[length];
+				}
+				ticks.copyPrices(0, prices, 0, length);
+				out.asDoubleBuffer().put(prices, 0, length);
+				out.position(out.position() + length * 8);
+				ticks.copyTimestamps(0, column, 0, length);
+				out.asLongBuffer().put(column, 0, length);
+				out.position(out.position() + length * 8);
+				ticks.copyVolumes(0, column, 0, length);
+				out.asLongBuffer().put(column, 0, length);
+				out.position(out.position() + length * 8);
+			}
+			out.force();
+		} finally {
+			channel.close();
+		}
+		Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void symbolIndex(LinkedHashMap<String, Integer> symbols, String symbol) {
+		if (!symbols.containsKey(symbol)) {
+			symbols.put(symbol, symbols.size());
+		}
+	}
+
+	private static long stringSize(String s) {
+		return 4 + s.getBytes(UTF8).length;
+	}
+
+	private static void putString(ByteBuffer out, String s) {
+		byte[] bytes = s.getBytes(UTF8);
+		out.putInt(bytes.length);
+		out.put(bytes);
+	}
+
+	private static String getString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Rebuild a market from a snapshot file. Stocks are listed with their
+	 * symbol as their name and their price when the snapshot was taken;
+	 * traders get back their cash, positions and resting orders, with the
+	 * same reservations against them.
+	 */
+	public static RestoredMarket restore(File file) throws IOException, StockMarketExpection {
+		long start = System.nanoTime();
+		RestoredMarket restored = new RestoredMarket();
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		MappedByteBuffer in;
+		try {
+			in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			// the mapping stays valid after the channel is closed
+			channel.close();
+		}
+		in.order(ByteOrder.LITTLE_ENDIAN);
+		if (in.capacity() < HEADER_SIZE || in.getInt(0) != MAGIC) {
+			throw new IOException("Not a market snapshot: " + file);
+		}
+		if (in.getInt(4) != VERSION) {
+			throw new IOException("Unsupported snapshot version " + in.getInt(4) + ": " + file);
+		}
+		long lastOrderId = in.getLong(16);
+		int symbolCount = in.getInt(24);
+		int stockCount = in.getInt(28);
+		int traderCount = in.getInt(32);
+		int orderCount = in.getInt(36);
+		int seriesCount = in.getInt(40);
+		in.position(HEADER_SIZE);
+
+		Market m = new Market(getString(in));
+		restored.market = m;
+		String[] symbols = new String[symbolCount];
+		for (int i = 0; i < symbolCount; i++) {
+			symbols[i] = getString(in);
+		}
+		for (int i = 0; i < stockCount; i++) {
+			String symbol = symbols[in.getInt()];
+			IPO.enterNewStock(m, symbol, symbol, in.getDouble());
+		}
+
+		Trader[] traders = new Trader[traderCount];
+		for (int i = 0; i < traderCount; i++) {
+			String name = getString(in);
+			Trader t = new Trader(name, PriceUtility.toPrice(in.getLong()));
+			int positions = in.getInt();
+			ArrayList<Order> holdings = new ArrayList<Order>(positions);
+			for (int p = 0; p < positions; p++) {
+				String symbol = symbols[in.getInt()];
+				int quantity = in.getInt();
+				holdings.add(new BuyOrder(symbol, quantity, in.getDouble(), t));
+			}
+			t.setPosition(holdings);
+			traders[i] = t;
+			restored.traders.put(name, t);
+		}
+
+		for (int i = 0; i < orderCount; i++) {
+			long orderId = in.getLong();
+			int owner = in.getInt();
+			String symbol = symbols[in.getInt()];
+			byte flags = in.get();
+			in.position(in.position() + 3);
+			int size = in.getInt();
+			long ticks = in.getLong();
+			long reserved = in.getLong();
+			Trader t = owner < 0 ? null : traders[owner];
+			Order order;
+			if ((flags & BUY) != 0) {
+				order = (flags & MARKET_ORDER) != 0 ? new BuyOrder(symbol, size, true, t)
+						: new BuyOrder(symbol, size, PriceUtility.toPrice(ticks), t);
+			}
+			else {
+				order = (flags & MARKET_ORDER) != 0 ? new SellOrder(symbol, size, true, t)
+						: new SellOrder(symbol, size, PriceUtility.toPrice(ticks), t);
+			}
+			if (t != null) {
+				t.restoreOpenOrder(m, order, orderId, reserved);
+			}
+			m.getOrderBook().addToOrderBook(order, orderId);
+		}
+		restored.orders = orderCount;
+		m.resumeOrderIdsAfter(lastOrderId);
+
+		for (int s = 0; s < seriesCount; s++) {
+			String symbol = symbols[in.getInt()];
+			int length = in.getInt();
+			long totalTicks = in.getLong();
+			double[] prices = new double[length];
+			long[] timestamps = new long[length];
+			long[] volumes = new long[length];
+			in.asDoubleBuffer().get(prices);
+			in.position(in.position() + length * 8);
+			in.asLongBuffer().get(timestamps);
+			in.position(in.position() + length * 8);
+			in.asLongBuffer().get(volumes);
+			in.position(in.position() + length * 8);
+			m.getMarketHistory().restoreHistory(symbol, prices, timestamps, volumes, length, totalTicks);
+			restored.ticks += length;
+		}
+		restored.elapsedNanos = System.nanoTime() - start;
+		return restored;
+	}
+}
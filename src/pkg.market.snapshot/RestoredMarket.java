@@ -0,0 +1,48 @@
+package pkg.market.snapshot;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import pkg.market.Market;
+import pkg.trader.Trader;
+
+/**
+ * A market rebuilt from a {@link MarketSnapshot}, with its traders by name.
+ */
+public class RestoredMarket {
+	Market market;
+	LinkedHashMap<String, Trader> traders = new LinkedHashMap<String, Trader>();
+	long orders;
+	long ticks;
+	long elapsedNanos;
+
+	public Market getMarket() {
+		return market;
+	}
+
+	public Map<String, Trader> getTraders() {
+		return traders;
+	}
+
+	public Trader getTrader(String name) {
+		return traders.get(name);
+	}
+
+	/**
+	 * @return resting orders put back on the book
+	 */
+	public long getOrders() {
+		return orders;
+	}
+
+	/**
+	 * @return history ticks loaded
+	 */
+	public long getTicks() {
+		return ticks;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+}
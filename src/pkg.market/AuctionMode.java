@@ -0,0 +1,16 @@
+package pkg.market;
+
+/**
+ * When an {@link AuctionScheduler} runs a symbol's auction.
+ */
+public enum AuctionMode {
+	/** On a fixed interval, batching every order that arrived in between. */
+	PERIODIC,
+	/**
+	 * On a fixed interval, or sooner once enough orders have queued or
+	 * enough shares are crossing.
+	 */
+	ADAPTIVE,
+	/** As soon as each order arrives. */
+	CONTINUOUS
+}
@@ -0,0 +1,85 @@
+package pkg.market;
+
+/**
+ * How often an {@link AuctionScheduler} auctions a symbol. Short intervals
+ * and low thresholds trade sooner after an order arrives; long ones batch
+ * more orders into each auction and spend less time matching.
+ */
+public class AuctionPolicy {
+	private final AuctionMode mode;
+	private final long intervalMillis;
+	private final int maxQueuedOrders;
+	private final long maxCrossingShares;
+
+	private AuctionPolicy(AuctionMode mode, long intervalMillis, int maxQueuedOrders, long maxCrossingShares) {
+		if (mode != AuctionMode.CONTINUOUS && intervalMillis < 1) {
+			throw new IllegalArgumentException("Auction interval must be positive: " + intervalMillis);
+		}
+		this.mode = mode;
+		this.intervalMillis = intervalMillis;
+		this.maxQueuedOrders = maxQueuedOrders;
+		this.maxCrossingShares = maxCrossingShares;
+	}
+
+	public static AuctionPolicy periodic(long intervalMillis) {
+		return new AuctionPolicy(AuctionMode.PERIODIC, intervalMillis, Integer.MAX_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Auction every {@code intervalMillis}, or as soon as
+	 * {@code maxQueuedOrders} orders have arrived since the last auction or
+	 * orders that meet the other side's best price add up to
+	 * {@code maxCrossingShares} shares, whichever comes first.
+	 */
+	public static AuctionPolicy adaptive(long intervalMillis, int maxQueuedOrders, long maxCrossingShares) {
+		if (maxQueuedOrders < 1 || maxCrossingShares < 1) {
+			throw new IllegalArgumentException("Auction thresholds must be positive: " + maxQueuedOrders
+					+ " orders, " + maxCrossingShares + " shares");
+		}
+		return new AuctionPolicy(AuctionMode.ADAPTIVE, intervalMillis, maxQueuedOrders, maxCrossingShares);
+	}
+
+	/**
+	 * Auction a symbol as soon as an order meets the other side's best
+	 * price, however few orders have arrived.
+	 */
+	public static AuctionPolicy continuous() {
+		return new AuctionPolicy(AuctionMode.CONTINUOUS, 0, Integer.MAX_VALUE, 1);
+	}
+
+	public AuctionMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return milliseconds between auctions; 0 when continuous
+	 */
+	public long getIntervalMillis() {
+		return intervalMillis;
+	}
+
+	public int getMaxQueuedOrders() {
+		return maxQueuedOrders;
+	}
+
+	public long getMaxCrossingShares() {
+		return maxCrossingShares;
+	}
+
+	boolean isTimed() {
+		return mode != AuctionMode.CONTINUOUS;
+	}
+
+	@Override
+	public String toString() {
+		switch (mode) {
+		case PERIODIC:
+			return "periodic every " + intervalMillis + "ms";
+		case ADAPTIVE:
+			return "adaptive every " + intervalMillis + "ms or " + maxQueuedOrders + " orders or "
+					+ maxCrossingShares + " crossing shares";
+		default:
+			return "continuous";
+		}
+	}
+}
@@ -0,0 +1,294 @@
+package pkg.market;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pkg.order.Order;
+import pkg.order.PriceLevelBook;
+
+/**
+ * Runs a market's auctions by itself, so nobody has to call
+ * {@link Market#triggerTrade()}. Every symbol follows the default
+ * {@link AuctionPolicy} unless it was given its own.
+ *
+ * Timed auctions are queued from the scheduler's timer thread onto the
+ * market's {@link OrderGateway}, which must be running. A tick only
+ * auctions symbols that took new orders since their last auction, and when
+ * every symbol shares the default policy it runs one auction over the whole
+ * market, sharded if the market is. Adaptive and continuous auctions are run
+ * straight away on the thread that accepted the order, which with a gateway
+ * is its matching thread, so continuous mode also works without one. An
+ * order that does not meet the other side's best price cannot make a trade,
+ * so it never triggers an auction early.
+ */
+public class AuctionScheduler {
+	final Market m;
+	private volatile AuctionPolicy defaultPolicy;
+	// symbols that have their own policy
+	private final ConcurrentHashMap<String, AuctionPolicy> policies = new ConcurrentHashMap<String, AuctionPolicy>();
+	// orders since each symbol's last auction, by symbol ID; only touched by
+	// the thread accepting orders
+	private Arrivals[] arrivals = new Arrivals[0];
+	private final AtomicLong timedAuctions = new AtomicLong();
+	private final AtomicLong earlyAuctions = new AtomicLong();
+	private ScheduledExecutorService timer;
+	private final ArrayList<ScheduledFuture<?>> ticks = new ArrayList<ScheduledFuture<?>>();
+
+	static class Arrivals {
+		AuctionPolicy policy;
+		int queued;
+		long crossingShares;
+	}
+
+	public AuctionScheduler(Market m, AuctionPolicy defaultPolicy) {
+		this.m = m;
+		this.defaultPolicy = defaultPolicy;
+	}
+
+	public AuctionPolicy getDefaultPolicy() {
+		return defaultPolicy;
+	}
+
+	public void setDefaultPolicy(AuctionPolicy policy) {
+		defaultPolicy = policy;
+		policiesChanged();
+	}
+
+	/**
+	 * @return the symbol's own policy, or the default
+	 */
+	public AuctionPolicy getPolicy(String symbol) {
+		AuctionPolicy policy = policies.get(symbol);
+		return policy == null ? defaultPolicy : policy;
+	}
+
+	/**
+	 * @param policy null to go back to the default policy
+	 */
+	public void setPolicy(String symbol, AuctionPolicy policy) {
+		if (policy == null) {
+			policies.remove(symbol);
+		}
+		else {
+			policies.put(symbol, policy);
+		}
+		policiesChanged();
+	}
+
+	/**
+	 * Take over the market's auctions. Orders already resting are auctioned
+	 * at the first tick.
+	 * @throws IllegalStateException if a policy is timed and the market has
+	 *                               no running {@link OrderGateway}
+	 */
+	public synchronized void start() {
+		if (timer != null) {
+			return;
+		}
+		if (hasTimedPolicy() && m.getGateway() == null) {
+			throw new IllegalStateException("Timed auctions need a running OrderGateway on " + m.getMarketName());
+		}
+		timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "auctions-" + m.getMarketName());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		m.runOnMatchingThread(new Runnable() {
+			@Override
+			public void run() {
+				for (PriceLevelBook book : m.getOrderBook().getBooks()) {
+					if (!book.isEmpty()) {
+						arrivalsFor(book.getSymbolId()).queued++;
+					}
+				}
+				m.setAuctionScheduler(AuctionScheduler.this);
+			}
+		});
+		scheduleTicks();
+	}
+
+	/**
+	 * Stop running auctions. Orders that arrive afterwards wait for
+	 * {@link Market#triggerTrade()} again.
+	 */
+	public synchronized void stop() {
+		if (timer == null) {
+			return;
+		}
+		timer.shutdownNow();
+		timer = null;
+		ticks.clear();
+		m.runOnMatchingThread(new Runnable() {
+			@Override
+			public void run() {
+				m.setAuctionScheduler(null);
+				arrivals = new Arrivals[0];
+			}
+		});
+	}
+
+	public synchronized boolean isRunning() {
+		return timer != null;
+	}
+
+	/**
+	 * @return auctions run by the timer
+	 */
+	public long getTimedAuctions() {
+		return timedAuctions.get();
+	}
+
+	/**
+	 * @return auctions run on arrival, by an adaptive threshold or in
+	 *         continuous mode
+	 */
+	public long getEarlyAuctions() {
+		return earlyAuctions.get();
+	}
+
+	private boolean hasTimedPolicy() {
+		if (defaultPolicy.isTimed()) {
+			return true;
+		}
+		for (AuctionPolicy policy : policies.values()) {
+			if (policy.isTimed()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private synchronized void policiesChanged() {
+		if (timer == null) {
+			return;
+		}
+		m.runOnMatchingThread(new Runnable() {
+			@Override
+			public void run() {
+				for (int id = 0; id < arrivals.length; id++) {
+					if (arrivals[id] != null) {
+						arrivals[id].policy = getPolicy(m.getSymbols().symbolOf(id));
+					}
+				}
+			}
+		});
+		for (ScheduledFuture<?> tick : ticks) {
+			tick.cancel(false);
+		}
+		ticks.clear();
+		scheduleTicks();
+	}
+
+	private void scheduleTicks() {
+		IdentityHashMap<AuctionPolicy, Boolean> timed = new IdentityHashMap<AuctionPolicy, Boolean>();
+		timed.put(defaultPolicy, Boolean.TRUE);
+		for (AuctionPolicy policy : policies.values()) {
+			timed.put(policy, Boolean.TRUE);
+		}
+		for (final AuctionPolicy policy : timed.keySet()) {
+			if (!policy.isTimed()) {
+				continue;
+			}
+			final Runnable due = new Runnable() {
+				@Override
+				public void run() {
+					auctionDue(policy);
+				}
+			};
+			ticks.add(timer.scheduleAtFixedRate(new Runnable() {
+				@Override
+				public void run() {
+					// waits for the matching thread, so ticks never pile up
+					m.runOnMatchingThread(due);
+				}
+			}, policy.getIntervalMillis(), policy.getIntervalMillis(), TimeUnit.MILLISECONDS));
+		}
+	}
+
+	private Arrivals arrivalsFor(int symbolId) {
+		Arrivals a = symbolId < arrivals.length ? arrivals[symbolId] : null;
+		if (a == null) {
+			a = new Arrivals();
+			a.policy = getPolicy(m.getSymbols().symbolOf(symbolId));
+			arrivals = SymbolRegistry.withSlot(arrivals, symbolId, a);
+		}
+		return a;
+	}
+
+	/**
+	 * Run the auctions of every symbol following {@code policy} that took
+	 * orders since its last one.
+	 */
+	private void auctionDue(AuctionPolicy policy) {
+		if (policy == defaultPolicy && policies.isEmpty()) {
+			for (Arrivals a : arrivals) {
+				if (a != null && a.queued > 0) {
+					timedAuctions.incrementAndGet();
+					m.runTrade();
+					return;
+				}
+			}
+			return;
+		}
+		for (int id = 0; id < arrivals.length; id++) {
+			Arrivals a = arrivals[id];
+			if (a != null && a.policy == policy && a.queued > 0) {
+				timedAuctions.incrementAndGet();
+				m.runTrade(id);
+			}
+		}
+	}
+
+	/**
+	 * Called by the market for each new or replacing order once it rests on
+	 * its book.
+	 */
+	void orderAccepted(Order order, PriceLevelBook book) {
+		Arrivals a = arrivalsFor(book.getSymbolId());
+		a.queued++;
+		AuctionPolicy policy = a.policy;
+		if (policy.getMode() == AuctionMode.PERIODIC) {
+			return;
+		}
+		// every order counts toward the queue threshold, even one that
+		// cannot trade yet
+		if (book.crosses(order)) {
+			a.crossingShares += order.getSize();
+		}
+		if (a.queued >= policy.getMaxQueuedOrders() || a.crossingShares >= policy.getMaxCrossingShares()) {
+			earlyAuctions.incrementAndGet();
+			m.runTrade(book.getSymbolId());
+		}
+	}
+
+	/**
+	 * Called by the market after an auction of one symbol, or of all of them
+	 * when {@code symbolId} is -1.
+	 */
+	void auctionRan(int symbolId) {
+		if (symbolId < 0) {
+			for (Arrivals a : arrivals) {
+				if (a != null) {
+					a.queued = 0;
+					a.crossingShares = 0;
+				}
+			}
+			return;
+		}
+		Arrivals a = symbolId < arrivals.length ? arrivals[symbolId] : null;
+		if (a != null) {
+			a.queued = 0;
+			a.crossingShares = 0;
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package pkg.market;
+
+import java.util.HashMap;
+
+import pkg.market.api.IMarketDataListener;
+
+/**
+ * Builds OHLCV bars for every symbol at several intervals at once from a
+ * market's clearing prices. Subscribe it directly to the market's
+ * {@link MarketDataBus}; a conflating subscription would merge trades and
+ * lose highs and lows. Each clearing price costs a constant amount of work
+ * per interval, and bars are read like the history, from the matching
+ * thread or once trading has stopped.
+ */
+public class BarAggregator implements IMarketDataListener {
+	private final BarInterval[] intervals;
+	private final HashMap<String, BarSeries[]> bars = new HashMap<String, BarSeries[]>();
+	// the same series by symbol ID, so clearing prices skip the map
+	private BarSeries[][] byId = new BarSeries[0][];
+
+	public BarAggregator(BarInterval... intervals) {
+		if (intervals.length == 0) {
+			throw new IllegalArgumentException("At least one bar interval is required");
+		}
+		this.intervals = intervals.clone();
+	}
+
+	/**
+	 * Create an aggregator and subscribe it to the market's clearing prices.
+	 */
+	public static BarAggregator attach(Market m, BarInterval... intervals) {
+		BarAggregator aggregator = new BarAggregator(intervals);
+		m.getMarketData().subscribeDirect(aggregator);
+		return aggregator;
+	}
+
+	@Override
+	public void onMarketData(MarketDataBatch batch) {
+		for (int i = 0; i < batch.size(); i++) {
+			int id = batch.getSymbolId(i);
+			BarSeries[] series = id < byId.length ? byId[id] : null;
+			if (series == null) {
+				series = seriesFor(batch.getSymbol(i));
+				byId = SymbolRegistry.withSlot(byId, id, series);
+			}
+			update(series, batch.getPrice(i), batch.getTimestamp(), batch.getVolume(i));
+		}
+	}
+
+	public void update(String symbol, double price, long timestamp, long volume) {
+		update(seriesFor(symbol), price, timestamp, volume);
+	}
+
+	private void update(BarSeries[] series, double price, long timestamp, long volume) {
+		for (int i = 0; i < series.length; i++) {
+			series[i].update(price, timestamp, volume);
+		}
+	}
+
+	private BarSeries[] seriesFor(String symbol) {
+		BarSeries[] series = bars.get(symbol);
+		if (series == null) {
+			series = new BarSeries[intervals.length];
+			for (int i = 0; i < intervals.length; i++) {
+				series[i] = new BarSeries(intervals[i]);
+			}
+			bars.put(symbol, series);
+		}
+		return series;
+	}
+
+	public int getIntervalCount() {
+		return intervals.length;
+	}
+
+	public BarInterval getInterval(int index) {
+		return intervals[index];
+	}
+
+	/**
+	 * @param intervalIndex position of the interval given to the constructor
+	 * @return the symbol's bars at that interval, or null if it never traded
+	 */
+	public BarSeries getBars(String symbol, int intervalIndex) {
+		BarSeries[] series = bars.get(symbol);
+		return series == null ? null : series[intervalIndex];
+	}
+}
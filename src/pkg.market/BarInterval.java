@@ -0,0 +1,42 @@
+package pkg.market;
+
+/**
+ * How long a bar lasts: either a fixed number of trades or a fixed wall-clock
+ * period aligned to the epoch (so 60 second bars start on the minute).
+ */
+public class BarInterval {
+	private final boolean byTrades;
+	private final long length;
+
+	private BarInterval(boolean byTrades, long length) {
+		if (length < 1) {
+			throw new IllegalArgumentException("Bar length must be positive: " + length);
+		}
+		this.byTrades = byTrades;
+		this.length = length;
+	}
+
+	public static BarInterval trades(int trades) {
+		return new BarInterval(true, trades);
+	}
+
+	public static BarInterval millis(long millis) {
+		return new BarInterval(false, millis);
+	}
+
+	public boolean isByTrades() {
+		return byTrades;
+	}
+
+	/**
+	 * @return trades per bar, or milliseconds per bar
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	@Override
+	public String toString() {
+		return byTrades ? length + " trades" : length + "ms";
+	}
+}
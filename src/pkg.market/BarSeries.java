@@ -0,0 +1,200 @@
+package pkg.market;
+
+import java.util.Arrays;
+
+/**
+ * OHLCV bars of one symbol at one {@link BarInterval}, built one trade at a
+ * time. Completed bars are stored column-wise in primitive arrays, index 0
+ * being the oldest; the bar still forming is read through the
+ * {@code getCurrent*} methods. A time bar completes when the first trade of a
+ * later period arrives, and periods with no trades are skipped rather than
+ * stored empty.
+ */
+public class BarSeries {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final BarInterval interval;
+	private long[] openTimes = new long[INITIAL_CAPACITY];
+	private double[] opens = new double[INITIAL_CAPACITY];
+	private double[] highs = new double[INITIAL_CAPACITY];
+	private double[] lows = new double[INITIAL_CAPACITY];
+	private double[] closes = new double[INITIAL_CAPACITY];
+	private long[] volumes = new long[INITIAL_CAPACITY];
+	private double[] vwaps = new double[INITIAL_CAPACITY];
+	private int[] tradeCounts = new int[INITIAL_CAPACITY];
+	private int size;
+
+	// the bar still forming, valid while currentTrades > 0
+	private long currentOpenTime;
+	private double currentOpen;
+	private double currentHigh;
+	private double currentLow;
+	private double currentClose;
+	private long currentVolume;
+	private double currentNotional;
+	private int currentTrades;
+
+	BarSeries(BarInterval interval) {
+		this.interval = interval;
+	}
+
+	void update(double price, long timestamp, long volume) {
+		if (currentTrades > 0 && !interval.isByTrades()
+				&& timestamp - currentOpenTime >= interval.getLength()) {
+			complete();
+		}
+		if (currentTrades == 0) {
+			currentOpenTime = interval.isByTrades() ? timestamp
+					: timestamp - Math.floorMod(timestamp, interval.getLength());
+			currentOpen = price;
+			currentHigh = price;
+			currentLow = price;
+			currentVolume = 0;
+			currentNotional = 0;
+		}
+		else {
+			if (price > currentHigh) {
+				currentHigh = price;
+			}
+			if (price < currentLow) {
+				currentLow = price;
+			}
+		}
+		currentClose = price;
+		currentVolume += volume;
+		currentNotional += price * volume;
+		currentTrades++;
+		if (interval.isByTrades() && currentTrades == interval.getLength()) {
+			complete();
+		}
+	}
+
+	private void complete() {
+		if (size == opens.length) {
+			grow();
+		}
+		openTimes[size] = currentOpenTime;
+		opens[size] = currentOpen;
+		highs[size] = currentHigh;
+		lows[size] = currentLow;
+		closes[size] = currentClose;
+		volumes[size] = currentVolume;
+		vwaps[size] = getCurrentVwap();
+		tradeCounts[size] = currentTrades;
+		size++;
+		currentTrades = 0;
+	}
+
+	private void grow() {
+		int capacity = opens.length * 2;
+		openTimes = Arrays.copyOf(openTimes, capacity);
+		opens = Arrays.copyOf(opens, capacity);
+		highs = Arrays.copyOf(highs, capacity);
+		lows = Arrays.copyOf(lows, capacity);
+		closes = Arrays.copyOf(closes, capacity);
+		volumes = Arrays.copyOf(volumes, capacity);
+		vwaps = Arrays.copyOf(vwaps, capacity);
+		tradeCounts = Arrays.copyOf(tradeCounts, capacity);
+	}
+
+	private int checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Bar " + index + " of " + size);
+		}
+		return index;
+	}
+
+	public BarInterval getInterval() {
+		return interval;
+	}
+
+	/**
+	 * @return number of completed bars
+	 */
+	public int size() {
+		return size;
+	}
+
+	public long getOpenTime(int index) {
+		return openTimes[checkIndex(index)];
+	}
+
+	public double getOpen(int index) {
+		return opens[checkIndex(index)];
+	}
+
+	public double getHigh(int index) {
+		return highs[checkIndex(index)];
+	}
+
+	public double getLow(int index) {
+		return lows[checkIndex(index)];
+	}
+
+	public double getClose(int index) {
+		return closes[checkIndex(index)];
+	}
+
+	public long getVolume(int index) {
+		return volumes[checkIndex(index)];
+	}
+
+	/**
+	 * @return volume weighted average price, or the close if nothing traded
+	 */
+	public double getVwap(int index) {
+		return vwaps[checkIndex(index)];
+	}
+
+	public int getTradeCount(int index) {
+		return tradeCounts[checkIndex(index)];
+	}
+
+	/**
+	 * Copy {@code length} closes starting at bar {@code from} into {@code dest}.
+	 */
+	public void copyCloses(int from, double[] dest, int destPos, int length) {
+		if (length == 0) {
+			return;
+		}
+		checkIndex(from);
+		checkIndex(from + length - 1);
+		System.arraycopy(closes, from, dest, destPos, length);
+	}
+
+	public boolean hasCurrentBar() {
+		return currentTrades > 0;
+	}
+
+	public long getCurrentOpenTime() {
+		return currentOpenTime;
+	}
+
+	public double getCurrentOpen() {
+		return currentOpen;
+	}
+
+	public double getCurrentHigh() {
+		return currentHigh;
+	}
+
+	public double getCurrentLow() {
+		return currentLow;
+	}
+
+	public double getCurrentClose() {
+		return currentClose;
+	}
+
+	public long getCurrentVolume() {
+		return currentVolume;
+	}
+
+	public double getCurrentVwap() {
+		return currentVolume == 0 ? currentClose : currentNotional / currentVolume;
+	}
+
+	public int getCurrentTradeCount() {
+		return currentTrades;
+	}
+}
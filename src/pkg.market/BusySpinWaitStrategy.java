@@ -0,0 +1,14 @@
+package pkg.market;
+
+import pkg.market.api.IWaitStrategy;
+
+/**
+ * Never gives up the CPU. Lowest latency, but burns a core per waiting
+ * thread.
+ */
+public class BusySpinWaitStrategy implements IWaitStrategy {
+	@Override
+	public int idle(int idleCount) {
+		return idleCount + 1;
+	}
+}
@@ -0,0 +1,68 @@
+package pkg.market;
+
+import pkg.util.PriceUtility;
+
+/**
+ * Best bid and offer for one symbol across the venues of a
+ * {@link MarketRouter}, with the venue showing each and the quantity
+ * resting there at that price.
+ */
+public class ConsolidatedQuote {
+	String symbol;
+	long bidTicks;
+	long bidQuantity;
+	Market bidVenue;
+	long askTicks;
+	long askQuantity;
+	Market askVenue;
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public boolean hasBid() {
+		return bidVenue != null;
+	}
+
+	public boolean hasAsk() {
+		return askVenue != null;
+	}
+
+	/**
+	 * @return highest limit bid on any venue, or NaN if there is none
+	 */
+	public double getBestBid() {
+		return hasBid() ? PriceUtility.toPrice(bidTicks) : Double.NaN;
+	}
+
+	public long getBidQuantity() {
+		return bidQuantity;
+	}
+
+	public Market getBidVenue() {
+		return bidVenue;
+	}
+
+	/**
+	 * @return lowest limit ask on any venue, or NaN if there is none
+	 */
+	public double getBestAsk() {
+		return hasAsk() ? PriceUtility.toPrice(askTicks) : Double.NaN;
+	}
+
+	public long getAskQuantity() {
+		return askQuantity;
+	}
+
+	public Market getAskVenue() {
+		return askVenue;
+	}
+
+	@Override
+	public String toString() {
+		return symbol + " " + bidQuantity + " @ " + getBestBid()
+				+ (hasBid() ? " (" + bidVenue.getMarketName() + ")" : "")
+				+ " / " + askQuantity + " @ " + getBestAsk()
+				+ (hasAsk() ? " (" + askVenue.getMarketName() + ")" : "");
+	}
+}
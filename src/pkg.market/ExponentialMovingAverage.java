@@ -0,0 +1,33 @@
+package pkg.market;
+
+/**
+ * Exponentially weighted mean price, each tick weighted by
+ * {@code 2 / (period + 1)}. It starts at the first price and counts as
+ * ready after {@code period} ticks.
+ */
+public class ExponentialMovingAverage extends Indicator {
+	private final double alpha;
+	private double value = Double.NaN;
+
+	ExponentialMovingAverage(int period) {
+		super(period);
+		checkWindow(period);
+		alpha = 2.0 / (period + 1);
+	}
+
+	@Override
+	int backfillFrom(int size) {
+		// every earlier price still carries some weight
+		return 0;
+	}
+
+	@Override
+	void update(double price, long volume) {
+		value = count == 0 ? price : value + alpha * (price - value);
+	}
+
+	@Override
+	public double getValue() {
+		return value;
+	}
+}
@@ -0,0 +1,74 @@
+package pkg.market;
+
+/**
+ * A statistic of one symbol's prices, kept up to date tick by tick by
+ * {@link PriceAnalytics} at a constant cost per tick. Only indicators that
+ * were asked for are kept, so the others cost nothing. Values are read like
+ * the history, from the matching thread or once trading has stopped.
+ */
+public abstract class Indicator {
+	final int window;
+	long count;
+
+	Indicator(int window) {
+		this.window = window;
+	}
+
+	static void checkWindow(int window) {
+		if (window < 1) {
+			throw new IllegalArgumentException("Window must be positive: " + window);
+		}
+	}
+
+	void add(double price, long volume) {
+		update(price, volume);
+		count++;
+	}
+
+	/**
+	 * @return the first tick of a history of {@code size} ticks that can
+	 *         still count towards the value
+	 */
+	int backfillFrom(int size) {
+		return Math.max(0, size - window);
+	}
+
+	/**
+	 * Take in the next tick; {@link #count} is still the number of ticks
+	 * before it.
+	 */
+	abstract void update(double price, long volume);
+
+	/**
+	 * @return the value over the ticks seen so far, or NaN before the first
+	 */
+	public abstract double getValue();
+
+	/**
+	 * @return ticks covered by the value, or the period of an average that
+	 *         covers every tick
+	 */
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * @return ticks taken in, counting those of the history it started
+	 *         from that could still affect it
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return true once a whole window of ticks has been seen
+	 */
+	public boolean isReady() {
+		return count >= window;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "(" + window + ") = " + getValue();
+	}
+}
@@ -1,91 +1,169 @@
 package pkg.market;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 import pkg.exception.StockMarketExpection;
+import pkg.market.api.IClock;
+import pkg.market.api.IExecutionListener;
+import pkg.market.journal.OrderJournal;
+import pkg.order.BuyOrder;
+import pkg.order.MarketDepth;
 import pkg.order.Order;
 import pkg.order.OrderBook;
+import pkg.order.PriceLevelBook;
 import pkg.stock.Stock;
+import pkg.trader.Trader;
+import pkg.util.PriceUtility;
 
 public class Market {
 	String marketName;
-	HashMap<String, Stock> stockList;
+	SymbolRegistry symbols = new SymbolRegistry();
+	// by symbol ID; read by order-entry threads while the matching thread
+	// updates prices, and copied whenever a stock is listed or delisted
+	volatile Stock[] stocks = new Stock[0];
 	MarketHistory marketHistory;
 	OrderBook orderBook;
+	MarketDataBus marketData;
+	OrderJournal journal;
+	MarketMetrics metrics;
+	IClock clock = new SystemClock();
+	AtomicLong fillCount = new AtomicLong();
+	AtomicLong orderIds = new AtomicLong();
+	volatile OrderGateway gateway;
+	volatile AuctionScheduler auctionScheduler;
+	// copied on change, so the matching thread reads it without locking
+	volatile IExecutionListener[] executionListeners = new IExecutionListener[0];
 
 	public Market(String name) {
 		this.marketName = name;
-		stockList = new HashMap<String, Stock>();
+		metrics = new MarketMetrics(this);
 		marketHistory = new MarketHistory(this);
 		orderBook = new OrderBook(this);
+		marketData = new MarketDataBus(name);
+		marketData.subscribeDirect(marketHistory);
 	}
 
+	public String getMarketName() {
+		return marketName;
+	}
+
+	/**
+	 * List the stock, giving its symbol an ID if it has none yet.
+	 */
 	public void addStock(Stock stock) throws StockMarketExpection {
 		if (stock.getPrice() < 0.0) {
 			throw new StockMarketExpection("Stock has a negative price ("
 					+ stock.getSymbol() + ", " + stock.getPrice() + ")");
 		}
-		if (stockList.containsKey(stock.getSymbol())) {
-			throw new StockMarketExpection(
-					"Tried to enter a stock that is already present ("
-							+ stock.getSymbol() + ")");
+		synchronized (symbols) {
+			int id = symbols.register(stock.getSymbol());
+			if (getStock(id) != null) {
+				throw new StockMarketExpection(
+						"Tried to enter a stock that is already present ("
+								+ stock.getSymbol() + ")");
+			}
+			stocks = SymbolRegistry.withSlot(stocks, id, stock);
 		}
-		stockList.put(stock.getSymbol(), stock);
 		marketHistory
 				.startHistoryWithPrice(stock.getSymbol(), stock.getPrice());
 	}
 
+	/**
+	 * @return the IDs of every symbol this market has listed or taken an
+	 *         order for
+	 */
+	public SymbolRegistry getSymbols() {
+		return symbols;
+	}
+
 	public Stock getStockForSymbol(String symbol) {
-		if (stockList.containsKey(symbol)) {
-			return stockList.get(symbol);
+		return getStock(symbols.idOf(symbol));
+	}
+
+	/**
+	 * @return the listed stock with this symbol ID, or null
+	 */
+	public Stock getStock(int symbolId) {
+		Stock[] listed = stocks;
+		return symbolId >= 0 && symbolId < listed.length ? listed[symbolId] : null;
+	}
+
+	/**
+	 * @return a copy of the stock list, in listing order
+	 */
+	public ArrayList<Stock> getStocks() {
+		Stock[] listed = stocks;
+		ArrayList<Stock> list = new ArrayList<Stock>(listed.length);
+		for (Stock stock : listed) {
+			if (stock != null) {
+				list.add(stock);
+			}
 		}
-		return null;
+		return list;
 	}
 
 	public Stock removeStockFromStockList(String symbol)
 			throws StockMarketExpection {
-		if (getStockForSymbol(symbol) == null) {
-			throw new StockMarketExpection("Stock not present (" + symbol + ")");
+		synchronized (symbols) {
+			int id = symbols.idOf(symbol);
+			Stock stock = getStock(id);
+			if (stock == null) {
+				throw new StockMarketExpection("Stock not present (" + symbol + ")");
+			}
+			// the symbol keeps its ID in case it is listed again
+			stocks = SymbolRegistry.withSlot(stocks, id, null);
+			return stock;
 		}
-		return stockList.remove(symbol);
 	}
 
 	public void updateStockPrice(String symbol, double newPrice)
 			throws StockMarketExpection {
+		updateStockPrice(symbols.idOf(symbol), symbol, newPrice);
+	}
 
-		if (getStockForSymbol(symbol) == null) {
+	/**
+	 * Set the price of the stock with this symbol ID, as the order book does
+	 * after each auction.
+	 */
+	public void updateStockPrice(int symbolId, String symbol, double newPrice)
+			throws StockMarketExpection {
+		Stock stock = getStock(symbolId);
+		if (stock == null) {
 			throw new StockMarketExpection("Stock not present (" + symbol + ")");
 		}
 		if (newPrice < 0.0) {
 			throw new StockMarketExpection(
 					"Stock price cannot be set to a negative value (" + symbol
-							+ ", " + getStockForSymbol(symbol).getPrice()
+							+ ", " + stock.getPrice()
 							+ ") -> " + newPrice + " X Not Allowed ");
 		}
 
-		Stock s = removeStockFromStockList(symbol);
-		s.setPrice(newPrice);
-		addStock(s);
+		// updated in place so concurrent readers never miss the stock
+		stock.setPrice(newPrice);
 	}
 
 	public void printStocks() {
 		System.out.println(marketName);
-		for (String stockSymbol : stockList.keySet()) {
-			System.out.print("(" + stockSymbol + ", "
-					+ stockList.get(stockSymbol).getPrice() + ") ");
+		for (Stock stock : stocks) {
+			if (stock != null) {
+				System.out.print("(" + stock.getSymbol() + ", "
+						+ stock.getPrice() + ") ");
+			}
 		}
 		System.out.println();
 	}
 
 	public void printHistoryFor(String symbol) {
 		if (getStockForSymbol(symbol) != null) {
-			ArrayList<Double> priceList = getMarketHistory()
-					.getPriceFor(symbol);
+			// read from a copy of the tick columns, newest first
+			TickSeries ticks = getMarketHistory().captureTicksFor(symbol);
 			System.out.println("Stock Name: " + symbol + " in Market: "
 					+ marketName);
-			for (int i = priceList.size() - 1; i >= 0; i--) {
-				System.out.print(priceList.get(i));
+			for (int i = ticks == null ? -1 : ticks.size() - 1; i >= 0; i--) {
+				System.out.print(ticks.getPrice(i));
 				if (i != 0)
 					System.out.print(" - ");
 			}
@@ -93,8 +171,287 @@ public class Market {
 		}
 	}
 
-	public void addOrder(Order order) {
-		orderBook.addToOrderBook(order);
+	/**
+	 * @return a new order ID, unique within this market
+	 */
+	public long nextOrderId() {
+		return orderIds.incrementAndGet();
+	}
+
+	/**
+	 * @return the last order ID handed out
+	 */
+	public long getLastOrderId() {
+		return orderIds.get();
+	}
+
+	/**
+	 * Hand out only IDs above {@code orderId} from now on, e.g. after orders
+	 * were restored under their old IDs.
+	 */
+	public void resumeOrderIdsAfter(long orderId) {
+		long last;
+		while ((last = orderIds.get()) < orderId && !orderIds.compareAndSet(last, orderId)) {
+		}
+	}
+
+	/**
+	 * Enter the order into the book under a new ID. With a running
+	 * {@link OrderGateway} the order is queued for the matching thread
+	 * instead, so this can be called from any number of threads.
+	 * @return the ID to cancel or amend the order with
+	 */
+	public long addOrder(Order order) {
+		long orderId = nextOrderId();
+		addOrder(order, orderId);
+		return orderId;
+	}
+
+	/**
+	 * Enter the order under an ID obtained from {@link #nextOrderId()}.
+	 */
+	public void addOrder(Order order, long orderId) {
+		OrderGateway g = gateway;
+		// a gateway stopping meanwhile hands the order back
+		if (g != null && !g.isMatchingThread() && g.publish(order, orderId)) {
+			return;
+		}
+		acceptOrder(order, orderId);
+	}
+
+	void acceptOrder(Order order, long orderId) {
+		boolean timed = metrics.isTimed(orderId);
+		long start = timed ? System.nanoTime() : 0;
+		if (journal != null) {
+			try {
+				boolean marketOrder = PriceUtility.toTicks(order.getPrice()) == PriceUtility.MARKET_PRICE;
+				journal.orderAccepted(order instanceof BuyOrder, marketOrder,
+						order.getStockSymbol(), order.getSize(), order.getPrice(),
+						traderName(order.getTrader()));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		PriceLevelBook book = orderBook.addToOrderBook(order, orderId);
+		if (timed) {
+			metrics.addOrder.recordSince(start);
+		}
+		AuctionScheduler scheduler = auctionScheduler;
+		if (scheduler != null) {
+			scheduler.orderAccepted(order, book);
+		}
+	}
+
+	/**
+	 * Take a resting order off the book. Cancelling an order that has
+	 * already traded does nothing.
+	 * @return false if the order was not resting; always true when the
+	 *         cancel is queued on an {@link OrderGateway}
+	 */
+	public boolean cancelOrder(String symbol, long orderId) {
+		OrderGateway g = gateway;
+		if (g != null && !g.isMatchingThread() && g.publishCancel(symbol, orderId)) {
+			return true;
+		}
+		return acceptCancel(symbol, orderId);
+	}
+
+	boolean acceptCancel(String symbol, long orderId) {
+		Order cancelled = orderBook.cancel(symbol, orderId);
+		if (cancelled == null) {
+			return false;
+		}
+		if (cancelled.getTrader() != null) {
+			// gives back what the order had reserved
+			cancelled.getTrader().orderCancelled(cancelled);
+		}
+		IExecutionListener[] listeners = executionListeners;
+		for (int i = 0; i < listeners.length; i++) {
+			listeners[i].onCancel(cancelled, orderId);
+		}
+		if (journal != null) {
+			try {
+				journal.orderCancelled(cancelled.getStockSymbol(), traderName(cancelled.getTrader()));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Lower the size of a resting order. It keeps its place in the queue.
+	 * @return false if the order was not resting or would not shrink; always
+	 *         true when queued on an {@link OrderGateway}
+	 */
+	public boolean reduceOrder(String symbol, long orderId, int newSize) {
+		OrderGateway g = gateway;
+		if (g != null && !g.isMatchingThread() && g.publishReduce(symbol, orderId, newSize)) {
+			return true;
+		}
+		return acceptReduce(symbol, orderId, newSize);
+	}
+
+	boolean acceptReduce(String symbol, long orderId, int newSize) {
+		PriceLevelBook book = orderBook.getBookFor(symbol);
+		Order reduced = book == null ? null : book.getOrder(orderId);
+		if (reduced == null) {
+			return false;
+		}
+		int oldSize = reduced.getSize();
+		if (!orderBook.reduce(symbol, orderId, newSize)) {
+			return false;
+		}
+		if (reduced.getTrader() != null) {
+			reduced.getTrader().orderReduced(reduced, oldSize - newSize);
+		}
+		if (journal != null) {
+			try {
+				journal.orderAmended(symbol, newSize, reduced.getPrice(), traderName(reduced.getTrader()));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Swap a resting order for {@code replacement} under the same ID; the
+	 * replacement loses the original's queue position. If the original has
+	 * already traded, the replacement is dropped and its trader told through
+	 * {@link Trader#orderCancelled(Order)}.
+	 * @return false if the original was not resting or the trader cannot cover
+	 *         the replacement; always true when queued
+	 *         on an {@link OrderGateway}
+	 */
+	public boolean replaceOrder(long orderId, Order replacement) {
+		OrderGateway g = gateway;
+		if (g != null && !g.isMatchingThread() && g.publishReplace(orderId, replacement)) {
+			return true;
+		}
+		return acceptReplace(orderId, replacement);
+	}
+
+	boolean acceptReplace(long orderId, Order replacement) {
+		PriceLevelBook book = orderBook.getBookFor(replacement.getStockSymbol());
+		Order original = book == null ? null : book.getOrder(orderId);
+		Trader trader = replacement.getTrader();
+		if (original == null) {
+			if (trader != null) {
+				trader.orderCancelled(replacement);
+			}
+			return false;
+		}
+		// the trader moves the original's reservation over to the
+		// replacement, or refuses if it no longer fits
+		if (trader != null && !trader.confirmReplace(original, replacement)) {
+			return false;
+		}
+		orderBook.replace(orderId, replacement);
+		if (journal != null) {
+			try {
+				journal.orderAmended(replacement.getStockSymbol(), replacement.getSize(),
+						replacement.getPrice(), traderName(replacement.getTrader()));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		// a new price can cross the book; a reduce never does
+		AuctionScheduler scheduler = auctionScheduler;
+		if (scheduler != null) {
+			scheduler.orderAccepted(replacement, book);
+		}
+		return true;
+	}
+
+	/**
+	 * Called by a trader after buying shares straight from the bank, so the
+	 * purchase can be journaled along with the order flow.
+	 */
+	public void recordBankPurchase(Trader trader, String symbol, int volume) {
+		if (journal != null) {
+			try {
+				journal.bankPurchase(symbol, volume, traderName(trader));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Called by the order book for every order (or part of one) that trades.
+	 */
+	public void recordFill(Order order, long orderId, int size, double price) {
+		fillCount.incrementAndGet();
+		IExecutionListener[] listeners = executionListeners;
+		for (int i = 0; i < listeners.length; i++) {
+			listeners[i].onFill(order, orderId, size, price);
+		}
+		if (journal != null) {
+			try {
+				journal.fill(order instanceof BuyOrder, order.getStockSymbol(), size, price,
+						traderName(order.getTrader()));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private static String traderName(Trader trader) {
+		return trader == null ? "" : trader.getName();
+	}
+
+	public long getFillCount() {
+		return fillCount.get();
+	}
+
+	/**
+	 * Be told of every fill and confirmed cancel from now on. Listeners run
+	 * on the matching thread, or on the shard threads with sharded matching.
+	 */
+	public synchronized void addExecutionListener(IExecutionListener listener) {
+		IExecutionListener[] listeners = Arrays.copyOf(executionListeners, executionListeners.length + 1);
+		listeners[listeners.length - 1] = listener;
+		executionListeners = listeners;
+	}
+
+	public synchronized void removeExecutionListener(IExecutionListener listener) {
+		IExecutionListener[] listeners = executionListeners;
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i] == listener) {
+				IExecutionListener[] shorter = new IExecutionListener[listeners.length - 1];
+				System.arraycopy(listeners, 0, shorter, 0, i);
+				System.arraycopy(listeners, i + 1, shorter, i, listeners.length - i - 1);
+				executionListeners = shorter;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Journal every accepted order, bank purchase, auction and fill from now
+	 * on, or stop journaling when {@code journal} is null.
+	 */
+	public void setJournal(OrderJournal journal) {
+		this.journal = journal;
+	}
+
+	public OrderJournal getJournal() {
+		return journal;
+	}
+
+	public IClock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Stamp clearing prices and history ticks with this clock's time from
+	 * now on. Set it before listing stocks, whose opening prices are
+	 * stamped too.
+	 */
+	public void setClock(IClock clock) {
+		this.clock = clock;
+		marketData.setClock(clock);
 	}
 
 	public MarketHistory getMarketHistory() {
@@ -102,11 +459,179 @@ public class Market {
 	}
 
 	public void setMarketHistory(MarketHistory marketHistory) {
+		marketData.unsubscribe(this.marketHistory);
 		this.marketHistory = marketHistory;
+		marketData.subscribeDirect(marketHistory);
 	}
 
+	/**
+	 * Clearing prices are published here once per call to
+	 * {@link #triggerTrade()}.
+	 */
+	public MarketDataBus getMarketData() {
+		return marketData;
+	}
+
+	/**
+	 * Latencies and per-symbol counts; see {@link MarketMetrics#register()}
+	 * to publish them over JMX.
+	 */
+	public MarketMetrics getMetrics() {
+		return metrics;
+	}
+
+	public OrderBook getOrderBook() {
+		return orderBook;
+	}
+
+	/**
+	 * @return aggregated best levels for the symbol, or null if it has never
+	 *         had an order. Poll it with {@link MarketDepth#snapshot}.
+	 */
+	public MarketDepth getDepthFor(String symbol) {
+		return orderBook.getDepthFor(symbol);
+	}
+
+	/**
+	 * Match symbols in parallel on {@code shardCount} threads. Each call to
+	 * {@link #triggerTrade()} then returns once every shard has finished.
+	 */
+	public void enableShardedMatching(int shardCount) {
+		orderBook.enableSharding(shardCount);
+	}
+
+	/**
+	 * Run an auction on every symbol. With a running {@link OrderGateway} the
+	 * auction is queued behind the orders already published and this waits
+	 * until the matching thread has run it.
+	 */
 	public void triggerTrade() {
+		OrderGateway g = gateway;
+		if (g != null && !g.isMatchingThread()) {
+			long sequence = g.requestTrade();
+			if (sequence >= 0) {
+				g.awaitHandled(sequence);
+				return;
+			}
+		}
+		runTrade();
+	}
+
+	/**
+	 * Run an auction on one symbol only, queued like {@link #triggerTrade()}
+	 * when there is a running {@link OrderGateway}.
+	 */
+	public void triggerTrade(String symbol) {
+		OrderGateway g = gateway;
+		if (g != null && !g.isMatchingThread()) {
+			long sequence = g.requestTrade(symbol);
+			if (sequence >= 0) {
+				g.awaitHandled(sequence);
+				return;
+			}
+		}
+		runTrade(symbol);
+	}
+
+	/**
+	 * Run the task where it cannot overlap a match cycle: queued on the
+	 * matching thread of a running {@link OrderGateway}, waiting until it has
+	 * run, or else on the calling thread.
+	 */
+	public void runOnMatchingThread(Runnable task) {
+		OrderGateway g = gateway;
+		if (g != null && !g.isMatchingThread()) {
+			long sequence = g.publishTask(task);
+			if (sequence >= 0) {
+				g.awaitHandled(sequence);
+				return;
+			}
+		}
+		task.run();
+	}
+
+	void runTrade() {
+		boolean timed = metrics.timing;
+		long start = timed ? System.nanoTime() : 0;
+		if (journal != null) {
+			try {
+				journal.tradeTriggered();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
 		orderBook.trade();
+		// every shard has finished, so this is the whole cycle
+		marketData.publish();
+		metrics.matchCycles.incrementAndGet();
+		if (timed) {
+			metrics.matchCycle.recordSince(start);
+		}
+		AuctionScheduler scheduler = auctionScheduler;
+		if (scheduler != null) {
+			scheduler.auctionRan(-1);
+		}
+	}
+
+	void runTrade(String symbol) {
+		int symbolId = symbols.idOf(symbol);
+		// a symbol never seen has no book, so there is nothing to auction
+		if (symbolId >= 0) {
+			runTrade(symbolId);
+		}
+	}
+
+	void runTrade(int symbolId) {
+		boolean timed = metrics.timing;
+		long start = timed ? System.nanoTime() : 0;
+		if (journal != null) {
+			try {
+				journal.tradeTriggered(symbols.symbolOf(symbolId));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		orderBook.trade(symbolId);
+		marketData.publish();
+		metrics.matchCycles.incrementAndGet();
+		if (timed) {
+			metrics.matchCycle.recordSince(start);
+		}
+		AuctionScheduler scheduler = auctionScheduler;
+		if (scheduler != null) {
+			scheduler.auctionRan(symbolId);
+		}
+	}
+
+	void setAuctionScheduler(AuctionScheduler auctionScheduler) {
+		this.auctionScheduler = auctionScheduler;
+	}
+
+	/**
+	 * @return the running scheduler, or null if auctions are triggered by
+	 *         hand
+	 */
+	public AuctionScheduler getAuctionScheduler() {
+		return auctionScheduler;
+	}
+
+	void setGateway(OrderGateway gateway) {
+		this.gateway = gateway;
+	}
+
+	public OrderGateway getGateway() {
+		return gateway;
+	}
+
+	public void shutdown() {
+		OrderGateway g = gateway;
+		if (g != null) {
+			g.stop();
+		}
+		if (orderBook.getShards() != null) {
+			orderBook.getShards().shutdown();
+		}
+		marketData.close();
 	}
 
 }
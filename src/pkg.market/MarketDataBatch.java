@@ -0,0 +1,71 @@
+package pkg.market;
+
+import java.util.Arrays;
+
+/**
+ * Clearing prices from one match cycle (or, for a conflating subscriber,
+ * from all cycles since its last delivery): one entry per symbol with its
+ * price and traded volume. Batches are reused, so listeners must copy
+ * anything they keep.
+ */
+public class MarketDataBatch {
+	int[] symbolIds = new int[16];
+	String[] symbols = new String[16];
+	double[] prices = new double[16];
+	long[] volumes = new long[16];
+	int size;
+	long timestamp;
+
+	void add(int symbolId, String symbol, double price, long volume) {
+		if (size == symbols.length) {
+			symbolIds = Arrays.copyOf(symbolIds, size * 2);
+			symbols = Arrays.copyOf(symbols, size * 2);
+			prices = Arrays.copyOf(prices, size * 2);
+			volumes = Arrays.copyOf(volumes, size * 2);
+		}
+		symbolIds[size] = symbolId;
+		symbols[size] = symbol;
+		prices[size] = price;
+		volumes[size] = volume;
+		size++;
+	}
+
+	void clear() {
+		Arrays.fill(symbols, 0, size, null);
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public String getSymbol(int i) {
+		return symbols[i];
+	}
+
+	/**
+	 * @return the symbol's ID in the market's {@link SymbolRegistry}
+	 */
+	public int getSymbolId(int i) {
+		return symbolIds[i];
+	}
+
+	public double getPrice(int i) {
+		return prices[i];
+	}
+
+	public long getVolume(int i) {
+		return volumes[i];
+	}
+
+	/**
+	 * @return when the batch was published, in epoch millis
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+}
@@ -0,0 +1,190 @@
+package pkg.market;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import pkg.market.api.IClock;
+import pkg.market.api.IMarketDataListener;
+
+/**
+ * Fans a market's clearing prices out to any number of subscribers.
+ *
+ * The order book records each clearing price as it is set, and the market
+ * publishes them as a single batch at the end of every match cycle. Direct
+ * subscribers are called on the matching thread with that batch and must be
+ * quick. Conflating subscribers each get their own delivery thread: batches
+ * they have not consumed yet are merged per symbol, keeping the latest price
+ * and summing volume, so a slow consumer skips intermediate prices instead of
+ * holding up matching.
+ */
+public class MarketDataBus {
+	private final String name;
+	private IClock clock = new SystemClock();
+	private final MarketDataBatch cycle = new MarketDataBatch();
+	private final ArrayList<IMarketDataListener> direct = new ArrayList<IMarketDataListener>();
+	private final ArrayList<ConflatingSubscription> conflating = new ArrayList<ConflatingSubscription>();
+
+	public MarketDataBus(String name) {
+		this.name = name;
+	}
+
+	public synchronized void setClock(IClock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * Deliver every batch on the matching thread as soon as it is published.
+	 */
+	public synchronized void subscribeDirect(IMarketDataListener listener) {
+		direct.add(listener);
+	}
+
+	/**
+	 * Deliver on a dedicated thread, merging batches the listener has not
+	 * caught up with yet.
+	 */
+	public synchronized void subscribe(IMarketDataListener listener) {
+		ConflatingSubscription subscription = new ConflatingSubscription(listener,
+				"market-data-" + name + "-" + conflating.size());
+		conflating.add(subscription);
+		subscription.start();
+	}
+
+	public synchronized void unsubscribe(IMarketDataListener listener) {
+		direct.remove(listener);
+		for (int i = 0; i < conflating.size(); i++) {
+			if (conflating.get(i).listener == listener) {
+				conflating.remove(i).stop();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Add a clearing price to the current cycle. Called by matching shards,
+	 * possibly concurrently.
+	 */
+	public synchronized void record(int symbolId, String symbol, double price, long volume) {
+		cycle.add(symbolId, symbol, price, volume);
+	}
+
+	/**
+	 * End the cycle: hand its prices to every subscriber and start a new one.
+	 */
+	public synchronized void publish() {
+		if (cycle.isEmpty()) {
+			return;
+		}
+		cycle.timestamp = clock.currentTimeMillis();
+		for (int i = 0; i < direct.size(); i++) {
+			try {
+				direct.get(i).onMarketData(cycle);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+		for (int i = 0; i < conflating.size(); i++) {
+			conflating.get(i).offer(cycle);
+		}
+		cycle.clear();
+	}
+
+	/**
+	 * @return updates dropped across all conflating subscribers because a
+	 *         newer price for the same symbol arrived first
+	 */
+	public synchronized long getConflatedCount() {
+		long conflated = 0;
+		for (ConflatingSubscription subscription : conflating) {
+			conflated += subscription.conflated;
+		}
+		return conflated;
+	}
+
+	public synchronized void close() {
+		for (ConflatingSubscription subscription : conflating) {
+			subscription.stop();
+		}
+		conflating.clear();
+	}
+
+	static class ConflatingSubscription implements Runnable {
+		final IMarketDataListener listener;
+		final Thread thread;
+		// written by the matching thread, swapped out by the delivery thread
+		MarketDataBatch pending = new MarketDataBatch();
+		MarketDataBatch delivering = new MarketDataBatch();
+		// slot of each symbol ID in pending, -1 if it has none
+		int[] pendingIndex = new int[0];
+		long conflated;
+		boolean running = true;
+
+		ConflatingSubscription(IMarketDataListener listener, String threadName) {
+			this.listener = listener;
+			thread = new Thread(this, threadName);
+			thread.setDaemon(true);
+		}
+
+		void start() {
+			thread.start();
+		}
+
+		synchronized void offer(MarketDataBatch batch) {
+			for (int i = 0; i < batch.size; i++) {
+				int id = batch.symbolIds[i];
+				if (id >= pendingIndex.length) {
+					int length = pendingIndex.length;
+					pendingIndex = Arrays.copyOf(pendingIndex, Math.max(id + 1, length * 2));
+					Arrays.fill(pendingIndex, length, pendingIndex.length, -1);
+				}
+				int slot = pendingIndex[id];
+				if (slot < 0) {
+					pendingIndex[id] = pending.size;
+					pending.add(id, batch.symbols[i], batch.prices[i], batch.volumes[i]);
+				}
+				else {
+					pending.prices[slot] = batch.prices[i];
+					pending.volumes[slot] += batch.volumes[i];
+					conflated++;
+				}
+			}
+			pending.timestamp = batch.timestamp;
+			notifyAll();
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				synchronized (this) {
+					while (running && pending.isEmpty()) {
+						try {
+							wait();
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+					if (!running) {
+						return;
+					}
+					MarketDataBatch ready = pending;
+					pending = delivering;
+					delivering = ready;
+					for (int i = 0; i < delivering.size; i++) {
+						pendingIndex[delivering.symbolIds[i]] = -1;
+					}
+				}
+				try {
+					listener.onMarketData(delivering);
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+				delivering.clear();
+			}
+		}
+
+		synchronized void stop() {
+			running = false;
+			notifyAll();
+		}
+	}
+}
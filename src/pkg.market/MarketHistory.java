@@ -2,24 +2,44 @@ package pkg.market;
 
 import pkg.exception.StockMarketExpection;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
+import pkg.market.api.IMarketDataListener;
 import pkg.market.api.IObserver;
+import pkg.market.archive.ITickVisitor;
+import pkg.market.archive.TickArchive;
 import pkg.market.api.ISubject;
 import pkg.stock.Stock;
 
-public class MarketHistory implements IObserver {
+/**
+ * Per-symbol price ticks. Each market subscribes its history directly to its
+ * {@link MarketDataBus}; {@link IObserver} is still supported for code that
+ * sets prices through a {@link pkg.market.api.PriceSetter}.
+ */
+public class MarketHistory implements IObserver, IMarketDataListener {
 	private ISubject subject;
 	Market market;
-	Map<String, List<Double>> history;
+	// by symbol ID, null for symbols without ticks; only grown by the thread
+	// recording ticks
+	volatile TickSeries[] history = new TickSeries[0];
+	// 0 keeps every tick, otherwise each symbol keeps only the latest ticks
+	int ringCapacity;
+	TickArchive archive;
+	final PriceAnalytics analytics = new PriceAnalytics(this);
 
 	public MarketHistory(Market m) {
+		this(m, 0);
+	}
+
+	/**
+	 * @param ringCapacity number of most recent ticks kept per symbol, or 0
+	 *                     to keep the full history
+	 */
+	public MarketHistory(Market m, int ringCapacity) {
 		super();
 		this.market = m;
-		history = new HashMap<String, List<Double>>();
+		this.ringCapacity = ringCapacity;
 	}
 
 	@Override
@@ -27,12 +47,47 @@ public class MarketHistory implements IObserver {
 		this.subject = priceSetter;
 	}
 
+	/**
+	 * Also write every tick recorded from now on to the given on-disk archive.
+	 */
+	public void setArchive(TickArchive archive) {
+		this.archive = archive;
+	}
+
+	public TickArchive getArchive() {
+		return archive;
+	}
+
+	/**
+	 * Rebuild the in-memory history from every tick in the archive. Call this
+	 * before stocks are listed, so their opening prices are not recorded
+	 * again.
+	 */
+	public void loadFrom(TickArchive source) throws IOException {
+		ITickVisitor loader = new ITickVisitor() {
+			String current;
+			TickSeries ticks;
+
+			@Override
+			public void visit(String symbol, long timestamp, double price, long volume) {
+				// every tick of a segment carries the same symbol instance
+				if (symbol != current) {
+					current = symbol;
+					ticks = seriesFor(market.getSymbols().register(symbol));
+				}
+				ticks.append(price, timestamp, volume);
+			}
+		};
+		for (String symbol : source.symbols()) {
+			source.replay(symbol, loader);
+		}
+	}
+
 	public void startHistoryWithPrice(String symbol, Double newPrice)
 			throws StockMarketExpection {
-		if (!history.containsKey(symbol)) {
-			List<Double> priceList = new ArrayList<Double>();
-			priceList.add(newPrice);
-			history.put(symbol, priceList);
+		int id = market.getSymbols().register(symbol);
+		if (series(id) == null) {
+			record(id, symbol, seriesFor(id), newPrice, market.getClock().currentTimeMillis(), 0);
 		}
 	}
 
@@ -42,21 +97,132 @@ public class MarketHistory implements IObserver {
 		if (market.getStockForSymbol(updatedStock.getSymbol()) == null) {
 			return;
 		}
-		if (history.containsKey(updatedStock.getSymbol())) {
-			List<Double> priceList = history.get(updatedStock.getSymbol());
-			priceList.add(updatedStock.getPrice());
-			history.put(updatedStock.getSymbol(), priceList);
-		} else {
+		int id = market.getSymbols().idOf(updatedStock.getSymbol());
+		record(id, updatedStock.getSymbol(), seriesFor(id), updatedStock.getPrice(),
+				market.getClock().currentTimeMillis(), 0);
+	}
+
+	@Override
+	public void onMarketData(MarketDataBatch batch) {
+		for (int i = 0; i < batch.size(); i++) {
+			int id = batch.getSymbolId(i);
+			record(id, batch.getSymbol(i), seriesFor(id), batch.getPrice(i), batch.getTimestamp(),
+					batch.getVolume(i));
+		}
+	}
+
+	private void record(int symbolId, String symbol, TickSeries ticks, double price, long timestamp,
+			long volume) {
+		ticks.append(price, timestamp, volume);
+		analytics.onTick(symbolId, price, volume);
+		if (archive != null) {
+			try {
+				archive.append(symbol, timestamp, price, volume);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private TickSeries series(int symbolId) {
+		TickSeries[] all = history;
+		return symbolId >= 0 && symbolId < all.length ? all[symbolId] : null;
+	}
+
+	private TickSeries seriesFor(int symbolId) {
+		TickSeries ticks = series(symbolId);
+		if (ticks == null) {
 			// New entry to history
-			List<Double> priceList = new ArrayList<Double>();
-			priceList.add(updatedStock.getPrice());
-			history.put(updatedStock.getSymbol(), priceList);
+			ticks = ringCapacity > 0 ? new TickSeries(ringCapacity, true) : new TickSeries();
+			history = SymbolRegistry.withSlot(history, symbolId, ticks);
+		}
+		return ticks;
+	}
+
+	/**
+	 * @return the symbols with a recorded history, in symbol ID order
+	 */
+	public ArrayList<String> getSymbols() {
+		TickSeries[] all = history;
+		ArrayList<String> symbols = new ArrayList<String>(all.length);
+		for (int id = 0; id < all.length; id++) {
+			if (all[id] != null) {
+				symbols.add(market.getSymbols().symbolOf(id));
+			}
+		}
+		return symbols;
+	}
+
+	/**
+	 * Replace the symbol's history with the given ticks, oldest first, e.g.
+	 * when restoring a snapshot. The arrays are taken over, not copied, unless
+	 * they have to be fitted into a ring.
+	 * @param totalTicks ticks ever recorded, counting ones no longer held
+	 */
+	public void restoreHistory(String symbol, double[] prices, long[] timestamps, long[] volumes,
+			int length, long totalTicks) {
+		TickSeries ticks;
+		if (ringCapacity > 0) {
+			ticks = new TickSeries(ringCapacity, true);
+			for (int i = Math.max(0, length - ringCapacity); i < length; i++) {
+				ticks.append(prices[i], timestamps[i], volumes[i]);
+			}
 		}
+		else {
+			ticks = new TickSeries(prices, timestamps, volumes, length);
+		}
+		ticks.setTotalTicks(totalTicks);
+		history = SymbolRegistry.withSlot(history, market.getSymbols().register(symbol), ticks);
+	}
+
+	/**
+	 * @return indicators, range queries and downsampling over this history
+	 */
+	public PriceAnalytics getAnalytics() {
+		return analytics;
+	}
+
+	/**
+	 * @return the symbol's live tick columns, or null if none recorded. The
+	 *         matching thread keeps appending to them, so only read them on
+	 *         that thread; elsewhere use {@link #captureTicksFor(String)}.
+	 */
+	public TickSeries getTicksFor(String symbol) {
+		return series(market.getSymbols().idOf(symbol));
+	}
+
+	/**
+	 * @return the live tick columns for the symbol ID, or null if none
+	 *         recorded; matching thread only, like
+	 *         {@link #getTicksFor(String)}
+	 */
+	public TickSeries getTicks(int symbolId) {
+		return series(symbolId);
+	}
+
+	/**
+	 * @return a copy of the symbol's ticks taken on the matching thread, safe
+	 *         to read from any thread, or null if none recorded
+	 */
+	public TickSeries captureTicksFor(final String symbol) {
+		final TickSeries[] captured = new TickSeries[1];
+		market.runOnMatchingThread(new Runnable() {
+			@Override
+			public void run() {
+				TickSeries ticks = getTicksFor(symbol);
+				captured[0] = ticks == null ? null : ticks.capture();
+			}
+		});
+		return captured[0];
 	}
 
+	/**
+	 * @return a copy of the recorded prices, oldest first
+	 */
 	public ArrayList<Double> getPriceFor(String symbol) {
-		if (history.containsKey(symbol)) {
-			return (ArrayList<Double>) history.get(symbol);
+		TickSeries ticks = captureTicksFor(symbol);
+		if (ticks != null) {
+			return ticks.toPriceList();
 		} else {
 			return new ArrayList<Double>();
 		}
@@ -0,0 +1,331 @@
+package pkg.market;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import pkg.order.PriceLevelBook;
+import pkg.order.SymbolMetrics;
+import pkg.util.LatencyHistogram;
+
+/**
+ * Latency histograms for a market's hot paths and access to its per-symbol
+ * counts (see {@link SymbolMetrics}). Timed are entering an order
+ * ({@link Market#addOrder}, including journaling), a whole match cycle
+ * ({@link Market#triggerTrade()}), finding the clearing price of one book,
+ * and settling one fill with its trader. Reading the clock twice costs far
+ * more than recording, so orders and fills are timed for one order ID in
+ * {@link #getSampleEvery()}, which keeps the average cost per order to a
+ * few nanoseconds; match cycles and auctions are always timed. Timing can
+ * be switched off altogether; the counts are always kept.
+ *
+ * {@link #register()} publishes the market and each of its symbols as JMX
+ * MBeans, and {@link #startDump} prints the latencies of each interval and
+ * the symbol counts periodically.
+ */
+public class MarketMetrics implements MarketMetricsMBean {
+	public static final int DEFAULT_SAMPLE_EVERY = 16;
+
+	final Market m;
+	volatile boolean timing = true;
+	volatile long sampleMask = DEFAULT_SAMPLE_EVERY - 1;
+	final LatencyHistogram addOrder = new LatencyHistogram();
+	final LatencyHistogram matchCycle = new LatencyHistogram();
+	final LatencyHistogram auction = new LatencyHistogram();
+	final LatencyHistogram settle = new LatencyHistogram();
+	final AtomicLong matchCycles = new AtomicLong();
+	private volatile boolean registered;
+	private ScheduledExecutorService dumper;
+
+	MarketMetrics(Market m) {
+		this.m = m;
+	}
+
+	@Override
+	public String getMarketName() {
+		return m.getMarketName();
+	}
+
+	@Override
+	public boolean isTiming() {
+		return timing;
+	}
+
+	@Override
+	public void setTiming(boolean timing) {
+		this.timing = timing;
+	}
+
+	@Override
+	public int getSampleEvery() {
+		return (int) sampleMask + 1;
+	}
+
+	/**
+	 * @param every a power of two; 1 times every order and fill
+	 */
+	@Override
+	public void setSampleEvery(int every) {
+		if (every < 1 || Integer.bitCount(every) != 1) {
+			throw new IllegalArgumentException("Not a power of two: " + every);
+		}
+		sampleMask = every - 1;
+	}
+
+	/**
+	 * @return whether to time an event on this order
+	 */
+	public boolean isTimed(long orderId) {
+		return timing && (orderId & sampleMask) == 0;
+	}
+
+	public LatencyHistogram getAddOrderLatency() {
+		return addOrder;
+	}
+
+	public LatencyHistogram getMatchCycleLatency() {
+		return matchCycle;
+	}
+
+	/**
+	 * @return time to find the clearing price and volume of one book
+	 */
+	public LatencyHistogram getAuctionLatency() {
+		return auction;
+	}
+
+	/**
+	 * @return time for a trader to settle one fill
+	 */
+	public LatencyHistogram getSettleLatency() {
+		return settle;
+	}
+
+	/**
+	 * @return counts for every symbol that has had an order
+	 */
+	public ArrayList<SymbolMetrics> getSymbols() {
+		ArrayList<SymbolMetrics> symbols = new ArrayList<SymbolMetrics>();
+		for (PriceLevelBook book : m.getOrderBook().getBooks()) {
+			symbols.add(book.getMetrics());
+		}
+		return symbols;
+	}
+
+	@Override
+	public long getOrdersAdded() {
+		long total = 0;
+		for (SymbolMetrics s : getSymbols()) {
+			total += s.getOrdersAdded();
+		}
+		return total;
+	}
+
+	@Override
+	public long getFills() {
+		long total = 0;
+		for (SymbolMetrics s : getSymbols()) {
+			total += s.getFills();
+		}
+		return total;
+	}
+
+	@Override
+	public long getFailedFills() {
+		long total = 0;
+		for (SymbolMetrics s : getSymbols()) {
+			total += s.getFailedFills();
+		}
+		return total;
+	}
+
+	@Override
+	public long getVolume() {
+		long total = 0;
+		for (SymbolMetrics s : getSymbols()) {
+			total += s.getVolume();
+		}
+		return total;
+	}
+
+	@Override
+	public long getMatchCycles() {
+		return matchCycles.get();
+	}
+
+	@Override
+	public long getAddOrderP50Nanos() {
+		return addOrder.getValueAtPercentile(50);
+	}
+
+	@Override
+	public long getAddOrderP99Nanos() {
+		return addOrder.getValueAtPercentile(99);
+	}
+
+	@Override
+	public long getAddOrderMaxNanos() {
+		return addOrder.getMax();
+	}
+
+	@Override
+	public long getMatchCycleP50Nanos() {
+		return matchCycle.getValueAtPercentile(50);
+	}
+
+	@Override
+	public long getMatchCycleP99Nanos() {
+		return matchCycle.getValueAtPercentile(99);
+	}
+
+	@Override
+	public long getMatchCycleMaxNanos() {
+		return matchCycle.getMax();
+	}
+
+	@Override
+	public long getAuctionP50Nanos() {
+		return auction.getValueAtPercentile(50);
+	}
+
+	@Override
+	public long getAuctionP99Nanos() {
+		return auction.getValueAtPercentile(99);
+	}
+
+	@Override
+	public long getSettleP50Nanos() {
+		return settle.getValueAtPercentile(50);
+	}
+
+	@Override
+	public long getSettleP99Nanos() {
+		return settle.getValueAtPercentile(99);
+	}
+
+	@Override
+	public String report() {
+		return report(addOrder.copy(), matchCycle.copy(), auction.copy(), settle.copy());
+	}
+
+	private String report(LatencyHistogram addOrders, LatencyHistogram cycles, LatencyHistogram auctions,
+			LatencyHistogram fills) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(m.getMarketName()).append(" match cycles=").append(matchCycles.get()).append('\n');
+		sb.append("  add order   ").append(addOrders).append('\n');
+		sb.append("  match cycle ").append(cycles).append('\n');
+		sb.append("  auction     ").append(auctions).append('\n');
+		sb.append("  settle      ").append(fills).append('\n');
+		for (SymbolMetrics s : getSymbols()) {
+			sb.append("  ").append(s).append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Register the market under {@code pkg.market:type=Market,name=<market>}
+	 * and each symbol under
+	 * {@code pkg.market:type=Symbol,market=<market>,name=<symbol>} with the
+	 * platform MBean server. Symbols first traded later are registered as
+	 * they appear.
+	 */
+	public synchronized void register() throws JMException {
+		if (registered) {
+			return;
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		server.registerMBean(this, marketName());
+		registered = true;
+		for (SymbolMetrics s : getSymbols()) {
+			if (!server.isRegistered(symbolName(s))) {
+				server.registerMBean(s, symbolName(s));
+			}
+		}
+	}
+
+	public synchronized void unregister() throws JMException {
+		if (!registered) {
+			return;
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (SymbolMetrics s : getSymbols()) {
+			ObjectName name = symbolName(s);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		}
+		server.unregisterMBean(marketName());
+		registered = false;
+	}
+
+	/**
+	 * Called by the order book when it opens a book for a new symbol.
+	 */
+	public synchronized void symbolAdded(SymbolMetrics symbol) {
+		if (!registered) {
+			return;
+		}
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (!server.isRegistered(symbolName(symbol))) {
+				server.registerMBean(symbol, symbolName(symbol));
+			}
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private ObjectName marketName() throws JMException {
+		return new ObjectName("pkg.market:type=Market,name=" + ObjectName.quote(m.getMarketName()));
+	}
+
+	private ObjectName symbolName(SymbolMetrics s) throws JMException {
+		return new ObjectName("pkg.market:type=Symbol,market=" + ObjectName.quote(m.getMarketName()) + ",name="
+				+ ObjectName.quote(s.getSymbol()));
+	}
+
+	/**
+	 * Print the latencies recorded in each period, and the symbol counts so
+	 * far, every {@code periodMillis} on a daemon thread until
+	 * {@link #stopDump()}.
+	 */
+	public synchronized void startDump(long periodMillis, final PrintStream out) {
+		stopDump();
+		dumper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "metrics-" + m.getMarketName());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		dumper.scheduleAtFixedRate(new Runnable() {
+			LatencyHistogram[] last = { new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram(),
+					new LatencyHistogram() };
+
+			@Override
+			public void run() {
+				LatencyHistogram[] now = { addOrder.copy(), matchCycle.copy(), auction.copy(), settle.copy() };
+				out.print(report(now[0].since(last[0]), now[1].since(last[1]), now[2].since(last[2]),
+						now[3].since(last[3])));
+				last = now;
+			}
+		}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void stopDump() {
+		if (dumper != null) {
+			dumper.shutdownNow();
+			dumper = null;
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package pkg.market;
+
+/**
+ * JMX view of a market's {@link MarketMetrics}. Latencies are in
+ * nanoseconds since the market was created.
+ */
+public interface MarketMetricsMBean {
+	public String getMarketName();
+
+	public boolean isTiming();
+
+	public void setTiming(boolean timing);
+
+	public int getSampleEvery();
+
+	public void setSampleEvery(int every);
+
+	public long getOrdersAdded();
+
+	public long getFills();
+
+	public long getFailedFills();
+
+	public long getVolume();
+
+	public long getMatchCycles();
+
+	public long getAddOrderP50Nanos();
+
+	public long getAddOrderP99Nanos();
+
+	public long getAddOrderMaxNanos();
+
+	public long getMatchCycleP50Nanos();
+
+	public long getMatchCycleP99Nanos();
+
+	public long getMatchCycleMaxNanos();
+
+	public long getAuctionP50Nanos();
+
+	public long getAuctionP99Nanos();
+
+	public long getSettleP50Nanos();
+
+	public long getSettleP99Nanos();
+
+	/**
+	 * @return every latency and symbol count, one per line
+	 */
+	public String report();
+}
@@ -0,0 +1,304 @@
+package pkg.market;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import pkg.exception.StockMarketExpection;
+import pkg.order.DepthSnapshot;
+import pkg.order.MarketDepth;
+import pkg.order.OrderType;
+import pkg.trader.Trader;
+import pkg.util.PriceUtility;
+
+/**
+ * Places orders across several markets listing the same stocks. The depth of
+ * every venue is read in parallel and merged, an order is split over the
+ * venues whose resting opposite side it can trade against, best price first,
+ * and any remainder rests on the venue quoting the best opposite price. The
+ * slices are then placed in parallel, each as an ordinary order of the
+ * trader on that venue.
+ */
+public class MarketRouter {
+	ArrayList<Market> venues;
+	ExecutorService workers;
+
+	public MarketRouter(Market... venues) {
+		if (venues.length == 0) {
+			throw new IllegalArgumentException("A router needs at least one market");
+		}
+		this.venues = new ArrayList<Market>(Arrays.asList(venues));
+		workers = Executors.newFixedThreadPool(venues.length, new ThreadFactory() {
+			AtomicInteger next = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "market-router-" + next.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	public List<Market> getVenues() {
+		return Collections.unmodifiableList(venues);
+	}
+
+	/**
+	 * @return the best bid and offer for the symbol over all venues
+	 */
+	public ConsolidatedQuote getQuote(String symbol) {
+		DepthSnapshot[] books = snapshots(symbol);
+		ConsolidatedQuote quote = new ConsolidatedQuote();
+		quote.symbol = symbol;
+		for (int v = 0; v < books.length; v++) {
+			DepthSnapshot book = books[v];
+			if (book == null) {
+				continue;
+			}
+			if (book.getBidLevels() > 0 && (quote.bidVenue == null || book.getBidTicks(0) > quote.bidTicks)) {
+				quote.bidTicks = book.getBidTicks(0);
+				quote.bidQuantity = book.getBidQuantity(0);
+				quote.bidVenue = venues.get(v);
+			}
+			if (book.getAskLevels() > 0 && (quote.askVenue == null || book.getAskTicks(0) < quote.askTicks)) {
+				quote.askTicks = book.getAskTicks(0);
+				quote.askQuantity = book.getAskQuantity(0);
+				quote.askVenue = venues.get(v);
+			}
+		}
+		return quote;
+	}
+
+	public RoutedOrder placeNewOrder(Trader trader, String symbol, int volume, double price,
+			OrderType orderType) throws StockMarketExpection {
+		return route(trader, symbol, volume, price, orderType, false);
+	}
+
+	public RoutedOrder placeNewMarketOrder(Trader trader, String symbol, int volume,
+			OrderType orderType) throws StockMarketExpection {
+		return route(trader, symbol, volume, 0, orderType, true);
+	}
+
+	private RoutedOrder route(final Trader trader, final String symbol, int volume,
+			final double price, final OrderType orderType, final boolean marketOrder)
+			throws StockMarketExpection {
+		if (volume <= 0) {
+			throw new StockMarketExpection("Order size must be positive. Stock: " + symbol);
+		}
+		DepthSnapshot[] books = snapshots(symbol);
+		int resting = restingVenue(books, orderType.equals(OrderType.BUY));
+		if (resting == -1) {
+			throw new StockMarketExpection("Invalid Stock: " + symbol);
+		}
+		int[] split = split(books, orderType.equals(OrderType.BUY),
+				marketOrder ? PriceUtility.MARKET_PRICE : PriceUtility.toTicks(price), volume);
+		split[resting] += volume - sum(split);
+
+		int slices = 0;
+		for (int v = 0; v < split.length; v++) {
+			if (split[v] > 0) {
+				slices++;
+			}
+		}
+		RoutedOrder routed = new RoutedOrder();
+		routed.symbol = symbol;
+		routed.requestedVolume = volume;
+		routed.venues = new Market[slices];
+		routed.sizes = new int[slices];
+		routed.errors = new StockMarketExpection[slices];
+		ArrayList<Callable<Void>> sends = new ArrayList<Callable<Void>>(slices);
+		int slice = 0;
+		for (int v = 0; v < split.length; v++) {
+			if (split[v] == 0) {
+				continue;
+			}
+			final Market venue = venues.get(v);
+			final int size = split[v];
+			routed.venues[slice] = venue;
+			routed.sizes[slice] = size;
+			slice++;
+			sends.add(new Callable<Void>() {
+				@Override
+				public Void call() throws StockMarketExpection {
+					if (marketOrder) {
+						trader.placeNewMarketOrder(venue, symbol, size, 0, orderType);
+					}
+					else {
+						trader.placeNewOrder(venue, symbol, size, price, orderType);
+					}
+					return null;
+				}
+			});
+		}
+		send(sends, routed);
+		return routed;
+	}
+
+	/**
+	 * Shares to take from each venue, sweeping the merged opposite side from
+	 * the best price until the order is filled or its limit is reached.
+	 * Resting market orders on the other side trade at any price, so they are
+	 * taken first.
+	 */
+	private int[] split(DepthSnapshot[] books, boolean buy, long limitTicks, int volume) {
+		int[] sizes = new int[books.length];
+		long remaining = volume;
+		for (int v = 0; v < books.length && remaining > 0; v++) {
+			if (books[v] != null) {
+				long take = Math.min(remaining,
+						buy ? books[v].getMarketSellQuantity() : books[v].getMarketBuyQuantity());
+				sizes[v] += (int) take;
+				remaining -= take;
+			}
+		}
+		int[] level = new int[books.length];
+		while (remaining > 0) {
+			int best = -1;
+			long bestTicks = 0;
+			for (int v = 0; v < books.length; v++) {
+				DepthSnapshot book = books[v];
+				if (book == null || level[v] >= (buy ? book.getAskLevels() : book.getBidLevels())) {
+					continue;
+				}
+				long ticks = buy ? book.getAskTicks(level[v]) : book.getBidTicks(level[v]);
+				if (limitTicks != PriceUtility.MARKET_PRICE && (buy ? ticks > limitTicks : ticks < limitTicks)) {
+					continue;
+				}
+				if (best == -1 || (buy ? ticks < bestTicks : ticks > bestTicks)) {
+					best = v;
+					bestTicks = ticks;
+				}
+			}
+			if (best == -1) {
+				break;
+			}
+			long available = buy ? books[best].getAskQuantity(level[best])
+					: books[best].getBidQuantity(level[best]);
+			long take = Math.min(remaining, available);
+			sizes[best] += (int) take;
+			remaining -= take;
+			level[best]++;
+		}
+		return sizes;
+	}
+
+	/**
+	 * @return the venue quoting the best opposite price, else the first one
+	 *         listing the stock, or -1 if none does
+	 */
+	private int restingVenue(DepthSnapshot[] books, boolean buy) {
+		int best = -1;
+		int listed = -1;
+		for (int v = 0; v < books.length; v++) {
+			DepthSnapshot book = books[v];
+			if (book == null) {
+				continue;
+			}
+			if (listed == -1) {
+				listed = v;
+			}
+			if (buy ? book.getAskLevels() == 0 : book.getBidLevels() == 0) {
+				continue;
+			}
+			long ticks = buy ? book.getAskTicks(0) : book.getBidTicks(0);
+			long bestTicks = best == -1 ? 0 : buy ? books[best].getAskTicks(0) : books[best].getBidTicks(0);
+			if (best == -1 || (buy ? ticks < bestTicks : ticks > bestTicks)) {
+				best = v;
+			}
+		}
+		return best == -1 ? listed : best;
+	}
+
+	private static int sum(int[] sizes) {
+		int total = 0;
+		for (int size : sizes) {
+			total += size;
+		}
+		return total;
+	}
+
+	/**
+	 * Read every venue's depth for the symbol at once. Venues that do not
+	 * list the stock give null.
+	 */
+	private DepthSnapshot[] snapshots(final String symbol) {
+		ArrayList<Callable<DepthSnapshot>> queries = new ArrayList<Callable<DepthSnapshot>>(venues.size());
+		for (final Market venue : venues) {
+			queries.add(new Callable<DepthSnapshot>() {
+				@Override
+				public DepthSnapshot call() {
+					if (venue.getStockForSymbol(symbol) == null) {
+						return null;
+					}
+					MarketDepth depth = venue.getDepthFor(symbol);
+					if (depth == null) {
+						// listed, but no order has reached the book yet
+						return new DepthSnapshot(1);
+					}
+					return depth.snapshot(new DepthSnapshot(depth.getCapacity()));
+				}
+			});
+		}
+		DepthSnapshot[] books = new DepthSnapshot[venues.size()];
+		try {
+			List<Future<DepthSnapshot>> answers = workers.invokeAll(queries);
+			for (int v = 0; v < books.length; v++) {
+				try {
+					books[v] = answers.get(v).get();
+				} catch (ExecutionException e) {
+					e.getCause().printStackTrace();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return books;
+	}
+
+	private void send(ArrayList<Callable<Void>> sends, RoutedOrder routed)
+			throws StockMarketExpection {
+		if (sends.size() == 1) {
+			// nothing to overlap
+			try {
+				sends.get(0).call();
+			} catch (StockMarketExpection e) {
+				routed.errors[0] = e;
+			} catch (Exception e) {
+				routed.errors[0] = new StockMarketExpection(e.toString());
+			}
+			return;
+		}
+		List<Future<Void>> placed;
+		try {
+			placed = workers.invokeAll(sends);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new StockMarketExpection("Interrupted while routing order for stock: " + routed.symbol);
+		}
+		for (int i = 0; i < placed.size(); i++) {
+			try {
+				placed.get(i).get();
+			} catch (ExecutionException e) {
+				routed.errors[i] = e.getCause() instanceof StockMarketExpection
+						? (StockMarketExpection) e.getCause()
+						: new StockMarketExpection(e.getCause().toString());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new StockMarketExpection("Interrupted while routing order for stock: " + routed.symbol);
+			}
+		}
+	}
+
+	public void shutdown() {
+		workers.shutdown();
+	}
+}
@@ -0,0 +1,31 @@
+package pkg.market;
+
+import pkg.order.Order;
+
+/**
+ * Preallocated slot in an {@link OrderGateway} ring. Producers fill it in
+ * place and the matching thread clears it once handled.
+ */
+class OrderEvent {
+	static final int NEW_ORDER = 1;
+	static final int TRADE = 2;
+	static final int CANCEL = 3;
+	static final int REDUCE = 4;
+	static final int REPLACE = 5;
+	static final int TASK = 6;
+
+	int type;
+	Order order;
+	// for a TRADE, the one symbol to auction, or null for all of them
+	String symbol;
+	long orderId;
+	int size;
+	Runnable task;
+
+	void clear() {
+		type = 0;
+		order = null;
+		symbol = null;
+		task = null;
+	}
+}
@@ -0,0 +1,309 @@
+package pkg.market;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import pkg.market.api.IWaitStrategy;
+import pkg.order.Order;
+
+/**
+ * Multi-producer, single-consumer entry point in front of a {@link Market}.
+ *
+ * Any number of threads publish orders into a preallocated ring of
+ * {@link OrderEvent} slots. A producer claims a sequence number with a CAS
+ * on the claim counter, fills the slot and marks it published. One matching
+ * thread drains published slots in sequence order, in batches of up to
+ * {@code maxBatch}, and is the only thread that touches the order book.
+ * Cancels, amends, auctions and other tasks are queued through the same
+ * ring, so they are applied in order with new orders on the matching thread.
+ *
+ * When the ring is full, {@link #tryPublish(Order, long)} fails straight
+ * away and {@link #publish(Order, long)} waits for space using the producer
+ * wait strategy. Once the gateway has stopped, publishing fails and the
+ * caller hands the event to the market itself.
+ */
+public class OrderGateway {
+	// set on the claim counter by the matching thread as it stops, so no
+	// producer can claim a slot it would never drain
+	static final long CLOSED = 1L << 62;
+	static final long FULL = -1;
+	static final long STOPPED = -2;
+
+	private final Market market;
+	private final OrderEvent[] ring;
+	private final int mask;
+	private final int maxBatch;
+	private final IWaitStrategy producerWait;
+	private final IWaitStrategy consumerWait;
+	// next sequence to hand out to a producer; closed until started
+	private final AtomicLong claimed = new AtomicLong(CLOSED);
+	// sequence last published into each slot
+	private final AtomicLongArray published;
+	// everything below this sequence has been handled and its slot is free
+	private final AtomicLong consumed = new AtomicLong();
+	private final AtomicLong fullRingWaits = new AtomicLong();
+	private volatile boolean running;
+	private Thread matchingThread;
+
+	public OrderGateway(Market market, int capacity, IWaitStrategy waitStrategy) {
+		this(market, capacity, 256, waitStrategy, waitStrategy);
+	}
+
+	/**
+	 * @param capacity     ring size, a power of two
+	 * @param maxBatch     most events handled before freeing their slots
+	 * @param producerWait how producers wait for space when the ring is full
+	 * @param consumerWait how the matching thread waits for new events
+	 */
+	public OrderGateway(Market market, int capacity, int maxBatch, IWaitStrategy producerWait,
+			IWaitStrategy consumerWait) {
+		if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("Ring capacity must be a power of two: " + capacity);
+		}
+		this.market = market;
+		this.maxBatch = Math.max(1, maxBatch);
+		this.producerWait = producerWait;
+		this.consumerWait = consumerWait;
+		ring = new OrderEvent[capacity];
+		published = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			ring[i] = new OrderEvent();
+			published.set(i, -1);
+		}
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Start the matching thread and route the market's orders through the
+	 * ring.
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		long c;
+		do {
+			c = claimed.get();
+		} while (!claimed.compareAndSet(c, c & ~CLOSED));
+		matchingThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drainLoop();
+			}
+		}, "order-gateway-" + market.marketName);
+		matchingThread.setDaemon(true);
+		market.setGateway(this);
+		matchingThread.start();
+	}
+
+	/**
+	 * Handle everything already published, then stop the matching thread.
+	 * The market takes orders directly again afterwards.
+	 */
+	public synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		try {
+			matchingThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		market.setGateway(null);
+	}
+
+	public boolean isMatchingThread() {
+		return Thread.currentThread() == matchingThread;
+	}
+
+	/**
+	 * @return false, without waiting, if the ring is full or the gateway has
+	 *         stopped
+	 */
+	public boolean tryPublish(Order order, long orderId) {
+		return tryPublish(OrderEvent.NEW_ORDER, order, null, orderId, 0, null) >= 0;
+	}
+
+	/**
+	 * Publish the order, waiting for space if the ring is full.
+	 * @return false if the gateway has stopped and will not handle it
+	 */
+	public boolean publish(Order order, long orderId) {
+		return publish(OrderEvent.NEW_ORDER, order, null, orderId, 0, null) >= 0;
+	}
+
+	public boolean publishCancel(String symbol, long orderId) {
+		return publish(OrderEvent.CANCEL, null, symbol, orderId, 0, null) >= 0;
+	}
+
+	public boolean publishReduce(String symbol, long orderId, int newSize) {
+		return publish(OrderEvent.REDUCE, null, symbol, orderId, newSize, null) >= 0;
+	}
+
+	public boolean publishReplace(long orderId, Order replacement) {
+		return publish(OrderEvent.REPLACE, replacement, null, orderId, 0, null) >= 0;
+	}
+
+	/**
+	 * Queue a task to run on the matching thread, between the events
+	 * published before and after it.
+	 * @return the sequence number to pass to {@link #awaitHandled(long)}, or
+	 *         a negative number if the gateway has stopped
+	 */
+	public long publishTask(Runnable task) {
+		return publish(OrderEvent.TASK, null, null, 0, 0, task);
+	}
+
+	/**
+	 * Queue an auction behind every order published so far.
+	 * @return the sequence number to pass to {@link #awaitHandled(long)}, or
+	 *         a negative number if the gateway has stopped
+	 */
+	public long requestTrade() {
+		return publish(OrderEvent.TRADE, null, null, 0, 0, null);
+	}
+
+	/**
+	 * Queue an auction of one symbol behind every order published so far.
+	 * @return the sequence number to pass to {@link #awaitHandled(long)}, or
+	 *         a negative number if the gateway has stopped
+	 */
+	public long requestTrade(String symbol) {
+		return publish(OrderEvent.TRADE, null, symbol, 0, 0, null);
+	}
+
+	private long publish(int type, Order order, String symbol, long orderId, int size,
+			Runnable task) {
+		int idle = 0;
+		long sequence;
+		while ((sequence = tryPublish(type, order, symbol, orderId, size, task)) == FULL) {
+			if (idle == 0) {
+				fullRingWaits.incrementAndGet();
+			}
+			idle = producerWait.idle(idle);
+		}
+		return sequence;
+	}
+
+	private long tryPublish(int type, Order order, String symbol, long orderId, int size,
+			Runnable task) {
+		long sequence;
+		do {
+			sequence = claimed.get();
+			if ((sequence & CLOSED) != 0) {
+				return STOPPED;
+			}
+			if (sequence - consumed.get() >= ring.length) {
+				return FULL;
+			}
+		} while (!claimed.compareAndSet(sequence, sequence + 1));
+		OrderEvent event = ring[(int) sequence & mask];
+		event.type = type;
+		event.order = order;
+		event.symbol = symbol;
+		event.orderId = orderId;
+		event.size = size;
+		event.task = task;
+		published.lazySet((int) sequence & mask, sequence);
+		return sequence;
+	}
+
+	/**
+	 * Wait until the matching thread has handled the given sequence. A
+	 * gateway that is stopping still handles every sequence claimed before
+	 * it closed, so this also waits for those.
+	 */
+	public void awaitHandled(long sequence) {
+		int idle = 0;
+		// closed only once everything claimed has been handled
+		while (consumed.get() <= sequence && (claimed.get() & CLOSED) == 0) {
+			idle = producerWait.idle(idle);
+		}
+	}
+
+	private void drainLoop() {
+		long next = consumed.get();
+		int idle = 0;
+		while (true) {
+			int batch = 0;
+			while (batch < maxBatch && published.get((int) (next + batch) & mask) == next + batch) {
+				batch++;
+			}
+			if (batch == 0) {
+				// closing fails if a producer has just claimed a slot, which
+				// is then drained before trying again
+				if (!running && claimed.compareAndSet(next, next | CLOSED)) {
+					return;
+				}
+				idle = consumerWait.idle(idle);
+				continue;
+			}
+			idle = 0;
+			for (int i = 0; i < batch; i++) {
+				OrderEvent event = ring[(int) (next + i) & mask];
+				handle(event);
+				event.clear();
+			}
+			next += batch;
+			consumed.lazySet(next);
+		}
+	}
+
+	private void handle(OrderEvent event) {
+		try {
+			switch (event.type) {
+			case OrderEvent.NEW_ORDER:
+				market.acceptOrder(event.order, event.orderId);
+				break;
+			case OrderEvent.TRADE:
+				if (event.symbol == null) {
+					market.runTrade();
+				}
+				else {
+					market.runTrade(event.symbol);
+				}
+				break;
+			case OrderEvent.CANCEL:
+				market.acceptCancel(event.symbol, event.orderId);
+				break;
+			case OrderEvent.REDUCE:
+				market.acceptReduce(event.symbol, event.orderId, event.size);
+				break;
+			case OrderEvent.REPLACE:
+				market.acceptReplace(event.orderId, event.order);
+				break;
+			case OrderEvent.TASK:
+				event.task.run();
+				break;
+			default:
+				break;
+			}
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return free slots right now; producers see backpressure at 0
+	 */
+	public int remainingCapacity() {
+		return (int) (ring.length - ((claimed.get() & ~CLOSED) - consumed.get()));
+	}
+
+	public int getCapacity() {
+		return ring.length;
+	}
+
+	/**
+	 * @return number of publishes that found the ring full and had to wait
+	 */
+	public long getFullRingWaits() {
+		return fullRingWaits.get();
+	}
+
+	public long getHandledCount() {
+		return consumed.get();
+	}
+}
@@ -0,0 +1,31 @@
+package pkg.market;
+
+import java.util.concurrent.locks.LockSupport;
+
+import pkg.market.api.IWaitStrategy;
+
+/**
+ * Spins briefly, then parks the thread for a fixed time on every wait. Uses
+ * almost no CPU when idle at the cost of wake-up latency.
+ */
+public class ParkingWaitStrategy implements IWaitStrategy {
+	private final int spinTries;
+	private final long parkNanos;
+
+	public ParkingWaitStrategy() {
+		this(100, 50000);
+	}
+
+	public ParkingWaitStrategy(int spinTries, long parkNanos) {
+		this.spinTries = spinTries;
+		this.parkNanos = parkNanos;
+	}
+
+	@Override
+	public int idle(int idleCount) {
+		if (idleCount >= spinTries) {
+			LockSupport.parkNanos(parkNanos);
+		}
+		return idleCount + 1;
+	}
+}
@@ -0,0 +1,134 @@
+package pkg.market;
+
+import java.util.Arrays;
+
+/**
+ * Live indicators over a market's price history. Each one is created when
+ * first asked for, starts from the ticks the history already holds and is
+ * then updated by the history as every new tick is recorded. Symbols with
+ * no indicators cost one array lookup per tick.
+ *
+ * Indicators are added and removed on the matching thread, so they can be
+ * asked for while the market trades.
+ */
+public class PriceAnalytics {
+	final MarketHistory history;
+	// by symbol ID, each copied when an indicator is added or removed
+	volatile Indicator[][] indicators = new Indicator[0][];
+
+	PriceAnalytics(MarketHistory history) {
+		this.history = history;
+	}
+
+	/**
+	 * @return the mean of the symbol's last {@code window} prices
+	 */
+	public SimpleMovingAverage sma(String symbol, int window) {
+		return add(symbol, new SimpleMovingAverage(window));
+	}
+
+	public ExponentialMovingAverage ema(String symbol, int period) {
+		return add(symbol, new ExponentialMovingAverage(period));
+	}
+
+	/**
+	 * @param window ticks covered, or 0 for every tick from now on and in
+	 *               the history
+	 */
+	public RollingVwap vwap(String symbol, int window) {
+		return add(symbol, new RollingVwap(window));
+	}
+
+	public RollingStdDev stdDev(String symbol, int window) {
+		return add(symbol, new RollingStdDev(window));
+	}
+
+	public RollingExtreme max(String symbol, int window) {
+		return add(symbol, new RollingExtreme(window, true));
+	}
+
+	public RollingExtreme min(String symbol, int window) {
+		return add(symbol, new RollingExtreme(window, false));
+	}
+
+	/**
+	 * Stop updating the indicator.
+	 */
+	public void remove(String symbol, final Indicator indicator) {
+		final int id = history.market.getSymbols().idOf(symbol);
+		if (id < 0) {
+			return;
+		}
+		history.market.runOnMatchingThread(new Runnable() {
+			@Override
+			public void run() {
+				Indicator[] current = id < indicators.length ? indicators[id] : null;
+				if (current == null) {
+					return;
+				}
+				for (int i = 0; i < current.length; i++) {
+					if (current[i] == indicator) {
+						Indicator[] shorter = new Indicator[current.length - 1];
+						System.arraycopy(current, 0, shorter, 0, i);
+						System.arraycopy(current, i + 1, shorter, i, shorter.length - i);
+						indicators = SymbolRegistry.withSlot(indicators, id, shorter.length == 0 ? null : shorter);
+						return;
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return the symbol's ticks stamped from {@code fromMillis} up to but
+	 *         not including {@code toMillis}, or null if it has no history.
+	 *         The range is over a copy, so it may be read on any thread.
+	 */
+	public TickRange range(String symbol, long fromMillis, long toMillis) {
+		TickSeries ticks = history.captureTicksFor(symbol);
+		return ticks == null ? null : TickRange.between(ticks, fromMillis, toMillis);
+	}
+
+	/**
+	 * @return the symbol's last {@code count} ticks, or null if it has no
+	 *         history
+	 */
+	public TickRange last(String symbol, int count) {
+		TickSeries ticks = history.captureTicksFor(symbol);
+		return ticks == null ? null : TickRange.last(ticks, count);
+	}
+
+	private <T extends Indicator> T add(String symbol, final T indicator) {
+		final int id = history.market.getSymbols().register(symbol);
+		history.market.runOnMatchingThread(new Runnable() {
+			@Override
+			public void run() {
+				TickSeries ticks = history.getTicks(id);
+				if (ticks != null) {
+					for (int i = indicator.backfillFrom(ticks.size()); i < ticks.size(); i++) {
+						indicator.add(ticks.getPrice(i), ticks.getVolume(i));
+					}
+				}
+				Indicator[] current = id < indicators.length ? indicators[id] : null;
+				Indicator[] grown = current == null ? new Indicator[1] : Arrays.copyOf(current, current.length + 1);
+				grown[grown.length - 1] = indicator;
+				indicators = SymbolRegistry.withSlot(indicators, id, grown);
+			}
+		});
+		return indicator;
+	}
+
+	/**
+	 * Called by the history for every tick it records.
+	 */
+	void onTick(int symbolId, double price, long volume) {
+		Indicator[][] all = indicators;
+		if (symbolId >= all.length || all[symbolId] == null) {
+			return;
+		}
+		Indicator[] list = all[symbolId];
+		for (int i = 0; i < list.length; i++) {
+			list[i].add(price, volume);
+		}
+	}
+}
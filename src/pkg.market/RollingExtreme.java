@@ -0,0 +1,56 @@
+package pkg.market;
+
+/**
+ * Highest or lowest price of the last {@code window} ticks. Candidates are
+ * kept in a queue ordered by price, where a new price drops every older one
+ * it beats, so each tick is queued and dropped at most once.
+ */
+public class RollingExtreme extends Indicator {
+	private final boolean highest;
+	// circular queue of candidate prices and the tick number of each
+	private final double[] prices;
+	private final long[] ticks;
+	private int head;
+	private int size;
+
+	RollingExtreme(int window, boolean highest) {
+		super(window);
+		checkWindow(window);
+		this.highest = highest;
+		prices = new double[window];
+		ticks = new long[window];
+	}
+
+	@Override
+	void update(double price, long volume) {
+		while (size > 0 && ticks[head] <= count - window) {
+			head = (head + 1) % window;
+			size--;
+		}
+		while (size > 0) {
+			double last = prices[(head + size - 1) % window];
+			if (highest ? last > price : last < price) {
+				break;
+			}
+			size--;
+		}
+		int tail = (head + size) % window;
+		prices[tail] = price;
+		ticks[tail] = count;
+		size++;
+	}
+
+	@Override
+	public double getValue() {
+		return size == 0 ? Double.NaN : prices[head];
+	}
+
+	public boolean isHighest() {
+		return highest;
+	}
+
+	@Override
+	public String toString() {
+		return (highest ? "Max(" : "Min(") + window + ") = " + getValue();
+	}
+}
@@ -0,0 +1,49 @@
+package pkg.market;
+
+/**
+ * Population standard deviation of the last {@code window} prices. The mean
+ * and the sum of squared deviations are updated as prices enter and leave
+ * the window, which stays accurate where a running sum of squares would
+ * cancel out.
+ */
+public class RollingStdDev extends Indicator {
+	private final double[] prices;
+	private double mean;
+	private double m2;
+
+	RollingStdDev(int window) {
+		super(window);
+		checkWindow(window);
+		prices = new double[window];
+	}
+
+	@Override
+	void update(double price, long volume) {
+		int slot = (int) (count % window);
+		if (count < window) {
+			double delta = price - mean;
+			mean += delta / (count + 1);
+			m2 += delta * (price - mean);
+		}
+		else {
+			double old = prices[slot];
+			double oldMean = mean;
+			mean += (price - old) / window;
+			m2 += (price - old) * (price - mean + old - oldMean);
+		}
+		prices[slot] = price;
+	}
+
+	@Override
+	public double getValue() {
+		if (count == 0) {
+			return Double.NaN;
+		}
+		// rounding can leave a tiny negative sum for a flat window
+		return Math.sqrt(Math.max(0.0, m2 / Math.min(count, window)));
+	}
+
+	public double getMean() {
+		return count == 0 ? Double.NaN : mean;
+	}
+}
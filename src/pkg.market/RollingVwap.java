@@ -0,0 +1,67 @@
+package pkg.market;
+
+import pkg.util.PriceUtility;
+
+/**
+ * Volume-weighted average price of the last {@code window} ticks, or of
+ * every tick when the window is 0. Ticks without volume, like opening
+ * prices, carry no weight.
+ */
+public class RollingVwap extends Indicator {
+	private final long[] prices;
+	private final long[] volumes;
+	// in ticks times shares
+	private long notional;
+	private long volume;
+
+	RollingVwap(int window) {
+		super(window);
+		if (window < 0) {
+			throw new IllegalArgumentException("Window must not be negative: " + window);
+		}
+		prices = new long[window];
+		volumes = new long[window];
+	}
+
+	@Override
+	int backfillFrom(int size) {
+		return window == 0 ? 0 : super.backfillFrom(size);
+	}
+
+	@Override
+	void update(double price, long tickVolume) {
+		long ticks = PriceUtility.toTicks(price);
+		notional += ticks * tickVolume;
+		volume += tickVolume;
+		if (window > 0) {
+			int slot = (int) (count % window);
+			notional -= prices[slot] * volumes[slot];
+			volume -= volumes[slot];
+			prices[slot] = ticks;
+			volumes[slot] = tickVolume;
+		}
+	}
+
+	/**
+	 * @return NaN while no volume has traded in the window
+	 */
+	@Override
+	public double getValue() {
+		if (volume == 0) {
+			return Double.NaN;
+		}
+		return notional / (double) volume / PriceUtility.TICKS_PER_UNIT;
+	}
+
+	/**
+	 * @return shares traded in the window
+	 */
+	public long getVolume() {
+		return volume;
+	}
+
+	@Override
+	public boolean isReady() {
+		return window == 0 ? count > 0 : super.isReady();
+	}
+}
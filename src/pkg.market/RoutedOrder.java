@@ -0,0 +1,72 @@
+package pkg.market;
+
+import pkg.exception.StockMarketExpection;
+
+/**
+ * How a {@link MarketRouter} split one order: a slice per venue it was sent
+ * to, with the error for any slice the venue or the trader refused.
+ */
+public class RoutedOrder {
+	String symbol;
+	int requestedVolume;
+	Market[] venues;
+	int[] sizes;
+	StockMarketExpection[] errors;
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public int getRequestedVolume() {
+		return requestedVolume;
+	}
+
+	public int getSliceCount() {
+		return venues.length;
+	}
+
+	public Market getVenue(int slice) {
+		return venues[slice];
+	}
+
+	public int getSize(int slice) {
+		return sizes[slice];
+	}
+
+	/**
+	 * @return why the slice was refused, or null if it was placed
+	 */
+	public StockMarketExpection getError(int slice) {
+		return errors[slice];
+	}
+
+	/**
+	 * @return shares actually placed across all venues
+	 */
+	public int getRoutedVolume() {
+		int volume = 0;
+		for (int i = 0; i < sizes.length; i++) {
+			if (errors[i] == null) {
+				volume += sizes[i];
+			}
+		}
+		return volume;
+	}
+
+	public boolean isComplete() {
+		return getRoutedVolume() == requestedVolume;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(symbol).append(' ').append(getRoutedVolume())
+				.append('/').append(requestedVolume);
+		for (int i = 0; i < venues.length; i++) {
+			sb.append(' ').append(venues[i].getMarketName()).append('=').append(sizes[i]);
+			if (errors[i] != null) {
+				sb.append("(refused)");
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,34 @@
+package pkg.market;
+
+import pkg.util.PriceUtility;
+
+/**
+ * Mean price of the last {@code window} ticks. Prices are summed in ticks,
+ * so the sum never drifts however long the average runs.
+ */
+public class SimpleMovingAverage extends Indicator {
+	private final long[] prices;
+	private long sum;
+
+	SimpleMovingAverage(int window) {
+		super(window);
+		checkWindow(window);
+		prices = new long[window];
+	}
+
+	@Override
+	void update(double price, long volume) {
+		int slot = (int) (count % window);
+		long ticks = PriceUtility.toTicks(price);
+		sum += ticks - prices[slot];
+		prices[slot] = ticks;
+	}
+
+	@Override
+	public double getValue() {
+		if (count == 0) {
+			return Double.NaN;
+		}
+		return sum / (double) Math.min(count, window) / PriceUtility.TICKS_PER_UNIT;
+	}
+}
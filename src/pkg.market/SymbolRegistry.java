@@ -0,0 +1,78 @@
+package pkg.market;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dense integer IDs for a market's symbols, handed out in the order symbols
+ * are first seen, starting at 0 and never reused. Per-symbol state (books,
+ * histories, stocks) is kept in arrays indexed by ID, so a symbol's string
+ * is only looked up once, where an order or a query enters the market.
+ *
+ * Lookups take no lock; registering a new symbol does.
+ */
+public class SymbolRegistry {
+	private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+	// doubled when full; a slot is filled before the count covers it and
+	// never changed after, so readers need no lock
+	private volatile String[] symbols = new String[16];
+	private volatile int count;
+
+	/**
+	 * @return the symbol's ID, or -1 if it has none yet
+	 */
+	public int idOf(String symbol) {
+		Integer id = ids.get(symbol);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * @return the symbol's ID, giving it the next one if it has none yet
+	 */
+	public int register(String symbol) {
+		Integer id = ids.get(symbol);
+		if (id != null) {
+			return id;
+		}
+		synchronized (this) {
+			id = ids.get(symbol);
+			if (id == null) {
+				id = count;
+				String[] names = symbols;
+				if (id == names.length) {
+					names = Arrays.copyOf(names, names.length * 2);
+				}
+				names[id] = symbol;
+				symbols = names;
+				count = id + 1;
+				ids.put(symbol, id);
+			}
+			return id;
+		}
+	}
+
+	public String symbolOf(int id) {
+		if (id < 0 || id >= count) {
+			throw new IndexOutOfBoundsException("Symbol ID " + id + " of " + count);
+		}
+		return symbols[id];
+	}
+
+	/**
+	 * @return the number of IDs handed out; every ID is below this
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @return a copy of the per-symbol array, long enough for {@code id}, with
+	 *         {@code value} in that slot. Publishing the copy through a
+	 *         volatile field lets readers use the array without locking.
+	 */
+	public static <T> T[] withSlot(T[] array, int id, T value) {
+		T[] copy = Arrays.copyOf(array, Math.max(array.length, id + 1));
+		copy[id] = value;
+		return copy;
+	}
+}
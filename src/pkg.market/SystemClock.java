@@ -0,0 +1,13 @@
+package pkg.market;
+
+import pkg.market.api.IClock;
+
+/**
+ * Wall-clock time, the default for every market.
+ */
+public class SystemClock implements IClock {
+	@Override
+	public long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+}
@@ -0,0 +1,209 @@
+package pkg.market;
+
+import pkg.util.PriceUtility;
+
+/**
+ * A slice of a {@link TickSeries} between two times. Nothing is computed
+ * until asked for: the first summary figure read walks the slice once for
+ * all of them, and downsampling walks it again. The slice reads the series
+ * it was taken from, so use it where the history may be read, or take it
+ * from {@link TickSeries#capture()}.
+ */
+public class TickRange {
+	private final TickSeries ticks;
+	private final int from;
+	private final int to;
+
+	private boolean summarized;
+	private double high;
+	private double low;
+	private double mean;
+	private double stdDev;
+	private long volume;
+	// in ticks times shares
+	private long notional;
+
+	TickRange(TickSeries ticks, int from, int to) {
+		this.ticks = ticks;
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * @return the ticks stamped from {@code fromMillis} up to but not
+	 *         including {@code toMillis}
+	 */
+	public static TickRange between(TickSeries ticks, long fromMillis, long toMillis) {
+		int from = ticks.indexAtOrAfter(fromMillis);
+		return new TickRange(ticks, from, Math.max(from, ticks.indexAtOrAfter(toMillis)));
+	}
+
+	/**
+	 * @return the last {@code count} ticks, or all of them if fewer
+	 */
+	public static TickRange last(TickSeries ticks, int count) {
+		return new TickRange(ticks, Math.max(0, ticks.size() - count), ticks.size());
+	}
+
+	public int size() {
+		return to - from;
+	}
+
+	public boolean isEmpty() {
+		return to == from;
+	}
+
+	/**
+	 * @param index 0 for the first tick of the range
+	 */
+	public double getPrice(int index) {
+		return ticks.getPrice(from + checkIndex(index));
+	}
+
+	public long getTimestamp(int index) {
+		return ticks.getTimestamp(from + checkIndex(index));
+	}
+
+	public long getVolume(int index) {
+		return ticks.getVolume(from + checkIndex(index));
+	}
+
+	private int checkIndex(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Tick " + index + " of " + size());
+		}
+		return index;
+	}
+
+	public double getFirstPrice() {
+		return isEmpty() ? Double.NaN : ticks.getPrice(from);
+	}
+
+	public double getLastPrice() {
+		return isEmpty() ? Double.NaN : ticks.getPrice(to - 1);
+	}
+
+	public double getHigh() {
+		summarize();
+		return high;
+	}
+
+	public double getLow() {
+		summarize();
+		return low;
+	}
+
+	public double getMean() {
+		summarize();
+		return mean;
+	}
+
+	/**
+	 * @return population standard deviation of the prices
+	 */
+	public double getStdDev() {
+		summarize();
+		return stdDev;
+	}
+
+	/**
+	 * @return shares traded in the range
+	 */
+	public long getTotalVolume() {
+		summarize();
+		return volume;
+	}
+
+	/**
+	 * @return NaN if no volume traded in the range
+	 */
+	public double getVwap() {
+		summarize();
+		return volume == 0 ? Double.NaN : notional / (double) volume / PriceUtility.TICKS_PER_UNIT;
+	}
+
+	private void summarize() {
+		if (summarized) {
+			return;
+		}
+		summarized = true;
+		if (isEmpty()) {
+			high = low = mean = stdDev = Double.NaN;
+			return;
+		}
+		high = Double.NEGATIVE_INFINITY;
+		low = Double.POSITIVE_INFINITY;
+		double m2 = 0.0;
+		for (int i = from; i < to; i++) {
+			double price = ticks.getPrice(i);
+			long v = ticks.getVolume(i);
+			if (price > high) {
+				high = price;
+			}
+			if (price < low) {
+				low = price;
+			}
+			double delta = price - mean;
+			mean += delta / (i - from + 1);
+			m2 += delta * (price - mean);
+			volume += v;
+			notional += PriceUtility.toTicks(price) * v;
+		}
+		stdDev = Math.sqrt(m2 / size());
+	}
+
+	/**
+	 * One tick per {@code stepMillis}, aligned to the epoch like time bars:
+	 * the last price of each step that has ticks, stamped with the step's
+	 * start, and the volume of the whole step. Steps without ticks are left
+	 * out.
+	 */
+	public TickSeries downsampleByStep(long stepMillis) {
+		if (stepMillis < 1) {
+			throw new IllegalArgumentException("Step must be positive: " + stepMillis);
+		}
+		TickSeries sampled = new TickSeries();
+		int i = from;
+		while (i < to) {
+			long step = ticks.getTimestamp(i) - Math.floorMod(ticks.getTimestamp(i), stepMillis);
+			long stepVolume = 0;
+			double last = 0.0;
+			while (i < to && ticks.getTimestamp(i) < step + stepMillis) {
+				last = ticks.getPrice(i);
+				stepVolume += ticks.getVolume(i);
+				i++;
+			}
+			sampled.append(last, step, stepVolume);
+		}
+		return sampled;
+	}
+
+	/**
+	 * At most {@code points} ticks spread evenly over the range, always
+	 * keeping the first and last, e.g. to plot a long history.
+	 */
+	public TickSeries downsampleToPoints(int points) {
+		if (points < 2) {
+			throw new IllegalArgumentException("At least two points are needed: " + points);
+		}
+		int n = size();
+		TickSeries sampled = new TickSeries(Math.max(1, Math.min(n, points)), false);
+		if (n <= points) {
+			for (int i = from; i < to; i++) {
+				sampled.append(ticks.getPrice(i), ticks.getTimestamp(i), ticks.getVolume(i));
+			}
+			return sampled;
+		}
+		for (int p = 0; p < points; p++) {
+			int i = from + (int) ((long) p * (n - 1) / (points - 1));
+			sampled.append(ticks.getPrice(i), ticks.getTimestamp(i), ticks.getVolume(i));
+		}
+		return sampled;
+	}
+
+	@Override
+	public String toString() {
+		return size() + " ticks, high " + getHigh() + ", low " + getLow() + ", mean " + getMean() + ", vwap "
+				+ getVwap();
+	}
+}
@@ -0,0 +1,224 @@
+package pkg.market;
+
+import java.util.ArrayList;
+
+/**
+ * Price history of one symbol stored column-wise in primitive arrays: price,
+ * timestamp (epoch millis) and traded volume per tick.
+ *
+ * The series either grows without bound or, when created with a fixed
+ * capacity, keeps only the most recent ticks and overwrites the oldest.
+ * Index 0 is always the oldest tick still held. Only {@link MarketHistory}
+ * appends, on the thread recording ticks, and a series is not synchronized:
+ * other threads should read a {@link #capture()} taken on that thread.
+ */
+public class TickSeries {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private double[] prices;
+	private long[] timestamps;
+	private long[] volumes;
+	private final boolean ring;
+	private int start;
+	private int size;
+	private long totalTicks;
+
+	TickSeries() {
+		this(INITIAL_CAPACITY, false);
+	}
+
+	TickSeries(int capacity, boolean ring) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		this.ring = ring;
+		prices = new double[capacity];
+		timestamps = new long[capacity];
+		volumes = new long[capacity];
+	}
+
+	/**
+	 * An unbounded series over the first {@code length} entries of the given
+	 * columns, which it takes over.
+	 */
+	TickSeries(double[] prices, long[] timestamps, long[] volumes, int length) {
+		this.ring = false;
+		if (prices.length == 0) {
+			prices = new double[INITIAL_CAPACITY];
+			timestamps = new long[INITIAL_CAPACITY];
+			volumes = new long[INITIAL_CAPACITY];
+		}
+		this.prices = prices;
+		this.timestamps = timestamps;
+		this.volumes = volumes;
+		this.size = length;
+		this.totalTicks = length;
+	}
+
+	void setTotalTicks(long totalTicks) {
+		this.totalTicks = Math.max(totalTicks, size);
+	}
+
+	/**
+	 * @return a copy of the ticks held right now, unaffected by later
+	 *         appends. Take it where the series may be read, e.g. on the
+	 *         matching thread.
+	 */
+	public TickSeries capture() {
+		int length = Math.max(1, size);
+		TickSeries copy = new TickSeries(new double[length], new long[length], new long[length], 0);
+		copyPrices(0, copy.prices, 0, size);
+		copyColumn(timestamps, 0, copy.timestamps, 0, size);
+		copyColumn(volumes, 0, copy.volumes, 0, size);
+		copy.size = size;
+		copy.totalTicks = totalTicks;
+		return copy;
+	}
+
+	void append(double price, long timestamp, long volume) {
+		if (size == prices.length) {
+			if (ring) {
+				prices[start] = price;
+				timestamps[start] = timestamp;
+				volumes[start] = volume;
+				start = (start + 1) % prices.length;
+				totalTicks++;
+				return;
+			}
+			grow();
+		}
+		int slot = physical(size);
+		prices[slot] = price;
+		timestamps[slot] = timestamp;
+		volumes[slot] = volume;
+		size++;
+		totalTicks++;
+	}
+
+	private void grow() {
+		int capacity = prices.length * 2;
+		double[] newPrices = new double[capacity];
+		long[] newTimestamps = new long[capacity];
+		long[] newVolumes = new long[capacity];
+		System.arraycopy(prices, 0, newPrices, 0, size);
+		System.arraycopy(timestamps, 0, newTimestamps, 0, size);
+		System.arraycopy(volumes, 0, newVolumes, 0, size);
+		prices = newPrices;
+		timestamps = newTimestamps;
+		volumes = newVolumes;
+	}
+
+	private int physical(int index) {
+		int slot = start + index;
+		return slot < prices.length ? slot : slot - prices.length;
+	}
+
+	private int checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Tick " + index + " of " + size);
+		}
+		return physical(index);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return ticks ever recorded, including ones a ring has overwritten
+	 */
+	public long getTotalTicks() {
+		return totalTicks;
+	}
+
+	public boolean isRing() {
+		return ring;
+	}
+
+	public int getCapacity() {
+		return prices.length;
+	}
+
+	public double getPrice(int index) {
+		return prices[checkIndex(index)];
+	}
+
+	public long getTimestamp(int index) {
+		return timestamps[checkIndex(index)];
+	}
+
+	public long getVolume(int index) {
+		return volumes[checkIndex(index)];
+	}
+
+	public double getLastPrice() {
+		return getPrice(size - 1);
+	}
+
+	/**
+	 * @return the index of the first tick stamped at or after
+	 *         {@code timestamp}, or {@link #size()} if there is none.
+	 *         Timestamps never decrease, so this is a binary search.
+	 */
+	public int indexAtOrAfter(long timestamp) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (timestamps[physical(middle)] < timestamp) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Copy {@code length} prices starting at {@code from} into {@code dest}.
+	 */
+	public void copyPrices(int from, double[] dest, int destPos, int length) {
+		if (length == 0) {
+			return;
+		}
+		checkIndex(from);
+		checkIndex(from + length - 1);
+		int first = physical(from);
+		int firstRun = Math.min(length, prices.length - first);
+		System.arraycopy(prices, first, dest, destPos, firstRun);
+		System.arraycopy(prices, 0, dest, destPos + firstRun, length - firstRun);
+	}
+
+	public void copyTimestamps(int from, long[] dest, int destPos, int length) {
+		copyColumn(timestamps, from, dest, destPos, length);
+	}
+
+	public void copyVolumes(int from, long[] dest, int destPos, int length) {
+		copyColumn(volumes, from, dest, destPos, length);
+	}
+
+	private void copyColumn(long[] column, int from, long[] dest, int destPos, int length) {
+		if (length == 0) {
+			return;
+		}
+		checkIndex(from);
+		checkIndex(from + length - 1);
+		int first = physical(from);
+		int firstRun = Math.min(length, column.length - first);
+		System.arraycopy(column, first, dest, destPos, firstRun);
+		System.arraycopy(column, 0, dest, destPos + firstRun, length - firstRun);
+	}
+
+	public ArrayList<Double> toPriceList() {
+		ArrayList<Double> priceList = new ArrayList<Double>(size);
+		for (int i = 0; i < size; i++) {
+			priceList.add(prices[physical(i)]);
+		}
+		return priceList;
+	}
+}
@@ -0,0 +1,26 @@
+package pkg.market;
+
+import pkg.market.api.IWaitStrategy;
+
+/**
+ * Spins for a while, then yields the CPU to other threads on every wait.
+ */
+public class YieldingWaitStrategy implements IWaitStrategy {
+	private final int spinTries;
+
+	public YieldingWaitStrategy() {
+		this(100);
+	}
+
+	public YieldingWaitStrategy(int spinTries) {
+		this.spinTries = spinTries;
+	}
+
+	@Override
+	public int idle(int idleCount) {
+		if (idleCount >= spinTries) {
+			Thread.yield();
+		}
+		return idleCount + 1;
+	}
+}
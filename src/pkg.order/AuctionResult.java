@@ -0,0 +1,49 @@
+package pkg.order;
+
+import pkg.util.PriceUtility;
+
+/**
+ * Outcome of uncrossing one symbol's book. The buy and sell indexes are the
+ * last orders, in priority order, that take part in the match; both are -1
+ * when the book does not cross.
+ */
+public class AuctionResult {
+	int buyIndex = -1;
+	int sellIndex = -1;
+	long priceTicks = -1;
+	int volume = -1;
+
+	void reset() {
+		buyIndex = -1;
+		sellIndex = -1;
+		priceTicks = -1;
+		volume = -1;
+	}
+
+	public int getBuyIndex() {
+		return buyIndex;
+	}
+
+	public int getSellIndex() {
+		return sellIndex;
+	}
+
+	/**
+	 * @return the clearing price, or -1.0 if the book does not cross
+	 */
+	public double getPrice() {
+		return priceTicks == -1 ? -1.0 : PriceUtility.toPrice(priceTicks);
+	}
+
+	public long getPriceTicks() {
+		return priceTicks;
+	}
+
+	public int getVolume() {
+		return volume;
+	}
+
+	public boolean isCrossed() {
+		return buyIndex != -1 && sellIndex != -1 && priceTicks != -1;
+	}
+}
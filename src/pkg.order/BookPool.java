@@ -0,0 +1,62 @@
+package pkg.order;
+
+import java.util.Arrays;
+
+/**
+ * Recycles the queue nodes and price levels of one {@link PriceLevelBook}.
+ * Once a book has seen its peak depth, adding, filling and cancelling orders
+ * reuse these objects instead of allocating new ones. Like the book itself
+ * it is only used by one thread at a time.
+ */
+class BookPool {
+	// free nodes are chained through their next field
+	private OrderNode freeNodes;
+	private PriceLevel[] freeLevels = new PriceLevel[16];
+	private int freeLevelCount;
+
+	OrderNode node(Order order) {
+		OrderNode node = freeNodes;
+		if (node == null) {
+			return new OrderNode(order);
+		}
+		freeNodes = node.next;
+		node.next = null;
+		node.order = order;
+		return node;
+	}
+
+	/**
+	 * Must only be called once the node is off its level and out of the ID
+	 * index.
+	 */
+	void release(OrderNode node) {
+		node.order = null;
+		node.id = 0;
+		node.level = null;
+		node.prev = null;
+		node.next = freeNodes;
+		freeNodes = node;
+	}
+
+	PriceLevel level(long ticks) {
+		if (freeLevelCount == 0) {
+			return new PriceLevel(ticks);
+		}
+		PriceLevel level = freeLevels[--freeLevelCount];
+		freeLevels[freeLevelCount] = null;
+		level.ticks = ticks;
+		return level;
+	}
+
+	/**
+	 * Must only be called on an empty level that is off the ladder.
+	 */
+	void release(PriceLevel level) {
+		if (freeLevelCount == freeLevels.length) {
+			freeLevels = Arrays.copyOf(freeLevels, freeLevelCount * 2);
+		}
+		level.quantity = 0;
+		level.orderCount = 0;
+		freeLevels[freeLevelCount++] = level;
+	}
+}
@@ -0,0 +1,109 @@
+package pkg.order;
+
+import java.util.ArrayList;
+
+import pkg.util.PriceUtility;
+
+/**
+ * One side (bids or asks) of a {@link PriceLevelBook}. Market orders, which
+ * carry a price of 0, queue ahead of every limit level; limit orders are kept
+ * on a price ladder ordered best price first so the side never needs sorting.
+ * Every change to a level is also pushed to the book's {@link MarketDepth}.
+ * Nodes and emptied levels go back to the book's {@link BookPool}.
+ */
+class BookSide {
+	PriceLevel marketLevel;
+	PriceLadder levels;
+	int orderCount;
+	boolean bids;
+	MarketDepth depth;
+	BookPool pool;
+
+	BookSide(boolean bids, MarketDepth depth, BookPool pool) {
+		this.bids = bids;
+		this.depth = depth;
+		this.pool = pool;
+		marketLevel = new PriceLevel(PriceUtility.MARKET_PRICE);
+		levels = new PriceLadder(bids);
+	}
+
+	OrderNode add(Order order) {
+		OrderNode node = pool.node(order);
+		long ticks = PriceUtility.toTicks(order.getPrice());
+		if (ticks == PriceUtility.MARKET_PRICE) {
+			marketLevel.append(node);
+		}
+		else {
+			PriceLevel level = levels.get(ticks);
+			if (level == null) {
+				level = pool.level(ticks);
+				levels.put(level);
+			}
+			level.append(node);
+		}
+		orderCount++;
+		depth.levelChanged(bids, node.level, levels);
+		return node;
+	}
+
+	/**
+	 * Take the node off its level. The caller releases the node to the pool
+	 * once it has finished with it.
+	 */
+	void remove(OrderNode node) {
+		PriceLevel level = node.level;
+		level.unlink(node);
+		boolean emptied = level != marketLevel && level.isEmpty();
+		if (emptied) {
+			levels.remove(level.ticks);
+		}
+		orderCount--;
+		depth.levelChanged(bids, level, levels);
+		if (emptied) {
+			pool.release(level);
+		}
+	}
+
+	void resize(OrderNode node, int newSize) {
+		node.level.resize(node, newSize);
+		depth.levelChanged(bids, node.level, levels);
+	}
+
+	OrderNode first() {
+		if (!marketLevel.isEmpty()) {
+			return marketLevel.head;
+		}
+		PriceLevel best = levels.best();
+		return best == null ? null : best.head;
+	}
+
+	/**
+	 * Next order in priority after {@code node}. Must be called before
+	 * {@code node} is removed, but stays valid if its level empties later.
+	 */
+	OrderNode next(OrderNode node) {
+		if (node.next != null) {
+			return node.next;
+		}
+		PriceLevel after;
+		if (node.level == marketLevel) {
+			after = levels.best();
+		}
+		else {
+			after = levels.worseThan(node.level.ticks);
+		}
+		return after == null ? null : after.head;
+	}
+
+	ArrayList<Order> toList() {
+		ArrayList<Order> list = new ArrayList<Order>(orderCount);
+		for (OrderNode node = first(); node != null; node = next(node)) {
+			list.add(node.order);
+		}
+		return list;
+	}
+
+	boolean isEmpty() {
+		return orderCount == 0;
+	}
+}
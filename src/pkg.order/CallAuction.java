@@ -0,0 +1,135 @@
+package pkg.order;
+
+import java.util.List;
+
+import pkg.util.PriceUtility;
+
+/**
+ * Finds the clearing price and matched volume of a call auction from the two
+ * sides of a book given in priority order.
+ *
+ * The cumulative demand and supply curves are built once and walked together:
+ * for every buy prefix the deepest sell prefix that is both covered in volume
+ * and priced at or below the buy is found with two pointers, and the best of
+ * those candidates is kept. This gives the same result as comparing every buy
+ * prefix with every sell prefix, in O(B + S) instead of O(B x S). Prices are
+ * compared as ticks, so equal prices compare exactly.
+ *
+ * The curves live in scratch arrays that only grow, and every call fills in
+ * the same {@link AuctionResult}, so an auction run straight off a
+ * {@link PriceLevelBook} allocates nothing once warmed up.
+ */
+public class CallAuction {
+	private static final int MAX_IMBALANCE = 10000000;
+
+	private long[] buyVolume = new long[16];
+	private long[] buyPrice = new long[16];
+	private long[] sellVolume = new long[16];
+	private long[] sellPrice = new long[16];
+	private final AuctionResult result = new AuctionResult();
+
+	/**
+	 * Uncross a book in place, walking both sides in priority order.
+	 * @return this auction's result, overwritten by the next call
+	 */
+	public AuctionResult uncross(PriceLevelBook book) {
+		int buyCount = book.bids.orderCount;
+		int sellCount = book.asks.orderCount;
+		ensureCapacity(buyCount, sellCount);
+
+		long cumulative = 0;
+		int i = 0;
+		for (OrderNode node = book.bids.first(); node != null; node = book.bids.next(node)) {
+			cumulative += node.order.getSize();
+			buyVolume[i] = cumulative;
+			buyPrice[i] = node.level.ticks;
+			i++;
+		}
+		cumulative = 0;
+		int j = 0;
+		for (OrderNode node = book.asks.first(); node != null; node = book.asks.next(node)) {
+			cumulative += node.order.getSize();
+			sellVolume[j] = cumulative;
+			sellPrice[j] = node.level.ticks;
+			j++;
+		}
+		return cross(buyCount, sellCount);
+	}
+
+	/**
+	 * @return this auction's result, overwritten by the next call
+	 */
+	public AuctionResult uncross(List<Order> buyList, List<Order> sellList) {
+		int buyCount = buyList.size();
+		int sellCount = sellList.size();
+		ensureCapacity(buyCount, sellCount);
+
+		long cumulative = 0;
+		for (int i = 0; i < buyCount; i++) {
+			cumulative += buyList.get(i).getSize();
+			buyVolume[i] = cumulative;
+			buyPrice[i] = PriceUtility.toTicks(buyList.get(i).getPrice());
+		}
+		cumulative = 0;
+		for (int j = 0; j < sellCount; j++) {
+			cumulative += sellList.get(j).getSize();
+			sellVolume[j] = cumulative;
+			sellPrice[j] = PriceUtility.toTicks(sellList.get(j).getPrice());
+		}
+		return cross(buyCount, sellCount);
+	}
+
+	private AuctionResult cross(int buyCount, int sellCount) {
+		result.reset();
+		long bestImbalance = MAX_IMBALANCE;
+		long bestSellVolume = -1;
+		// deepest sell prefix whose volume the current buy prefix covers
+		int byVolume = -1;
+		// deepest sell prefix priced at or below the current buy
+		int byPrice = sellCount - 1;
+
+		for (int i = 0; i < buyCount; i++) {
+			while (byVolume + 1 < sellCount && sellVolume[byVolume + 1] <= buyVolume[i]) {
+				byVolume++;
+			}
+			// prices only rise when leaving the market orders at the top
+			if (i > 0 && buyPrice[i] > buyPrice[i - 1]) {
+				byPrice = sellCount - 1;
+			}
+			while (byPrice >= 0 && sellPrice[byPrice] > buyPrice[i]) {
+				byPrice--;
+			}
+
+			int j = Math.min(byVolume, byPrice);
+			if (j < 0) {
+				continue;
+			}
+			// empty orders leave the curve flat; the first of them wins
+			while (j > 0 && sellVolume[j - 1] == sellVolume[j]) {
+				j--;
+			}
+			if (buyVolume[i] - sellVolume[j] <= bestImbalance && bestSellVolume < sellVolume[j]) {
+				bestImbalance = buyVolume[i] - sellVolume[j];
+				bestSellVolume = sellVolume[j];
+				result.buyIndex = i;
+				result.sellIndex = j;
+				result.priceTicks = sellPrice[j];
+				result.volume = (int) sellVolume[j];
+			}
+		}
+		return result;
+	}
+
+	private void ensureCapacity(int buyCount, int sellCount) {
+		if (buyVolume.length < buyCount) {
+			int size = Math.max(buyCount, buyVolume.length * 2);
+			buyVolume = new long[size];
+			buyPrice = new long[size];
+		}
+		if (sellVolume.length < sellCount) {
+			int size = Math.max(sellCount, sellVolume.length * 2);
+			sellVolume = new long[size];
+			sellPrice = new long[size];
+		}
+	}
+}
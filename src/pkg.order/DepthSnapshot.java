@@ -0,0 +1,116 @@
+package pkg.order;
+
+import pkg.util.PriceUtility;
+
+/**
+ * A caller-owned copy of a {@link MarketDepth}. Reuse one per poller to read
+ * depth without allocating. Level 0 is the best price on each side; market
+ * orders are reported separately since they have no price.
+ */
+public class DepthSnapshot {
+	String symbol;
+	final long[] bidTicks;
+	final long[] bidQuantities;
+	final int[] bidOrders;
+	int bidLevels;
+	final long[] askTicks;
+	final long[] askQuantities;
+	final int[] askOrders;
+	int askLevels;
+	long marketBuyQuantity;
+	long marketSellQuantity;
+	long version;
+
+	public DepthSnapshot() {
+		this(MarketDepth.DEFAULT_LEVELS);
+	}
+
+	public DepthSnapshot(int levels) {
+		bidTicks = new long[levels];
+		bidQuantities = new long[levels];
+		bidOrders = new int[levels];
+		askTicks = new long[levels];
+		askQuantities = new long[levels];
+		askOrders = new int[levels];
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public int getBidLevels() {
+		return bidLevels;
+	}
+
+	public double getBidPrice(int level) {
+		return PriceUtility.toPrice(bidTicks[level]);
+	}
+
+	public long getBidTicks(int level) {
+		return bidTicks[level];
+	}
+
+	public long getBidQuantity(int level) {
+		return bidQuantities[level];
+	}
+
+	public int getBidOrders(int level) {
+		return bidOrders[level];
+	}
+
+	public int getAskLevels() {
+		return askLevels;
+	}
+
+	public double getAskPrice(int level) {
+		return PriceUtility.toPrice(askTicks[level]);
+	}
+
+	public long getAskTicks(int level) {
+		return askTicks[level];
+	}
+
+	public long getAskQuantity(int level) {
+		return askQuantities[level];
+	}
+
+	public int getAskOrders(int level) {
+		return askOrders[level];
+	}
+
+	/**
+	 * @return highest limit bid, or NaN if there is none
+	 */
+	public double getBestBid() {
+		return bidLevels == 0 ? Double.NaN : getBidPrice(0);
+	}
+
+	/**
+	 * @return lowest limit ask, or NaN if there is none
+	 */
+	public double getBestAsk() {
+		return askLevels == 0 ? Double.NaN : getAskPrice(0);
+	}
+
+	/**
+	 * @return best ask minus best bid, or NaN if either side is empty
+	 */
+	public double getSpread() {
+		if (bidLevels == 0 || askLevels == 0) {
+			return Double.NaN;
+		}
+		return PriceUtility.toPrice(askTicks[0] - bidTicks[0]);
+	}
+
+	public long getMarketBuyQuantity() {
+		return marketBuyQuantity;
+	}
+
+	public long getMarketSellQuantity() {
+		return marketSellQuantity;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+}
@@ -0,0 +1,8 @@
+package pkg.order;
+
+/**
+ * Called for each resting order when walking a book.
+ */
+public interface IOrderVisitor {
+	public void visit(Order order, long orderId);
+}
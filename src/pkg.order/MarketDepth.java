@@ -0,0 +1,206 @@
+package pkg.order;
+
+import java.util.concurrent.locks.StampedLock;
+
+import pkg.util.PriceUtility;
+
+/**
+ * Aggregated (L2) view of the best price levels of one symbol's book: total
+ * quantity and order count per level, plus the quantity of resting market
+ * orders on each side. The book updates it as orders are added, filled,
+ * reduced and cancelled, touching only the level that changed.
+ *
+ * Readers copy it with {@link #snapshot(DepthSnapshot)} from any thread
+ * without blocking the writer: they take an optimistic stamp, copy the
+ * arrays and retry if the book changed in the meantime.
+ */
+public class MarketDepth {
+	public static final int DEFAULT_LEVELS = 10;
+	// after this many torn reads a reader takes the read lock
+	private static final int OPTIMISTIC_TRIES = 64;
+
+	private final StampedLock lock = new StampedLock();
+	private final String symbol;
+	final long[] bidTicks;
+	final long[] bidQuantities;
+	final int[] bidOrders;
+	int bidLevels;
+	final long[] askTicks;
+	final long[] askQuantities;
+	final int[] askOrders;
+	int askLevels;
+	long marketBuyQuantity;
+	long marketSellQuantity;
+	long version;
+
+	public MarketDepth(String symbol, int levels) {
+		this.symbol = symbol;
+		bidTicks = new long[levels];
+		bidQuantities = new long[levels];
+		bidOrders = new int[levels];
+		askTicks = new long[levels];
+		askQuantities = new long[levels];
+		askOrders = new int[levels];
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public int getCapacity() {
+		return bidTicks.length;
+	}
+
+	/**
+	 * Record the new state of one level. {@code ladder} must already reflect
+	 * the change; it is only read when a level drops out of the view and the
+	 * next one has to be pulled in.
+	 */
+	void levelChanged(boolean bid, PriceLevel level, PriceLadder ladder) {
+		long stamp = lock.writeLock();
+		try {
+			if (level.ticks == PriceUtility.MARKET_PRICE) {
+				if (bid) {
+					marketBuyQuantity = level.quantity;
+				}
+				else {
+					marketSellQuantity = level.quantity;
+				}
+			}
+			else if (bid) {
+				bidLevels = update(true, bidTicks, bidQuantities, bidOrders, bidLevels, level, ladder);
+			}
+			else {
+				askLevels = update(false, askTicks, askQuantities, askOrders, askLevels, level, ladder);
+			}
+			version++;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	private static int update(boolean bid, long[] prices, long[] quantities, int[] orders,
+			int count, PriceLevel level, PriceLadder ladder) {
+		long price = level.ticks;
+		int slot = 0;
+		while (slot < count && isBetter(bid, prices[slot], price)) {
+			slot++;
+		}
+		boolean present = slot < count && prices[slot] == price;
+
+		if (level.isEmpty()) {
+			if (!present) {
+				return count;
+			}
+			System.arraycopy(prices, slot + 1, prices, slot, count - slot - 1);
+			System.arraycopy(quantities, slot + 1, quantities, slot, count - slot - 1);
+			System.arraycopy(orders, slot + 1, orders, slot, count - slot - 1);
+			count--;
+			// refill the last slot from beyond the view
+			PriceLevel next = count == 0 ? ladder.best() : ladder.worseThan(prices[count - 1]);
+			if (next != null) {
+				prices[count] = next.ticks;
+				quantities[count] = next.quantity;
+				orders[count] = next.orderCount;
+				count++;
+			}
+			return count;
+		}
+		if (!present) {
+			if (slot == prices.length) {
+				return count;
+			}
+			int moved = Math.min(count, prices.length - 1) - slot;
+			System.arraycopy(prices, slot, prices, slot + 1, moved);
+			System.arraycopy(quantities, slot, quantities, slot + 1, moved);
+			System.arraycopy(orders, slot, orders, slot + 1, moved);
+			prices[slot] = price;
+			if (count < prices.length) {
+				count++;
+			}
+		}
+		quantities[slot] = level.quantity;
+		orders[slot] = level.orderCount;
+		return count;
+	}
+
+	private static boolean isBetter(boolean bid, long a, long b) {
+		return bid ? a > b : a < b;
+	}
+
+	void clear(boolean bid) {
+		long stamp = lock.writeLock();
+		try {
+			if (bid) {
+				bidLevels = 0;
+				marketBuyQuantity = 0;
+			}
+			else {
+				askLevels = 0;
+				marketSellQuantity = 0;
+			}
+			version++;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Copy a consistent view of both sides into {@code dest}, which must have
+	 * been created with at least {@link #getCapacity()} levels.
+	 */
+	public DepthSnapshot snapshot(DepthSnapshot dest) {
+		for (int i = 0; i < OPTIMISTIC_TRIES; i++) {
+			long stamp = lock.tryOptimisticRead();
+			if (stamp != 0) {
+				copyTo(dest);
+				if (lock.validate(stamp)) {
+					return dest;
+				}
+			}
+		}
+		long stamp = lock.readLock();
+		try {
+			copyTo(dest);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+		return dest;
+	}
+
+	private void copyTo(DepthSnapshot dest) {
+		// counts are clamped so a torn read cannot overrun the arrays
+		int bids = Math.min(bidLevels, dest.bidTicks.length);
+		int asks = Math.min(askLevels, dest.askTicks.length);
+		System.arraycopy(bidTicks, 0, dest.bidTicks, 0, bids);
+		System.arraycopy(bidQuantities, 0, dest.bidQuantities, 0, bids);
+		System.arraycopy(bidOrders, 0, dest.bidOrders, 0, bids);
+		System.arraycopy(askTicks, 0, dest.askTicks, 0, asks);
+		System.arraycopy(askQuantities, 0, dest.askQuantities, 0, asks);
+		System.arraycopy(askOrders, 0, dest.askOrders, 0, asks);
+		dest.symbol = symbol;
+		dest.bidLevels = bids;
+		dest.askLevels = asks;
+		dest.marketBuyQuantity = marketBuyQuantity;
+		dest.marketSellQuantity = marketSellQuantity;
+		dest.version = version;
+	}
+
+	/**
+	 * @return a counter bumped on every change, so pollers can skip copying
+	 *         a book that has not moved
+	 */
+	public long getVersion() {
+		long stamp = lock.tryOptimisticRead();
+		long v = version;
+		if (!lock.validate(stamp)) {
+			stamp = lock.readLock();
+			try {
+				v = version;
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		return v;
+	}
+}
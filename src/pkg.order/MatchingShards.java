@@ -0,0 +1,102 @@
+package pkg.order;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Splits an {@link OrderBook}'s symbols across a fixed set of worker threads.
+ * Every symbol is pinned to one shard and each shard is served by a single
+ * thread, so a symbol's book is only ever matched by its owning thread and
+ * needs no locking. A match cycle runs all shards at once and returns when
+ * the last one has finished.
+ */
+public class MatchingShards {
+	OrderBook orderBook;
+	ExecutorService[] workers;
+	ArrayList<ArrayList<PriceLevelBook>> shardBooks;
+	ArrayList<Callable<Void>> cycles;
+
+	public MatchingShards(OrderBook orderBook, int shardCount) {
+		if (shardCount < 1) {
+			throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+		}
+		this.orderBook = orderBook;
+		workers = new ExecutorService[shardCount];
+		shardBooks = new ArrayList<ArrayList<PriceLevelBook>>(shardCount);
+		cycles = new ArrayList<Callable<Void>>(shardCount);
+		for (int i = 0; i < shardCount; i++) {
+			final int shard = i;
+			workers[i] = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "matching-shard-" + shard);
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			final ArrayList<PriceLevelBook> books = new ArrayList<PriceLevelBook>();
+			final CallAuction auction = new CallAuction();
+			shardBooks.add(books);
+			cycles.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int b = 0; b < books.size(); b++) {
+						MatchingShards.this.orderBook.match(books.get(b), auction);
+					}
+					return null;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Symbol IDs are dense, so consecutive symbols go to consecutive shards.
+	 */
+	public int shardOf(int symbolId) {
+		return symbolId % workers.length;
+	}
+
+	/**
+	 * Pin a book to its shard. Must not be called while a cycle is running.
+	 */
+	void assign(PriceLevelBook book) {
+		shardBooks.get(shardOf(book.getSymbolId())).add(book);
+	}
+
+	/**
+	 * Match every shard in parallel and wait for all of them to finish.
+	 */
+	public void trade() {
+		ArrayList<Future<Void>> pending = new ArrayList<Future<Void>>(workers.length);
+		for (int i = 0; i < workers.length; i++) {
+			if (!shardBooks.get(i).isEmpty()) {
+				pending.add(workers[i].submit(cycles.get(i)));
+			}
+		}
+		for (Future<Void> f : pending) {
+			try {
+				f.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException e) {
+				e.getCause().printStackTrace();
+			}
+		}
+	}
+
+	public int getShardCount() {
+		return workers.length;
+	}
+
+	public void shutdown() {
+		for (ExecutorService worker : workers) {
+			worker.shutdown();
+		}
+	}
+}
@@ -1,201 +1,331 @@
 package pkg.order;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.Comparator;
-import java.util.Collections;
 import java.util.Map.Entry;
 
 import pkg.exception.StockMarketExpection;
 import pkg.market.Market;
-import pkg.market.api.PriceSetter;
+import pkg.market.MarketMetrics;
+import pkg.market.SymbolRegistry;
 
 public class OrderBook {
 	Market m;
-	HashMap<String, ArrayList<Order>> buyOrders;
+	// by symbol ID, null for symbols without orders yet; copied when a book
+	// is added, so depth can be looked up while orders are being added
+	volatile PriceLevelBook[] books = new PriceLevelBook[0];
+	CallAuction auction;
+	MatchingShards shards;
+
+	/**
+	 * @return a copy of the resting buy orders per symbol, best first
+	 */
 	public HashMap<String, ArrayList<Order>> getBuyOrders() {
+		HashMap<String, ArrayList<Order>> buyOrders = new HashMap<String, ArrayList<Order>>();
+		for (PriceLevelBook book : getBooks()) {
+			if (book.getBuyCount() > 0) {
+				buyOrders.put(book.getSymbol(), book.getBuyOrders());
+			}
+		}
 		return buyOrders;
 	}
 
 	public void setBuyOrders(HashMap<String, ArrayList<Order>> buyOrders) {
-		this.buyOrders = buyOrders;
+		for (PriceLevelBook book : getBooks()) {
+			book.clearBids();
+		}
+		addAll(buyOrders);
 	}
 
+	/**
+	 * @return a copy of the resting sell orders per symbol, best first
+	 */
 	public HashMap<String, ArrayList<Order>> getSellOrders() {
+		HashMap<String, ArrayList<Order>> sellOrders = new HashMap<String, ArrayList<Order>>();
+		for (PriceLevelBook book : getBooks()) {
+			if (book.getSellCount() > 0) {
+				sellOrders.put(book.getSymbol(), book.getSellOrders());
+			}
+		}
 		return sellOrders;
 	}
 
 	public void setSellOrders(HashMap<String, ArrayList<Order>> sellOrders) {
-		this.sellOrders = sellOrders;
+		for (PriceLevelBook book : getBooks()) {
+			book.clearAsks();
+		}
+		addAll(sellOrders);
 	}
-	HashMap<String, ArrayList<Order>> sellOrders;
 
 	public OrderBook(Market m) {
 		this.m = m;
-		buyOrders = new HashMap<String, ArrayList<Order>>();
-		sellOrders = new HashMap<String, ArrayList<Order>>();
+		auction = new CallAuction();
 	}
 
 	/**
-	 * Populate the buyOrders and sellOrders data structures, whichever is appropriate                           (1)
-	 * And even more explanations to follow in consecutive
+	 * Queue the order on its symbol's book at its price level, behind any
+	 * order already resting at the same price.
 	 * @param  Order to be added.
 	 */
 	public void addToOrderBook(Order order) {
-		if (order instanceof BuyOrder) {
-			addBuyOrderToOrderBook(order);
+		addToOrderBook(order, m.nextOrderId());
+	}
+
+	/**
+	 * @return the symbol's book the order now rests on
+	 */
+	public PriceLevelBook addToOrderBook(Order order, long orderId) {
+		PriceLevelBook book = bookFor(order.getStockSymbol());
+		book.add(order, orderId);
+		book.metrics.orderAdded();
+		return book;
+	}
+
+	/**
+	 * @return the cancelled order, or null if it already traded or is unknown
+	 */
+	public Order cancel(String symbol, long orderId) {
+		PriceLevelBook book = getBookFor(symbol);
+		if (book == null) {
+			return null;
 		}
-		else {
-			addSellOrderToOrderBook(order);
+		Order order = book.cancel(orderId);
+		if (order != null) {
+			book.metrics.orderCancelled();
 		}
+		return order;
+	}
+
+	/**
+	 * Lower the size of a resting order without losing its queue position.
+	 */
+	public boolean reduce(String symbol, long orderId, int newSize) {
+		PriceLevelBook book = getBookFor(symbol);
+		return book != null && book.reduce(orderId, newSize);
+	}
+
+	/**
+	 * Replace a resting order under the same ID; the replacement is queued
+	 * behind orders already at its price.
+	 * @return the replaced order, or null if it already traded or is unknown
+	 */
+	public Order replace(long orderId, Order replacement) {
+		PriceLevelBook book = getBookFor(replacement.getStockSymbol());
+		return book == null ? null : book.replace(orderId, replacement);
+	}
+
+	public PriceLevelBook getBookFor(String symbol) {
+		return getBook(m.getSymbols().idOf(symbol));
+	}
+
+	/**
+	 * @return the book for the symbol ID, or null if it never had an order
+	 */
+	public PriceLevelBook getBook(int symbolId) {
+		PriceLevelBook[] all = books;
+		return symbolId >= 0 && symbolId < all.length ? all[symbolId] : null;
 	}
 
-	private void addSellOrderToOrderBook(Order order) {
-		if (sellOrders.containsKey(order.getStockSymbol())) {
-			sellOrders.get(order.getStockSymbol()).add(order);
+	/**
+	 * @return every symbol's book in symbol ID order; safe to call from any
+	 *         thread
+	 */
+	public Collection<PriceLevelBook> getBooks() {
+		PriceLevelBook[] all = books;
+		ArrayList<PriceLevelBook> list = new ArrayList<PriceLevelBook>(all.length);
+		for (PriceLevelBook book : all) {
+			if (book != null) {
+				list.add(book);
+			}
 		}
-		else {
-			ArrayList<Order> list = new ArrayList<Order>();
-			list.add(order);
-			sellOrders.put(order.getStockSymbol(), list);
+		return list;
+	}
+
+	/**
+	 * Walk every resting order, book by book. Must not run during a match
+	 * cycle.
+	 */
+	public void visitOrders(IOrderVisitor visitor) {
+		PriceLevelBook[] all = books;
+		for (int i = 0; i < all.length; i++) {
+			if (all[i] != null) {
+				all[i].visit(visitor);
+			}
 		}
 	}
 
-	private void addBuyOrderToOrderBook(Order order) {
-		if (buyOrders.containsKey(order.getStockSymbol())) {
-			buyOrders.get(order.getStockSymbol()).add(order);
+	/**
+	 * @return the symbol's depth view, or null if no order was ever queued
+	 *         for it
+	 */
+	public MarketDepth getDepthFor(String symbol) {
+		PriceLevelBook book = getBookFor(symbol);
+		return book == null ? null : book.getDepth();
+	}
+
+	private PriceLevelBook bookFor(String symbol) {
+		int id = m.getSymbols().register(symbol);
+		PriceLevelBook book = getBook(id);
+		if (book == null) {
+			book = new PriceLevelBook(id, symbol);
+			books = SymbolRegistry.withSlot(books, id, book);
+			if (shards != null) {
+				shards.assign(book);
+			}
+			m.getMetrics().symbolAdded(book.metrics);
+		}
+		return book;
+	}
+
+	private void addAll(HashMap<String, ArrayList<Order>> orders) {
+		for (Entry<String, ArrayList<Order>> entry : orders.entrySet()) {
+			for (Order order : entry.getValue()) {
+				addToOrderBook(order);
+			}
+		}
+	}
+
+	/**
+	 * Spread matching over {@code shardCount} worker threads, each owning a
+	 * fixed subset of the symbols. Must not be called while trading.
+	 */
+	public void enableSharding(int shardCount) {
+		if (shards != null) {
+			shards.shutdown();
 		}
-		else {
-			ArrayList<Order> list = new ArrayList<Order>();
-			list.add(order);
-			buyOrders.put(order.getStockSymbol(), list);
+		shards = new MatchingShards(this, shardCount);
+		for (PriceLevelBook book : getBooks()) {
+			shards.assign(book);
 		}
 	}
 
+	public MatchingShards getShards() {
+		return shards;
+	}
+
 	public void trade() {
-		
-		for(Entry<String, ArrayList<Order>> buyList : buyOrders.entrySet()) {
-			for ( Entry<String, ArrayList<Order>> sellList : sellOrders.entrySet()) {
-				if (buyList.getKey() == sellList.getKey()) {
-					ArrayList<Order> buySorted = sortBuyOrder(buyList.getValue());
-					ArrayList<Order> sellSorted = sellOrderSort(sellList.getValue());
-					
-					int buyNum = 0;
-					int sellNum = 0;
-					double price = 0.0;
-					int sellVolume = 0;
-					
-					ArrayList<Double> values = findMarketPrice(buySorted, sellSorted);
-					
-					buyNum = values.get(0).intValue();
-					sellNum = values.get(1).intValue();
-					price = values.get(2);
-					sellVolume = values.get(3).intValue();
-					
-					if (buyNum != -1 && sellNum != -1 && price != -1.0){
-						PriceSetter set = new PriceSetter();
-        				set.registerObserver(m.getMarketHistory());
-        				m.getMarketHistory().setSubject(set);
-        				set.setNewPrice(m, (String)buyList.getKey(), price);
-        				
-        				for (int i = 0; i <= buyNum; i++) {
-        					Order order1 = buySorted.get(i);
-        					if (order1.getSize() <= sellVolume) {
-        						buyOrders.get(order1.getStockSymbol()).remove(order1);
-        						sellVolume -= order1.getSize();
-        					} else {
-        						order1.setSize(order1.getSize() - sellVolume);
-        					}
-        					
-        					try {
-								order1.getTrader().tradePerformed(order1, price);
-							} catch (StockMarketExpection e) {
-								e.printStackTrace();
-							}
-        				}
-        				
-        				for (int i = 0; i <= sellNum; i++) {
-        					Order order2 = sellSorted.get(i);
-        					sellOrders.get(order2.getStockSymbol()).remove(order2);
-        					try {
-								order2.getTrader().tradePerformed(order2, price);
-							} catch (StockMarketExpection e) {
-								e.printStackTrace();
-							}
-        				}
-					}
-				}
+		if (shards != null) {
+			shards.trade();
+			return;
+		}
+		PriceLevelBook[] all = books;
+		for (int i = 0; i < all.length; i++) {
+			if (all[i] != null) {
+				match(all[i], auction);
 			}
 		}
 	}
-	
-	private ArrayList<Double> findMarketPrice(ArrayList<Order> buyList, ArrayList<Order> sellList) {
-		ArrayList<Double> values = new ArrayList<Double>();
-		int buyVolume = 0;
-		int sellVolume = 0;
-		int finalBuyVolume = 10000000;
-		int finalSellVolume = 0;
-		int totalSellVolume = -1;
-		int buyNumber = -1, sellNumber = -1;
-		double price = -1.0;
-		
-		for (int i = 0; i < buyList.size(); i++){
-			buyVolume += buyList.get(i).getSize();
-			sellVolume = 0;
-			for (int j = 0; j < sellList.size(); j++) {
-				sellVolume += sellList.get(j).getSize();
-				if (buyVolume >= sellVolume) {
-					if ((buyVolume - sellVolume) <= (finalBuyVolume - finalSellVolume) && totalSellVolume < sellVolume && buyList.get(i).getPrice() >= sellList.get(j).getPrice()) {
-						buyNumber = i;
-						sellNumber = j;
-						finalBuyVolume = buyVolume;
-						finalSellVolume = sellVolume;
-						price = sellList.get(sellNumber).getPrice();
-						totalSellVolume = sellVolume;
+
+	/**
+	 * Run an auction on one symbol's book only, on the calling thread, even
+	 * with sharded matching. Must not overlap a full {@link #trade()}.
+	 */
+	public void trade(int symbolId) {
+		PriceLevelBook book = getBook(symbolId);
+		if (book != null) {
+			match(book, auction);
+		}
+	}
+
+	/**
+	 * Run one auction on a single symbol's book. Safe to call concurrently
+	 * for different books as long as each caller brings its own auction.
+	 * Works on the book in place and, once the book's pool and the auction's
+	 * buffers are warm, allocates nothing.
+	 */
+	void match(PriceLevelBook book, CallAuction auction) {
+		if (book.bids.isEmpty() || book.asks.isEmpty()) {
+			return;
+		}
+		MarketMetrics metrics = m.getMetrics();
+		boolean timed = metrics.isTiming();
+		long start = timed ? System.nanoTime() : 0;
+		AuctionResult result = auction.uncross(book);
+		if (timed) {
+			metrics.getAuctionLatency().recordSince(start);
+		}
+		int buyNum = result.getBuyIndex();
+		int sellNum = result.getSellIndex();
+		double price = result.getPrice();
+		int sellVolume = result.getVolume();
+
+		if (result.isCrossed()) {
+			// a buyer who cannot pay for a fill keeps the order resting and
+			// takes nothing from the sells
+			int bought = 0;
+			OrderNode node = book.bids.first();
+			for (int i = 0; i <= buyNum && sellVolume > 0; i++) {
+				OrderNode next = book.bids.next(node);
+				Order order1 = node.order;
+				int filled = Math.min(order1.getSize(), sellVolume);
+				// the trader sees the order's size from before this fill, and
+				// has settled it by the time listeners hear of it
+				if (settle(book, order1, node.id, filled, price, metrics)) {
+					sellVolume -= filled;
+					bought += filled;
+					m.recordFill(order1, node.id, filled, price);
+					if (filled == order1.getSize()) {
+						book.remove(node);
+					} else {
+						book.bids.resize(node, order1.getSize() - filled);
 					}
 				}
+				node = next;
 			}
-		}
-		values.add((double) buyNumber);
-		values.add((double) sellNumber);
-		values.add(price);
-		values.add((double) totalSellVolume);
-		return values;
-	}
-	
-	private ArrayList<Order> sortBuyOrder(ArrayList<Order> buyOrders){
-		ArrayList<Order> sorted = new ArrayList<Order>();
-		ArrayList<Order> unsorted = (ArrayList<Order>) buyOrders.clone();
-		
-		for (int i = 0; i < buyOrders.size(); i++){
-			if(buyOrders.get(i).getPrice() == 0){
-				sorted.add(buyOrders.get(i));
-				unsorted.remove(i);
+			if (bought == 0) {
+				return;
 			}
-		}
-		
-		Collections.sort(unsorted, new Comparator<Order>() {
-			@Override
-			public int compare(Order o1, Order o2){
-				return Double.compare(o2.getPrice(), o1.getPrice());
-			}
-		});
-		
-
-		sorted.addAll(unsorted);
-		
-		return sorted;
-	}
-	private ArrayList<Order> sellOrderSort(ArrayList<Order> buyOrders){
-		ArrayList<Order> sorted = (ArrayList<Order>) buyOrders.clone();
-		Collections.sort(sorted, new Comparator<Order>() {
-			@Override
-			public int compare(Order o1, Order o2){
-				return Double.compare(o1.getPrice(), o2.getPrice());
+			book.metrics.auctionCrossed();
+			publishPrice(book, price, bought);
+
+			// only what was bought is sold, so the last sell may be left
+			// partly filled
+			for (int i = 0; i <= sellNum && bought > 0; i++) {
+				OrderNode first = book.asks.first();
+				Order order2 = first.order;
+				int sold = Math.min(order2.getSize(), bought);
+				bought -= sold;
+				if (settle(book, order2, first.id, sold, price, metrics)) {
+					m.recordFill(order2, first.id, sold, price);
+				}
+				if (sold == order2.getSize()) {
+					book.remove(first);
+				} else {
+					book.asks.resize(first, order2.getSize() - sold);
+				}
 			}
-		});
-	
-		return sorted;
+		}
+	}
+
+	/**
+	 * @return false if the trader refused the fill
+	 */
+	private boolean settle(PriceLevelBook book, Order order, long orderId, int filled, double price,
+			MarketMetrics metrics) {
+		boolean timed = metrics.isTimed(orderId);
+		long start = timed ? System.nanoTime() : 0;
+		boolean settled = order.getTrader().applyFill(order, filled, price);
+		if (timed) {
+			metrics.getSettleLatency().recordSince(start);
+		}
+		book.metrics.filled(filled);
+		if (!settled) {
+			book.metrics.fillFailed();
+		}
+		return settled;
 	}
 
-}
\ No newline at end of file
+	private void publishPrice(PriceLevelBook book, double price, int volume) {
+		// The stock list and the cycle's batch are shared by all shards
+		synchronized (m) {
+			try {
+				m.updateStockPrice(book.symbolId, book.symbol, price);
+			} catch (StockMarketExpection e) {
+				e.printStackTrace();
+				return;
+			}
+			m.getMarketData().record(book.symbolId, book.symbol, price, volume);
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package pkg.order;
+
+/**
+ * Link in a {@link PriceLevel} queue. Holds the resting order together with
+ * the level it currently sits on so it can be unlinked without a search.
+ */
+class OrderNode {
+	Order order;
+	long id;
+	PriceLevel level;
+	OrderNode prev;
+	OrderNode next;
+
+	OrderNode(Order order) {
+		this.order = order;
+	}
+}
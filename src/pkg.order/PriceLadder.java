@@ -0,0 +1,104 @@
+package pkg.order;
+
+import java.util.Arrays;
+
+/**
+ * The limit price levels of one book side, keyed by price in ticks and kept
+ * in a sorted primitive array. The best level sits at the end, so the
+ * inserts and removals matching does near the top of the book shift few
+ * entries, and walking from best to worse is a descending index.
+ */
+class PriceLadder {
+	// bids sort by ticks and asks by negated ticks, so ascending keys always
+	// run from worst to best
+	private final boolean bids;
+	private long[] keys = new long[16];
+	private PriceLevel[] levels = new PriceLevel[16];
+	private int size;
+
+	PriceLadder(boolean bids) {
+		this.bids = bids;
+	}
+
+	private long key(long ticks) {
+		return bids ? ticks : -ticks;
+	}
+
+	/**
+	 * @return index of the level, or -(insertion point) - 1
+	 */
+	private int search(long ticks) {
+		long key = key(ticks);
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (keys[mid] < key) {
+				low = mid + 1;
+			}
+			else if (keys[mid] > key) {
+				high = mid - 1;
+			}
+			else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	PriceLevel get(long ticks) {
+		int index = search(ticks);
+		return index < 0 ? null : levels[index];
+	}
+
+	void put(PriceLevel level) {
+		int index = search(level.ticks);
+		if (index >= 0) {
+			levels[index] = level;
+			return;
+		}
+		index = -(index + 1);
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			levels = Arrays.copyOf(levels, size * 2);
+		}
+		System.arraycopy(keys, index, keys, index + 1, size - index);
+		System.arraycopy(levels, index, levels, index + 1, size - index);
+		keys[index] = key(level.ticks);
+		levels[index] = level;
+		size++;
+	}
+
+	void remove(long ticks) {
+		int index = search(ticks);
+		if (index < 0) {
+			return;
+		}
+		System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+		System.arraycopy(levels, index + 1, levels, index, size - index - 1);
+		size--;
+		levels[size] = null;
+	}
+
+	/**
+	 * @return the best level, or null if the ladder is empty
+	 */
+	PriceLevel best() {
+		return size == 0 ? null : levels[size - 1];
+	}
+
+	/**
+	 * @return the next level worse than {@code ticks}, which need not be on
+	 *         the ladder any more, or null
+	 */
+	PriceLevel worseThan(long ticks) {
+		int index = search(ticks);
+		// an absent price's insertion point is the first better level
+		int worse = index >= 0 ? index - 1 : -(index + 1) - 1;
+		return worse < 0 ? null : levels[worse];
+	}
+
+	int size() {
+		return size;
+	}
+}
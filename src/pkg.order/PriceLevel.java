@@ -0,0 +1,63 @@
+package pkg.order;
+
+/**
+ * All resting orders on one side of a book at a single price, in arrival
+ * order. Orders are chained through {@link OrderNode} so appending at the tail
+ * and unlinking any node are constant time.
+ */
+class PriceLevel {
+	// price in ticks, 0 for the market order level
+	long ticks;
+	OrderNode head;
+	OrderNode tail;
+	int orderCount;
+	long quantity;
+
+	PriceLevel(long ticks) {
+		this.ticks = ticks;
+	}
+
+	void append(OrderNode node) {
+		node.level = this;
+		node.prev = tail;
+		node.next = null;
+		if (tail == null) {
+			head = node;
+		}
+		else {
+			tail.next = node;
+		}
+		tail = node;
+		orderCount++;
+		quantity += node.order.getSize();
+	}
+
+	void unlink(OrderNode node) {
+		if (node.prev == null) {
+			head = node.next;
+		}
+		else {
+			node.prev.next = node.next;
+		}
+		if (node.next == null) {
+			tail = node.prev;
+		}
+		else {
+			node.next.prev = node.prev;
+		}
+		orderCount--;
+		quantity -= node.order.getSize();
+		node.prev = null;
+		node.next = null;
+		node.level = null;
+	}
+
+	void resize(OrderNode node, int newSize) {
+		quantity += newSize - node.order.getSize();
+		node.order.setSize(newSize);
+	}
+
+	boolean isEmpty() {
+		return head == null;
+	}
+}
@@ -0,0 +1,213 @@
+package pkg.order;
+
+import java.util.ArrayList;
+
+import pkg.util.LongObjectMap;
+import pkg.util.PriceUtility;
+
+/**
+ * Bid and ask ladders for a single symbol with price-time priority. Best
+ * price comes first on each side and orders at the same price keep their
+ * arrival order, so matching can walk the book without re-sorting it.
+ * Resting orders are also indexed by order ID for constant time cancels and
+ * amends, and the best levels are kept aggregated in a {@link MarketDepth}.
+ */
+public class PriceLevelBook {
+	// ID in the market's SymbolRegistry, or -1 for a book on its own
+	final int symbolId;
+	String symbol;
+	BookSide bids;
+	BookSide asks;
+	LongObjectMap<OrderNode> ordersById;
+	MarketDepth depth;
+	BookPool pool;
+	SymbolMetrics metrics;
+
+	public PriceLevelBook(String symbol) {
+		this(-1, symbol, MarketDepth.DEFAULT_LEVELS);
+	}
+
+	public PriceLevelBook(int symbolId, String symbol) {
+		this(symbolId, symbol, MarketDepth.DEFAULT_LEVELS);
+	}
+
+	/**
+	 * @param depthLevels number of price levels per side kept in the depth view
+	 */
+	public PriceLevelBook(int symbolId, String symbol, int depthLevels) {
+		this.symbolId = symbolId;
+		this.symbol = symbol;
+		depth = new MarketDepth(symbol, depthLevels);
+		pool = new BookPool();
+		bids = new BookSide(true, depth, pool);
+		asks = new BookSide(false, depth, pool);
+		ordersById = new LongObjectMap<OrderNode>();
+		metrics = new SymbolMetrics(this);
+	}
+
+	public void add(Order order, long id) {
+		OrderNode node = sideOf(order).add(order);
+		node.id = id;
+		ordersById.put(id, node);
+	}
+
+	/**
+	 * @return the resting order with this ID, or null
+	 */
+	public Order getOrder(long id) {
+		OrderNode node = ordersById.get(id);
+		return node == null ? null : node.order;
+	}
+
+	/**
+	 * Walk the resting orders in priority order, bids first, so adding them
+	 * to an empty book in the same order rebuilds this one.
+	 */
+	public void visit(IOrderVisitor visitor) {
+		for (OrderNode node = bids.first(); node != null; node = bids.next(node)) {
+			visitor.visit(node.order, node.id);
+		}
+		for (OrderNode node = asks.first(); node != null; node = asks.next(node)) {
+			visitor.visit(node.order, node.id);
+		}
+	}
+
+	/**
+	 * @return whether the order, resting or not, meets the best price on the
+	 *         other side of the book, as {@link CallAuction} prices it
+	 */
+	public boolean crosses(Order order) {
+		long ticks = PriceUtility.toTicks(order.getPrice());
+		if (order instanceof BuyOrder) {
+			if (asks.isEmpty()) {
+				return false;
+			}
+			if (ticks == PriceUtility.MARKET_PRICE) {
+				// a market buy is priced below every limit, so it only clears
+				// against a limit ask together with a limit bid behind it
+				PriceLevel bid = bids.levels.best();
+				ticks = bid == null ? PriceUtility.MARKET_PRICE : bid.ticks;
+			}
+			return !asks.marketLevel.isEmpty() || ticks >= asks.levels.best().ticks;
+		}
+		if (bids.isEmpty()) {
+			return false;
+		}
+		PriceLevel bid = bids.levels.best();
+		return ticks <= (bid == null ? PriceUtility.MARKET_PRICE : bid.ticks);
+	}
+
+	private BookSide sideOf(Order order) {
+		return order instanceof BuyOrder ? bids : asks;
+	}
+
+	/**
+	 * Remove a resting order and recycle its node, which must not be used
+	 * afterwards.
+	 */
+	void remove(OrderNode node) {
+		ordersById.remove(node.id);
+		sideOf(node.order).remove(node);
+		pool.release(node);
+	}
+
+	/**
+	 * @return the cancelled order, or null if it is no longer resting
+	 */
+	public Order cancel(long id) {
+		OrderNode node = ordersById.get(id);
+		if (node == null) {
+			return null;
+		}
+		Order order = node.order;
+		remove(node);
+		return order;
+	}
+
+	/**
+	 * Shrink a resting order in place. It keeps its place in the queue.
+	 * @return false if the order is gone or would not get smaller
+	 */
+	public boolean reduce(long id, int newSize) {
+		OrderNode node = ordersById.get(id);
+		if (node == null || newSize <= 0 || newSize >= node.order.getSize()) {
+			return false;
+		}
+		sideOf(node.order).resize(node, newSize);
+		return true;
+	}
+
+	/**
+	 * Swap a resting order for a new one under the same ID. The replacement
+	 * joins the back of the queue at its own price.
+	 * @return the replaced order, or null if it is no longer resting
+	 */
+	public Order replace(long id, Order replacement) {
+		Order old = cancel(id);
+		if (old != null) {
+			add(replacement, id);
+		}
+		return old;
+	}
+
+	void clearBids() {
+		for (OrderNode node = bids.first(); node != null; node = bids.next(node)) {
+			ordersById.remove(node.id);
+		}
+		bids = new BookSide(true, depth, pool);
+		depth.clear(true);
+	}
+
+	void clearAsks() {
+		for (OrderNode node = asks.first(); node != null; node = asks.next(node)) {
+			ordersById.remove(node.id);
+		}
+		asks = new BookSide(false, depth, pool);
+		depth.clear(false);
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public int getSymbolId() {
+		return symbolId;
+	}
+
+	public SymbolMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return the live depth view; safe to snapshot from any thread
+	 */
+	public MarketDepth getDepth() {
+		return depth;
+	}
+
+	/**
+	 * @return resting buy orders, market orders first then highest price
+	 */
+	public ArrayList<Order> getBuyOrders() {
+		return bids.toList();
+	}
+
+	/**
+	 * @return resting sell orders, market orders first then lowest price
+	 */
+	public ArrayList<Order> getSellOrders() {
+		return asks.toList();
+	}
+
+	public int getBuyCount() {
+		return bids.orderCount;
+	}
+
+	public int getSellCount() {
+		return asks.orderCount;
+	}
+
+	public boolean isEmpty() {
+		return bids.isEmpty() && asks.isEmpty();
+	}
+}
@@ -0,0 +1,126 @@
+package pkg.order;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Running counts for one symbol's book, plus its current depth. Each count
+ * has a single writer: orders are added and cancelled by the thread entering
+ * orders into the book, and fills are applied by the thread matching it, so
+ * a count is bumped with an ordered store instead of an atomic add. Any
+ * thread may read them.
+ */
+public class SymbolMetrics implements SymbolMetricsMBean {
+	private static final AtomicLongFieldUpdater<SymbolMetrics> ORDERS_ADDED = AtomicLongFieldUpdater
+			.newUpdater(SymbolMetrics.class, "ordersAdded");
+	private static final AtomicLongFieldUpdater<SymbolMetrics> ORDERS_CANCELLED = AtomicLongFieldUpdater
+			.newUpdater(SymbolMetrics.class, "ordersCancelled");
+	private static final AtomicLongFieldUpdater<SymbolMetrics> AUCTIONS = AtomicLongFieldUpdater
+			.newUpdater(SymbolMetrics.class, "auctions");
+	private static final AtomicLongFieldUpdater<SymbolMetrics> FILLS = AtomicLongFieldUpdater
+			.newUpdater(SymbolMetrics.class, "fills");
+	private static final AtomicLongFieldUpdater<SymbolMetrics> FAILED_FILLS = AtomicLongFieldUpdater
+			.newUpdater(SymbolMetrics.class, "failedFills");
+	private static final AtomicLongFieldUpdater<SymbolMetrics> VOLUME = AtomicLongFieldUpdater
+			.newUpdater(SymbolMetrics.class, "volume");
+
+	private final PriceLevelBook book;
+	private volatile long ordersAdded;
+	private volatile long ordersCancelled;
+	private volatile long auctions;
+	private volatile long fills;
+	private volatile long failedFills;
+	private volatile long volume;
+
+	SymbolMetrics(PriceLevelBook book) {
+		this.book = book;
+	}
+
+	void orderAdded() {
+		ORDERS_ADDED.lazySet(this, ordersAdded + 1);
+	}
+
+	void orderCancelled() {
+		ORDERS_CANCELLED.lazySet(this, ordersCancelled + 1);
+	}
+
+	void auctionCrossed() {
+		AUCTIONS.lazySet(this, auctions + 1);
+	}
+
+	void filled(int shares) {
+		FILLS.lazySet(this, fills + 1);
+		VOLUME.lazySet(this, volume + shares);
+	}
+
+	/**
+	 * The trader could not settle a fill, e.g. a sell of more shares than
+	 * they held.
+	 */
+	void fillFailed() {
+		FAILED_FILLS.lazySet(this, failedFills + 1);
+	}
+
+	@Override
+	public String getSymbol() {
+		return book.getSymbol();
+	}
+
+	@Override
+	public long getOrdersAdded() {
+		return ordersAdded;
+	}
+
+	@Override
+	public long getOrdersCancelled() {
+		return ordersCancelled;
+	}
+
+	/**
+	 * @return auctions that crossed and traded
+	 */
+	@Override
+	public long getAuctions() {
+		return auctions;
+	}
+
+	@Override
+	public long getFills() {
+		return fills;
+	}
+
+	@Override
+	public long getFailedFills() {
+		return failedFills;
+	}
+
+	/**
+	 * @return shares filled, counting both sides of each trade
+	 */
+	@Override
+	public long getVolume() {
+		return volume;
+	}
+
+	/**
+	 * @return buy orders resting now
+	 */
+	@Override
+	public int getBidOrders() {
+		return book.getBuyCount();
+	}
+
+	/**
+	 * @return sell orders resting now
+	 */
+	@Override
+	public int getAskOrders() {
+		return book.getSellCount();
+	}
+
+	@Override
+	public String toString() {
+		return getSymbol() + " orders=" + ordersAdded + " cancelled=" + ordersCancelled + " auctions=" + auctions
+				+ " fills=" + fills + " failed=" + failedFills + " volume=" + volume + " depth="
+				+ getBidOrders() + "x" + getAskOrders();
+	}
+}
@@ -0,0 +1,24 @@
+package pkg.order;
+
+/**
+ * JMX view of one symbol's {@link SymbolMetrics}.
+ */
+public interface SymbolMetricsMBean {
+	public String getSymbol();
+
+	public long getOrdersAdded();
+
+	public long getOrdersCancelled();
+
+	public long getAuctions();
+
+	public long getFills();
+
+	public long getFailedFills();
+
+	public long getVolume();
+
+	public int getBidOrders();
+
+	public int getAskOrders();
+}
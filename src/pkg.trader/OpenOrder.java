@@ -0,0 +1,29 @@
+package pkg.trader;
+
+import pkg.market.Market;
+import pkg.order.Order;
+
+/**
+ * An order the trader has resting on a market, with the ID the market gave
+ * it and the cash it reserved per share. Orders for the same stock on other
+ * markets are chained through {@link #nextVenue}.
+ */
+class OpenOrder {
+	Order order;
+	Market market;
+	long orderId;
+	// cash held back per unfilled share of a buy, in minor units
+	long reservedPerShare;
+	// sent to the market to replace order, not yet swapped in
+	Order pending;
+	long pendingPerShare;
+	// cancel sent, reservation held until the market confirms it
+	boolean cancelling;
+	OpenOrder nextVenue;
+
+	OpenOrder(Order order, Market market, long reservedPerShare) {
+		this.order = order;
+		this.market = market;
+		this.reservedPerShare = reservedPerShare;
+	}
+}
@@ -0,0 +1,57 @@
+package pkg.trader;
+
+import pkg.util.PriceUtility;
+
+/**
+ * A trader's holding in one stock: the number of shares owned and the
+ * average price paid for them.
+ */
+public class Position {
+	String symbol;
+	int quantity;
+	// total paid for the shares held, in ticks
+	long costTicks;
+
+	public Position(String symbol) {
+		this.symbol = symbol;
+	}
+
+	void add(int volume, double price) {
+		costTicks += PriceUtility.toTicks(price) * volume;
+		quantity += volume;
+	}
+
+	/**
+	 * Add shares bought at an average price, e.g. one read back from
+	 * {@link #getAverageCost()}, without rounding it to a tick first.
+	 */
+	void restore(int volume, double averageCost) {
+		costTicks += Math.round(averageCost * PriceUtility.TICKS_PER_UNIT * volume);
+		quantity += volume;
+	}
+
+	/**
+	 * Shares leave at the average cost, so what is left keeps it.
+	 */
+	void remove(int volume) {
+		if (volume >= quantity) {
+			costTicks = 0;
+		}
+		else {
+			costTicks -= costTicks * volume / quantity;
+		}
+		quantity -= volume;
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public double getAverageCost() {
+		return quantity == 0 ? 0.0 : costTicks / (double) quantity / PriceUtility.TICKS_PER_UNIT;
+	}
+}
@@ -0,0 +1,150 @@
+package pkg.trader;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A trader's pre-trade risk: total cash, the cash not yet promised to
+ * resting buy orders, and per stock the shares not yet offered by resting
+ * sell orders. Every reservation is a single compare-and-set that fails
+ * instead of going below zero, so orders entered concurrently can never
+ * commit more cash or shares than the trader has. Amounts of cash are in
+ * minor units (see {@link pkg.util.PriceUtility}).
+ */
+public class RiskLedger {
+	private final AtomicLong cash;
+	private final AtomicLong availableCash;
+	private final ConcurrentHashMap<String, AtomicLong> freeShares = new ConcurrentHashMap<String, AtomicLong>();
+
+	public RiskLedger(long cash) {
+		this.cash = new AtomicLong(cash);
+		this.availableCash = new AtomicLong(cash);
+	}
+
+	public long getCash() {
+		return cash.get();
+	}
+
+	/**
+	 * @return cash not reserved by resting buy orders
+	 */
+	public long getAvailableCash() {
+		return availableCash.get();
+	}
+
+	/**
+	 * @return shares of the stock not offered by resting sell orders
+	 */
+	public long getFreeShares(String symbol) {
+		AtomicLong free = freeShares.get(symbol);
+		return free == null ? 0 : free.get();
+	}
+
+	/**
+	 * Change the cash balance, keeping existing reservations.
+	 */
+	void setCash(long newCash) {
+		if (newCash < 0) {
+			throw new IllegalArgumentException("Cash cannot be negative: " + newCash);
+		}
+		long delta = newCash - cash.getAndSet(newCash);
+		availableCash.addAndGet(delta);
+	}
+
+	boolean reserveCash(long amount) {
+		return take(availableCash, amount);
+	}
+
+	void releaseCash(long amount) {
+		availableCash.addAndGet(amount);
+	}
+
+	/**
+	 * Swap one reservation for another in one step, failing if the new one
+	 * does not fit even with the old one given back.
+	 */
+	boolean replaceCash(long released, long reserved) {
+		return take(availableCash, reserved - released);
+	}
+
+	/**
+	 * Pay for shares bought, turning {@code reserved} of the reservation into
+	 * the actual cost. An unreserved purchase passes 0. Any cost above the
+	 * reservation comes out of free cash.
+	 * @return false, changing nothing, if free cash does not cover that
+	 */
+	boolean settleBuy(long reserved, long cost) {
+		if (!take(availableCash, cost - reserved)) {
+			return false;
+		}
+		cash.addAndGet(-cost);
+		return true;
+	}
+
+	/**
+	 * Pay for shares bought outside the order book, if the cash is free.
+	 */
+	boolean spend(long cost) {
+		if (!take(availableCash, cost)) {
+			return false;
+		}
+		cash.addAndGet(-cost);
+		return true;
+	}
+
+	void deposit(long amount) {
+		cash.addAndGet(amount);
+		availableCash.addAndGet(amount);
+	}
+
+	boolean reserveShares(String symbol, long volume) {
+		return take(sharesOf(symbol), volume);
+	}
+
+	void releaseShares(String symbol, long volume) {
+		sharesOf(symbol).addAndGet(volume);
+	}
+
+	boolean replaceShares(String symbol, long released, long reserved) {
+		return take(sharesOf(symbol), reserved - released);
+	}
+
+	/**
+	 * Shares bought, or shares sold without a reservation when negative.
+	 */
+	void addShares(String symbol, long volume) {
+		sharesOf(symbol).addAndGet(volume);
+	}
+
+	void setShares(String symbol, long volume) {
+		sharesOf(symbol).set(volume);
+	}
+
+	void clearShares() {
+		freeShares.clear();
+	}
+
+	private AtomicLong sharesOf(String symbol) {
+		AtomicLong free = freeShares.get(symbol);
+		if (free == null) {
+			AtomicLong created = new AtomicLong();
+			free = freeShares.putIfAbsent(symbol, created);
+			if (free == null) {
+				free = created;
+			}
+		}
+		return free;
+	}
+
+	private static boolean take(AtomicLong balance, long amount) {
+		while (true) {
+			long current = balance.get();
+			if (amount > 0 && current < amount) {
+				return false;
+			}
+			if (balance.compareAndSet(current, current - amount)) {
+				return true;
+			}
+		}
+	}
+}
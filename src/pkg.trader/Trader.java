@@ -1,6 +1,7 @@
 package pkg.trader;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 
 import pkg.exception.StockMarketExpection;
 import pkg.market.Market;
@@ -9,31 +10,49 @@ import pkg.order.Order;
 import pkg.order.OrderType;
 import pkg.order.SellOrder;
 import pkg.stock.Stock;
-import pkg.util.OrderUtility;
+import pkg.util.PriceUtility;
 
 public class Trader {
 	String name;
-	double cashInHand;
+	// cash, and what resting orders have reserved of it and of each position
+	RiskLedger ledger;
+	// reserved per share of a market buy above the stock's last price
+	static final int MARKET_BUY_COLLAR_PERCENT = 10;
+	public String getName() {
+		return name;
+	}
+
 	public double getCashInHand() {
-		return cashInHand;
+		return PriceUtility.toPrice(ledger.getCash());
 	}
 
 	public void setCashInHand(double cashInHand) {
-		this.cashInHand = cashInHand;
+		ledger.setCash(PriceUtility.toTicks(cashInHand));
 	}
 
-	ArrayList<Order> stocksOwnedByTrader;
-	ArrayList<Order> ordersPlacedByTrader;
+	public long getCashInMinorUnits() {
+		return ledger.getCash();
+	}
+
+	public RiskLedger getRiskLedger() {
+		return ledger;
+	}
+
+	// Holdings and open orders keyed by symbol, in the order they were first
+	// seen. A trader has at most one open order per stock on each market;
+	// orders on further markets hang off the first one.
+	LinkedHashMap<String, Position> positions;
+	LinkedHashMap<String, OpenOrder> ordersPlacedByTrader;
 
 	public Trader(String name, double cashInHand) {
 		super();
 		this.name = name;
-		this.cashInHand = cashInHand;
-		this.stocksOwnedByTrader = new ArrayList<Order>();
-		this.ordersPlacedByTrader = new ArrayList<Order>();
+		this.ledger = new RiskLedger(PriceUtility.toTicks(cashInHand));
+		this.positions = new LinkedHashMap<String, Position>();
+		this.ordersPlacedByTrader = new LinkedHashMap<String, OpenOrder>();
 	}
 
-	public void buyFromBank(Market m, String symbol, int volume)
+	public synchronized void buyFromBank(Market m, String symbol, int volume)
 			throws StockMarketExpection {
 		// Buy stock straight from the bank
 		// Need not place the stock in the order list
@@ -44,12 +63,13 @@ public class Trader {
 		// stock.
 		Stock stock = m.getStockForSymbol(symbol);
 		if (stock != null){
-			if (stock.getPrice() * volume > cashInHand) {
+			// only cash not reserved by resting buys can be spent
+			if (!ledger.spend(PriceUtility.toTicks(stock.getPrice()) * volume)) {
 				throw new StockMarketExpection("Cannot place order for stock: " + symbol + " since there is not enough money. Trader: " + name);
 			}else {
-				cashInHand -= volume * stock.getPrice();
-				BuyOrder stockFromBank = new BuyOrder(symbol, volume, stock.getPrice(), this);
-				stocksOwnedByTrader.add(stockFromBank);
+				positionFor(symbol).add(volume, stock.getPrice());
+				ledger.addShares(symbol, volume);
+				m.recordBankPurchase(this, symbol, volume);
 			}
 		}
 		else {
@@ -59,6 +79,15 @@ public class Trader {
 
 	public void placeNewOrder(Market m, String symbol, int volume,
 			double price, OrderType orderType) throws StockMarketExpection {
+		placeNewOrder(m, symbol, volume, price, orderType, 0);
+	}
+
+	/**
+	 * Place the order under an ID obtained from {@link Market#nextOrderId()},
+	 * so the caller knows it before the order can trade; 0 gets a new one.
+	 */
+	public void placeNewOrder(Market m, String symbol, int volume,
+			double price, OrderType orderType, long orderId) throws StockMarketExpection {
 		// Place a new order and add to the orderlist
 		// Also enter the order into the orderbook of the market.
 		// Note that no trade has been made yet. The order is in suspension
@@ -71,165 +100,498 @@ public class Trader {
 		// Also a person cannot place a sell order for a stock that he does not
 		// own. Or he cannot sell more stocks than he possesses. Throw an
 		// exception in these cases.
-		
+		//
+		// Cash or shares are reserved before the order is recorded, so orders
+		// entered concurrently can never commit more than the trader has. A
+		// limit buy reserves its limit, the most it can pay per share.
 		Stock stock = m.getStockForSymbol(symbol);
-		if (stock != null){
-			for (int i = 0; i < ordersPlacedByTrader.size(); i++) {
-				if (ordersPlacedByTrader.get(i).getStockSymbol() == symbol){
-					throw new StockMarketExpection("Cannot place multiple orders for the same Stock: " + symbol);
-				}
+		if (stock == null) {
+			throw new StockMarketExpection("Invalid Stock: " + symbol);
+		}
+		Order order;
+		long perShare = 0;
+		if (orderType.equals(OrderType.BUY))
+		{
+			perShare = PriceUtility.toTicks(price);
+			if (!ledger.reserveCash(perShare * volume)) {
+				throw new StockMarketExpection("Cannot place order for stock: " + symbol + " since there is not enough money. Trader: " + name);
 			}
-			
-			
-			if (orderType.equals(OrderType.BUY))
-			{
-				if (stock.getPrice() * volume > cashInHand) {
-					throw new StockMarketExpection("Cannot place order for stock: " + symbol + " since there is not enough money. Trader: " + name);
-				}
-				BuyOrder order = new BuyOrder(symbol, volume, price, this);
-				this.ordersPlacedByTrader.add(order);
-				m.addOrder(order);
-			} else {
-				Order tmpOrder = null;
-				for (int i = 0; i < stocksOwnedByTrader.size(); i++) {
-					if (stocksOwnedByTrader.get(i).getStockSymbol() == symbol){
-						tmpOrder = stocksOwnedByTrader.get(i);
-					}
-				}
-				
-				checkForError(symbol, volume, tmpOrder);
-				SellOrder order = new SellOrder(symbol, volume, price, this);
-				this.ordersPlacedByTrader.add(order);
-				m.addOrder(order);
+			order = new BuyOrder(symbol, volume, price, this);
+		} else {
+			reserveShares(symbol, volume);
+			order = new SellOrder(symbol, volume, price, this);
+		}
+		enter(m, symbol, new OpenOrder(order, m, perShare), orderId);
+	}
+
+	/**
+	 * Record the order and send it to the market, giving its reservation back
+	 * if the trader already has an order for the stock there.
+	 */
+	private void enter(Market m, String symbol, OpenOrder open, long orderId) throws StockMarketExpection {
+		synchronized (this) {
+			if (openOrderOn(m, symbol) != null) {
+				release(open, open.order.getSize());
+				throw new StockMarketExpection("Cannot place multiple orders for the same Stock: " + symbol);
 			}
+			open.orderId = orderId == 0 ? m.nextOrderId() : orderId;
+			addOpenOrder(symbol, open);
+		}
+		// Entered outside the lock: with an order gateway the book belongs to
+		// the matching thread, which takes this lock to report fills.
+		m.addOrder(open.order, open.orderId);
+	}
+
+	private void reserveShares(String symbol, int volume) throws StockMarketExpection {
+		if (!ledger.reserveShares(symbol, volume)) {
+			checkForError(symbol, volume, getPositionFor(symbol));
+			// owned, but already offered by other orders
+			throw new StockMarketExpection("Cannot sell more stock than you own. Stock: " + symbol + "Owned: " + volume);
+		}
+	}
+
+	private void release(OpenOrder open, int volume) {
+		if (open.order instanceof BuyOrder) {
+			ledger.releaseCash(open.reservedPerShare * volume);
 		}
 		else {
-			throw new StockMarketExpection("Invalid Stock: " + symbol);
+			ledger.releaseShares(open.order.getStockSymbol(), volume);
 		}
 	}
 
-	private void checkForError(String symbol, int volume, Order tmpOrder)
+	private void checkForError(String symbol, int volume, Position position)
 			throws StockMarketExpection {
-		if (!OrderUtility.owns(stocksOwnedByTrader, symbol)) {
+		if (position == null) {
 			throw new StockMarketExpection("Cannot sell stock you do not own. Stock: " + symbol);
 		}
-		else if (tmpOrder.getSize() < volume) {
+		else if (position.getQuantity() < volume) {
 			throw new StockMarketExpection("Cannot sell more stock than you own. Stock: " + symbol + "Owned: " + volume);
 		}
 	}
 
 	public void placeNewMarketOrder(Market m, String symbol, int volume,
 			double price, OrderType orderType) throws StockMarketExpection {
-		// Similar to the other method, except the order is a market order
-		
+		placeNewMarketOrder(m, symbol, volume, price, orderType, 0);
+	}
+
+	public void placeNewMarketOrder(Market m, String symbol, int volume,
+			double price, OrderType orderType, long orderId) throws StockMarketExpection {
+		// Similar to the other method, except the order is a market order. Its
+		// price is not known until it trades, so the stock's current price
+		// plus a collar is reserved per share. A fill above that is paid from
+		// free cash, or refused if there is not enough.
 		Stock stock = m.getStockForSymbol(symbol);
-		if (stock != null){
-			for (int i = 0; i < ordersPlacedByTrader.size(); i++) {
-				if (ordersPlacedByTrader.get(i).getStockSymbol() == symbol){
-					throw new StockMarketExpection("Cannot place multiple orders for the same Stock: " + symbol);
-				}
+		if (stock == null) {
+			throw new StockMarketExpection("Invalid Stock: " + symbol);
+		}
+		Order order;
+		long perShare = 0;
+		if (orderType.equals(OrderType.BUY))
+		{
+			perShare = marketBuyReservation(stock);
+			if (!ledger.reserveCash(perShare * volume)) {
+				throw new StockMarketExpection("Cannont place order for stock: " + symbol + " since there is not enough money. Trader: " + name);
+			}
+			order = new BuyOrder(symbol, volume, true, this);
+		} else {
+			reserveShares(symbol, volume);
+			order = new SellOrder(symbol, volume, true, this);
+		}
+		enter(m, symbol, new OpenOrder(order, m, perShare), orderId);
+	}
+
+	/**
+	 * @return cash set aside per share of a market buy, in ticks
+	 */
+	private static long marketBuyReservation(Stock stock) {
+		long last = PriceUtility.toTicks(stock.getPrice());
+		return last + last * MARKET_BUY_COLLAR_PERCENT / 100;
+	}
+
+	/**
+	 * Cancel the open order for the stock. If it trades before the market
+	 * gets the cancel, the fill is still applied. Its reservation is given
+	 * back once the market has taken it off the book.
+	 */
+	public void cancelOrder(Market m, String symbol) throws StockMarketExpection {
+		OpenOrder open;
+		synchronized (this) {
+			open = openOrderOn(m, symbol);
+			if (open == null) {
+				throw new StockMarketExpection("No open order to cancel for stock: " + symbol + " Trader: " + name);
 			}
-			
-			
-			if (orderType.equals(OrderType.BUY))
-			{
-				if (stock.getPrice() * volume > cashInHand) {
-					throw new StockMarketExpection("Cannont place order for stock: " + symbol + " since there is not enough money. Trader: " + name);
+			open.cancelling = true;
+		}
+		m.cancelOrder(symbol, open.orderId);
+	}
+
+	/**
+	 * Change the size or price of the open order for the stock. Lowering
+	 * only the size keeps the order's place in the queue; any other change
+	 * is checked like a new order and queues the order again at the back.
+	 */
+	public void amendOrder(Market m, String symbol, int newSize, double newPrice)
+			throws StockMarketExpection {
+		Order replacement;
+		OpenOrder open;
+		synchronized (this) {
+			open = openOrderOn(m, symbol);
+			if (open == null) {
+				throw new StockMarketExpection("No open order to amend for stock: " + symbol + " Trader: " + name);
+			}
+			if (newSize <= 0) {
+				throw new StockMarketExpection("Order size must be positive. Stock: " + symbol);
+			}
+			Order current = open.order;
+			if (PriceUtility.toTicks(newPrice) == PriceUtility.toTicks(current.getPrice())
+					&& newSize < current.getSize()) {
+				replacement = null;
+			}
+			else if (current instanceof BuyOrder) {
+				Stock stock = m.getStockForSymbol(symbol);
+				long perShare = newPrice == 0 ? marketBuyReservation(stock) : PriceUtility.toTicks(newPrice);
+				// the current order's reservation is handed over to the
+				// replacement when the market swaps them
+				if (perShare * newSize > ledger.getAvailableCash() + open.reservedPerShare * current.getSize()) {
+					throw new StockMarketExpection("Cannot place order for stock: " + symbol + " since there is not enough money. Trader: " + name);
 				}
-				BuyOrder order = new BuyOrder(symbol, volume, true, this);
-				this.ordersPlacedByTrader.add(order);
-				m.addOrder(order);
-			} else {
-				boolean haveStock = false;
-				Order tmpOrder = null;
-				for (int i = 0; i < stocksOwnedByTrader.size(); i++) {
-					if (stocksOwnedByTrader.get(i).getStockSymbol() == symbol){
-						haveStock = true;
-						tmpOrder = stocksOwnedByTrader.get(i);
-					}
+				replacement = newPrice == 0 ? new BuyOrder(symbol, newSize, true, this)
+						: new BuyOrder(symbol, newSize, newPrice, this);
+				open.pendingPerShare = perShare;
+			}
+			else {
+				if (newSize > ledger.getFreeShares(symbol) + current.getSize()) {
+					checkForError(symbol, newSize, positions.get(symbol));
+					throw new StockMarketExpection("Cannot sell more stock than you own. Stock: " + symbol + "Owned: " + newSize);
 				}
-				
-				checkForError(symbol, volume, tmpOrder);
-				SellOrder order = new SellOrder(symbol, volume, true, this);
-				this.ordersPlacedByTrader.add(order);
-				m.addOrder(order);
+				replacement = newPrice == 0 ? new SellOrder(symbol, newSize, true, this)
+						: new SellOrder(symbol, newSize, newPrice, this);
+			}
+			if (replacement != null) {
+				open.pending = replacement;
 			}
 		}
+		if (replacement == null) {
+			m.reduceOrder(symbol, open.orderId, newSize);
+		}
 		else {
-			throw new StockMarketExpection("Invalid Stock: " + symbol);
+			m.replaceOrder(open.orderId, replacement);
+		}
+	}
+
+	/**
+	 * Notification that an order left the book without trading, e.g. a
+	 * cancel the market applied, or a replacement for an order that had
+	 * already filled. Whatever the order still had reserved is given back.
+	 */
+	public synchronized void orderCancelled(Order order) {
+		OpenOrder open = openOrderFor(order);
+		if (open == null) {
+			return;
+		}
+		if (open.pending == order) {
+			// the replacement never reached the book and reserved nothing
+			open.pending = null;
+			return;
 		}
+		release(open, order.getSize());
+		removeOpenOrder(order.getStockSymbol(), open);
 	}
 
-	public ArrayList<Order> getPosition() {
-		return stocksOwnedByTrader;
+	/**
+	 * Notification that the market shrank a resting order by {@code volume}.
+	 */
+	public synchronized void orderReduced(Order order, int volume) {
+		OpenOrder open = openOrderFor(order);
+		if (open != null && open.order == order) {
+			release(open, volume);
+		}
 	}
 
-	public void setPosition(ArrayList<Order> position) {
-		this.stocksOwnedByTrader = position;
+	/**
+	 * Called by the market just before it swaps {@code original} for
+	 * {@code replacement}: moves the original's remaining reservation to the
+	 * replacement in one step.
+	 * @return false if the replacement does not fit, in which case the
+	 *         original stays on the book unchanged
+	 */
+	public synchronized boolean confirmReplace(Order original, Order replacement) {
+		OpenOrder open = openOrderFor(original);
+		if (open == null) {
+			// not entered through this trader, nothing reserved
+			return true;
+		}
+		if (open.order != original || open.pending != replacement) {
+			return false;
+		}
+		boolean reserved;
+		if (original instanceof BuyOrder) {
+			reserved = ledger.replaceCash(open.reservedPerShare * original.getSize(),
+					open.pendingPerShare * replacement.getSize());
+		}
+		else {
+			reserved = ledger.replaceShares(original.getStockSymbol(), original.getSize(),
+					replacement.getSize());
+		}
+		open.pending = null;
+		if (reserved) {
+			open.order = replacement;
+			open.reservedPerShare = open.pendingPerShare;
+		}
+		return reserved;
 	}
 
-	public ArrayList<Order> getOrdersPlaced() {
-		return ordersPlacedByTrader;
+	/**
+	 * @return the market's ID for the first open order on the stock, or 0 if
+	 *         none
+	 */
+	public synchronized long getOrderId(String symbol) {
+		OpenOrder open = ordersPlacedByTrader.get(symbol);
+		return open == null ? 0 : open.orderId;
 	}
 
-	public void setOrdersPlaced(ArrayList<Order> ordersPlaced) {
-		this.ordersPlacedByTrader = ordersPlaced;
+	/**
+	 * @return the market's ID for the open order on the stock there, or 0 if
+	 *         none
+	 */
+	public synchronized long getOrderId(Market m, String symbol) {
+		OpenOrder open = openOrderOn(m, symbol);
+		return open == null ? 0 : open.orderId;
 	}
 
-	public void tradePerformed(Order order, double matchPrice)
+	private OpenOrder openOrderOn(Market m, String symbol) {
+		for (OpenOrder open = ordersPlacedByTrader.get(symbol); open != null; open = open.nextVenue) {
+			if (open.market == m && !open.cancelling) {
+				return open;
+			}
+		}
+		return null;
+	}
+
+	private OpenOrder openOrderFor(Order order) {
+		for (OpenOrder open = ordersPlacedByTrader.get(order.getStockSymbol()); open != null; open = open.nextVenue) {
+			if (open.order == order || open.pending == order) {
+				return open;
+			}
+		}
+		return null;
+	}
+
+	private void addOpenOrder(String symbol, OpenOrder added) {
+		OpenOrder open = ordersPlacedByTrader.get(symbol);
+		if (open == null) {
+			ordersPlacedByTrader.put(symbol, added);
+			return;
+		}
+		while (open.nextVenue != null) {
+			open = open.nextVenue;
+		}
+		open.nextVenue = added;
+	}
+
+	private void removeOpenOrder(String symbol, OpenOrder removed) {
+		OpenOrder open = ordersPlacedByTrader.get(symbol);
+		if (open == removed) {
+			if (removed.nextVenue == null) {
+				ordersPlacedByTrader.remove(symbol);
+			}
+			else {
+				ordersPlacedByTrader.put(symbol, removed.nextVenue);
+			}
+			return;
+		}
+		while (open != null && open.nextVenue != removed) {
+			open = open.nextVenue;
+		}
+		if (open != null) {
+			open.nextVenue = removed.nextVenue;
+		}
+	}
+
+	private int openSellVolume(String symbol) {
+		int volume = 0;
+		for (OpenOrder open = ordersPlacedByTrader.get(symbol); open != null; open = open.nextVenue) {
+			if (open.order instanceof SellOrder) {
+				volume += open.order.getSize();
+			}
+		}
+		return volume;
+	}
+
+	private Position positionFor(String symbol) {
+		Position position = positions.get(symbol);
+		if (position == null) {
+			position = new Position(symbol);
+			positions.put(symbol, position);
+		}
+		return position;
+	}
+
+	public synchronized Position getPositionFor(String symbol) {
+		return positions.get(symbol);
+	}
+
+	public synchronized boolean owns(String symbol) {
+		return positions.containsKey(symbol);
+	}
+
+	public synchronized int ownedQuantity(String symbol) {
+		Position position = positions.get(symbol);
+		return position == null ? 0 : position.getQuantity();
+	}
+
+	/**
+	 * @return a copy of the holdings, one order per stock carrying the
+	 *         quantity owned and its average cost
+	 */
+	public synchronized ArrayList<Order> getPosition() {
+		ArrayList<Order> view = new ArrayList<Order>(positions.size());
+		for (Position position : positions.values()) {
+			view.add(new BuyOrder(position.getSymbol(), position.getQuantity(), position.getAverageCost(), this));
+		}
+		return view;
+	}
+
+	public synchronized void setPosition(ArrayList<Order> position) {
+		positions.clear();
+		for (Order o : position) {
+			positionFor(o.getStockSymbol()).restore(o.getSize(), o.getPrice());
+		}
+		resetFreeShares();
+	}
+
+	/**
+	 * @return a copy of the open orders
+	 */
+	public synchronized ArrayList<Order> getOrdersPlaced() {
+		ArrayList<Order> view = new ArrayList<Order>(ordersPlacedByTrader.size());
+		for (OpenOrder first : ordersPlacedByTrader.values()) {
+			for (OpenOrder open = first; open != null; open = open.nextVenue) {
+				view.add(open.order);
+			}
+		}
+		return view;
+	}
+
+	public synchronized void setOrdersPlaced(ArrayList<Order> ordersPlaced) {
+		ordersPlacedByTrader.clear();
+		for (Order o : ordersPlaced) {
+			addOpenOrder(o.getStockSymbol(), new OpenOrder(o, null, 0));
+		}
+		resetFreeShares();
+	}
+
+	/**
+	 * @return cash held back per unfilled share of the open order, in minor
+	 *         units; 0 for a sell or an order the trader does not know
+	 */
+	public synchronized long getReservedPerShare(Order order) {
+		OpenOrder open = openOrderFor(order);
+		return open == null || open.order != order ? 0 : open.reservedPerShare;
+	}
+
+	/**
+	 * Record an order that is being put back on the market's book under its
+	 * old ID, e.g. from a snapshot, and reserve cash or shares for it as if
+	 * it had just been placed. Restore the position first.
+	 */
+	public synchronized void restoreOpenOrder(Market m, Order order, long orderId, long reservedPerShare) {
+		OpenOrder open = new OpenOrder(order, m, reservedPerShare);
+		open.orderId = orderId;
+		addOpenOrder(order.getStockSymbol(), open);
+		if (order instanceof BuyOrder) {
+			ledger.reserveCash(reservedPerShare * order.getSize());
+		}
+		else {
+			ledger.reserveShares(order.getStockSymbol(), order.getSize());
+		}
+	}
+
+	/**
+	 * Free shares are what is owned less what open sells offer.
+	 */
+	private void resetFreeShares() {
+		ledger.clearShares();
+		for (Position p : positions.values()) {
+			ledger.setShares(p.getSymbol(), p.getQuantity() - openSellVolume(p.getSymbol()));
+		}
+	}
+
+	public synchronized void tradePerformed(Order order, double matchPrice)
+			throws StockMarketExpection {
+		tradePerformed(order, order.getSize(), matchPrice);
+	}
+
+	// Fills on different symbols can arrive from different matching shards
+	// at the same time, so every access to the trader's state is synchronized.
+	public synchronized void tradePerformed(Order order, int filledSize, double matchPrice)
 			throws StockMarketExpection {
 		// Notification received that a trade has been made, the parameters are
-		// the order corresponding to the trade, and the match price calculated
-		// in the order book. Note than an order can sell some of the stocks he
-		// bought, etc. Or add more stocks of a kind to his position. Handle
-		// these situations.
+		// the order corresponding to the trade, the number of shares traded
+		// and the match price calculated in the order book. The order still
+		// carries its size from before this fill, so it is complete when the
+		// whole of it traded.
+		if (!applyFill(order, filledSize, matchPrice)) {
+			throw new StockMarketExpection("Sell fill exceeds position. Stock: "
+					+ order.getStockSymbol() + " Trader: " + name);
+		}
+	}
 
+	/**
+	 * Same as {@link #tradePerformed(Order, int, double)} but reports a
+	 * refused fill by returning false instead of throwing, so the matching
+	 * loop never allocates an exception.
+	 */
+	public synchronized boolean applyFill(Order order, int filledSize, double matchPrice) {
 		// Update the trader's orderPlaced, position, and cashInHand members
 		// based on the notification.
-		
-		if ( order instanceof BuyOrder){
-			if(OrderUtility.owns(this.stocksOwnedByTrader, order.getStockSymbol())){
-				Order ownedStock = OrderUtility.findAndExtractOrder(this.stocksOwnedByTrader, order.getStockSymbol());
-				ownedStock.setSize(ownedStock.getSize() + order.getSize());
-				this.stocksOwnedByTrader.add(ownedStock);
-				this.cashInHand -= matchPrice * order.getSize();
-				Order newOrder = OrderUtility.findAndExtractOrder(this.ordersPlacedByTrader, order.getStockSymbol());
-				if (newOrder.getSize() != 0){
-					this.ordersPlacedByTrader.add(newOrder);
-				}
-			}
-			else{
-				this.stocksOwnedByTrader.add(order);
-				this.cashInHand -= matchPrice * order.getSize();
-				Order newOrder = OrderUtility.findAndExtractOrder(this.ordersPlacedByTrader, order.getStockSymbol());
-				if (newOrder.getSize() != 0){
-					this.ordersPlacedByTrader.add(newOrder);
-				}
+		String symbol = order.getStockSymbol();
+		OpenOrder open = openOrderFor(order);
+		long cost = PriceUtility.toTicks(matchPrice) * filledSize;
+		if (order instanceof BuyOrder) {
+			long reserved = open == null ? 0 : open.reservedPerShare * filledSize;
+			if (!ledger.settleBuy(reserved, cost)) {
+				// a market buy that filled further above its reservation
+				// than free cash covers; the order stays open as it was
+				return false;
 			}
+			positionFor(symbol).add(filledSize, matchPrice);
+			ledger.addShares(symbol, filledSize);
 		}
 		else {
-			this.cashInHand += matchPrice * order.getSize();
-			OrderUtility.findAndExtractOrder(this.ordersPlacedByTrader, order.getStockSymbol());
-			Order newOrder = OrderUtility.findAndExtractOrder(this.stocksOwnedByTrader, order.getStockSymbol());
-			if (newOrder.getSize() != 0){
-				this.stocksOwnedByTrader.add(newOrder);
+			Position position = positions.get(symbol);
+			if (position == null || position.getQuantity() < filledSize) {
+				return false;
+			}
+			position.remove(filledSize);
+			if (position.getQuantity() == 0) {
+				positions.remove(symbol);
 			}
+			ledger.deposit(cost);
+			if (open == null) {
+				// the shares were never set aside
+				ledger.addShares(symbol, -filledSize);
+			}
+		}
+		if (open != null && filledSize >= order.getSize()) {
+			removeOpenOrder(symbol, open);
 		}
+		return true;
 	}
 
-	public void printTrader() {
+	public synchronized void printTrader() {
 		System.out.println("Trader Name: " + name);
 		System.out.println("=====================");
-		System.out.println("Cash: " + cashInHand);
+		System.out.println("Cash: " + getCashInHand());
 		System.out.println("Stocks Owned: ");
-		for (Order o : stocksOwnedByTrader) {
+		for (Order o : getPosition()) {
 			o.printStockNameInOrder();
 		}
 		System.out.println("Stocks Desired: ");
-		for (Order o : ordersPlacedByTrader) {
+		for (Order o : getOrdersPlaced()) {
 			o.printOrder();
 		}
 		System.out.println("+++++++++++++++++++++");
 		System.out.println("+++++++++++++++++++++");
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,149 @@
+package pkg.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in nanoseconds. Values are counted in
+ * buckets that are linear below 32 and then split each power of two into 32
+ * steps, so any percentile is reported to within about 3% while the whole
+ * range of a long fits in under 2,000 counters. Recording is one atomic
+ * increment and never allocates, so any number of threads can record into
+ * the same histogram from the hot path.
+ *
+ * Reads walk the counters without stopping writers and may miss values
+ * recorded meanwhile. Take a {@link #copy()} to read several figures from
+ * the same counts.
+ */
+public class LatencyHistogram {
+	static final int SUB_BUCKET_BITS = 5;
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * @param nanos negative values count as zero
+	 */
+	public void record(long nanos) {
+		counts.getAndIncrement(indexOf(nanos));
+	}
+
+	/**
+	 * Record the time since {@code startNanos}, a {@link System#nanoTime()}
+	 * reading.
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	static int indexOf(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return nanos < 0 ? 0 : (int) nanos;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+		return ((shift + 1) << SUB_BUCKET_BITS) + (int) (nanos >>> shift) - SUB_BUCKETS;
+	}
+
+	static long lowestValueAt(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = (index >>> SUB_BUCKET_BITS) - 1;
+		return (long) ((index & (SUB_BUCKETS - 1)) + SUB_BUCKETS) << shift;
+	}
+
+	static long highestValueAt(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = (index >>> SUB_BUCKET_BITS) - 1;
+		return ((long) ((index & (SUB_BUCKETS - 1)) + SUB_BUCKETS + 1) << shift) - 1;
+	}
+
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the highest value in the bucket holding that percentile, or 0
+	 *         if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long count = getCount();
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return highestValueAt(i);
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * @return the mean, taking each value as the middle of its bucket
+	 */
+	public double getMean() {
+		long count = 0;
+		double total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			long c = counts.get(i);
+			if (c != 0) {
+				count += c;
+				total += c * ((lowestValueAt(i) + highestValueAt(i)) / 2.0);
+			}
+		}
+		return count == 0 ? 0 : total / count;
+	}
+
+	/**
+	 * @return the highest value of the highest bucket used, or 0
+	 */
+	public long getMax() {
+		for (int i = BUCKETS - 1; i >= 0; i--) {
+			if (counts.get(i) != 0) {
+				return highestValueAt(i);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return a histogram holding the counts as they are now
+	 */
+	public LatencyHistogram copy() {
+		LatencyHistogram copy = new LatencyHistogram();
+		for (int i = 0; i < BUCKETS; i++) {
+			copy.counts.set(i, counts.get(i));
+		}
+		return copy;
+	}
+
+	/**
+	 * @param earlier an earlier {@link #copy()} of this histogram
+	 * @return the values recorded since that copy was taken
+	 */
+	public LatencyHistogram since(LatencyHistogram earlier) {
+		LatencyHistogram interval = new LatencyHistogram();
+		for (int i = 0; i < BUCKETS; i++) {
+			interval.counts.set(i, counts.get(i) - earlier.counts.get(i));
+		}
+		return interval;
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + getCount() + " p50=" + getValueAtPercentile(50) + "ns p99="
+				+ getValueAtPercentile(99) + "ns p99.9=" + getValueAtPercentile(99.9) + "ns max=" + getMax()
+				+ "ns";
+	}
+}
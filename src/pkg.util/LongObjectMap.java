@@ -0,0 +1,142 @@
+package pkg.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from positive {@code long} keys to objects, for
+ * hot paths that should not box keys. Uses linear probing; removal shifts
+ * later entries back so no tombstones build up.
+ */
+public class LongObjectMap<V> {
+	private static final long EMPTY = 0L;
+
+	private long[] keys;
+	private Object[] values;
+	private int mask;
+	private int size;
+	private int resizeAt;
+
+	public LongObjectMap() {
+		this(16);
+	}
+
+	public LongObjectMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+		resizeAt = capacity / 2;
+	}
+
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		for (int i = slot(key); keys[i] != EMPTY; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return (V) values[i];
+			}
+		}
+		return null;
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * @param key must be greater than zero
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (key <= EMPTY) {
+			throw new IllegalArgumentException("Key must be positive: " + key);
+		}
+		int i = slot(key);
+		for (; keys[i] != EMPTY; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				V old = (V) values[i];
+				values[i] = value;
+				return old;
+			}
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size > resizeAt) {
+			rehash();
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		int i = slot(key);
+		for (; keys[i] != EMPTY; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				V old = (V) values[i];
+				shiftBack(i);
+				size--;
+				return old;
+			}
+		}
+		return null;
+	}
+
+	private void shiftBack(int gap) {
+		int i = gap;
+		while (true) {
+			i = (i + 1) & mask;
+			if (keys[i] == EMPTY) {
+				break;
+			}
+			int home = slot(keys[i]);
+			// move the entry into the gap unless its home lies after the gap
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				keys[gap] = keys[i];
+				values[gap] = values[i];
+				gap = i;
+			}
+		}
+		keys[gap] = EMPTY;
+		values[gap] = null;
+	}
+
+	private void rehash() {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(keys.length * 2);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int j = slot(oldKeys[i]);
+				while (keys[j] != EMPTY) {
+					j = (j + 1) & mask;
+				}
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		if (size > 0) {
+			Arrays.fill(keys, EMPTY);
+			Arrays.fill(values, null);
+			size = 0;
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package pkg.util;
+
+/**
+ * Conversions between decimal prices and fixed-point ticks. A tick is one
+ * cent, which is also the minor unit cash is kept in, so a price in ticks
+ * times a number of shares is an amount of cash in minor units. Prices are
+ * compared and keyed as ticks; doubles are only used at the edges.
+ */
+public class PriceUtility {
+	public static final long TICKS_PER_UNIT = 100;
+	// market orders carry no price
+	public static final long MARKET_PRICE = 0;
+
+	public static long toTicks(double price) {
+		return Math.round(price * TICKS_PER_UNIT);
+	}
+
+	public static double toPrice(long ticks) {
+		return (double) ticks / TICKS_PER_UNIT;
+	}
+}